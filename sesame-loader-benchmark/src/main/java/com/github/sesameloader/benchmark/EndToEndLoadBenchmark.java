@@ -0,0 +1,116 @@
+package com.github.sesameloader.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.RDFFormat;
+
+import com.github.sesameloader.LoaderMain;
+import com.github.sesameloader.RepositoryManager;
+import com.github.sesameloader.sesame.NativeRepositoryManager;
+
+/**
+ * Loads an N-Triples document into a fresh store on every invocation, across store types, numbers
+ * of loading threads and commit intervals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(EndToEndLoadBenchmark.STATEMENTS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EndToEndLoadBenchmark
+{
+    static final int STATEMENTS = 200000;
+    
+    @Param({ "memory", "native" })
+    public String store;
+    
+    @Param({ "1", "4", "16" })
+    public int pushThreads;
+    
+    @Param({ "1000", "10000", "100000" })
+    public int commitInterval;
+    
+    private byte[] document;
+    
+    private File dataDir;
+    
+    private RepositoryManager manager;
+    
+    @Setup(Level.Trial)
+    public void generate() throws Exception
+    {
+        document = new SyntheticTripleGenerator(ValueFactoryImpl.getInstance(), 42, STATEMENTS / 10).write(STATEMENTS,
+                RDFFormat.NTRIPLES);
+    }
+    
+    @Setup(Level.Invocation)
+    public void createStore() throws Exception
+    {
+        if("native".equals(store))
+        {
+            dataDir = File.createTempFile("sesame-loader-benchmark", "");
+            dataDir.delete();
+            dataDir.mkdir();
+            manager = new NativeRepositoryManager(dataDir);
+        }
+        else
+        {
+            manager = new MemoryRepositoryManager();
+        }
+    }
+    
+    @TearDown(Level.Invocation)
+    public void deleteStore() throws Exception
+    {
+        manager.shutDown();
+        if(dataDir != null)
+        {
+            delete(dataDir);
+            dataDir = null;
+        }
+    }
+    
+    @Benchmark
+    public void load() throws Exception
+    {
+        final LoaderMain loader = new LoaderMain(manager, commitInterval, pushThreads);
+        loader.setMetricsInterval(0);
+        loader.load(new ByteArrayInputStream(document), RDFFormat.NTRIPLES, "http://example.org/");
+    }
+    
+    private static void delete(File file) throws IOException
+    {
+        final File[] children = file.listFiles();
+        if(children != null)
+        {
+            for(final File child : children)
+            {
+                delete(child);
+            }
+        }
+        if(!file.delete())
+        {
+            throw new IOException("Could not delete " + file);
+        }
+    }
+}
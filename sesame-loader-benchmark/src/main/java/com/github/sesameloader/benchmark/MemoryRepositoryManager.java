@@ -0,0 +1,51 @@
+package com.github.sesameloader.benchmark;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.memory.MemoryStore;
+
+import com.github.sesameloader.RepositoryManager;
+
+/**
+ * RepositoryManager for a non persistent MemoryStore, with connections in the same transactional
+ * mode as the native and OWLIM managers.
+ */
+public class MemoryRepositoryManager implements RepositoryManager
+{
+    private final SailRepository repository;
+    
+    public MemoryRepositoryManager() throws RepositoryException
+    {
+        repository = new SailRepository(new MemoryStore());
+        repository.initialize();
+    }
+    
+    @Override
+    public RepositoryConnection getConnection() throws RepositoryException
+    {
+        final RepositoryConnection connection = repository.getConnection();
+        connection.setAutoCommit(false);
+        return connection;
+    }
+    
+    @Override
+    public void shutDown() throws SailException, RepositoryException
+    {
+        repository.shutDown();
+    }
+    
+    @Override
+    public ValueFactory getValueFactory()
+    {
+        return repository.getValueFactory();
+    }
+    
+    @Override
+    public Integer getMaximumThreads()
+    {
+        return 0;
+    }
+}
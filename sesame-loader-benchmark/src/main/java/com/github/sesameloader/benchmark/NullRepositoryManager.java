@@ -0,0 +1,70 @@
+package com.github.sesameloader.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.sail.SailException;
+
+import com.github.sesameloader.RepositoryManager;
+
+/**
+ * RepositoryManager whose connections iterate over and then discard everything that is added, so
+ * benchmarks measure the loader rather than a store.
+ */
+public class NullRepositoryManager implements RepositoryManager
+{
+    private static final InvocationHandler DISCARD = new InvocationHandler()
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if("add".equals(method.getName()) && args[0] instanceof Iterable)
+                {
+                    // touch every statement, as a store would
+                    for(final Object next : (Iterable<?>)args[0])
+                    {
+                        next.hashCode();
+                    }
+                }
+                final Class<?> returnType = method.getReturnType();
+                if(returnType == boolean.class)
+                {
+                    return Boolean.FALSE;
+                }
+                if(returnType == long.class)
+                {
+                    return Long.valueOf(0);
+                }
+                return null;
+            }
+        };
+    
+    @Override
+    public RepositoryConnection getConnection() throws RepositoryException
+    {
+        return (RepositoryConnection)Proxy.newProxyInstance(RepositoryConnection.class.getClassLoader(),
+                new Class<?>[] { RepositoryConnection.class }, DISCARD);
+    }
+    
+    @Override
+    public void shutDown() throws SailException, RepositoryException
+    {
+    }
+    
+    @Override
+    public ValueFactory getValueFactory()
+    {
+        return ValueFactoryImpl.getInstance();
+    }
+    
+    @Override
+    public Integer getMaximumThreads()
+    {
+        return 0;
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.sesameloader.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+/**
+ * Measures how fast Rio parses each supported format on a single thread, which bounds the
+ * throughput of a single file load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ParserBenchmark.STATEMENTS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParserBenchmark
+{
+    static final int STATEMENTS = 200000;
+    
+    @Param({ "N-Triples", "Turtle", "RDF/XML", "N3" })
+    public String format;
+    
+    private RDFFormat rdfFormat;
+    
+    private byte[] document;
+    
+    @Setup(Level.Trial)
+    public void generate() throws Exception
+    {
+        rdfFormat = RDFFormat.valueOf(format);
+        document = new SyntheticTripleGenerator(ValueFactoryImpl.getInstance(), 42, STATEMENTS / 10).write(STATEMENTS, rdfFormat);
+    }
+    
+    @Benchmark
+    public void parse(final Blackhole blackhole) throws Exception
+    {
+        final RDFParser parser = Rio.createParser(rdfFormat);
+        parser.setVerifyData(false);
+        parser.setRDFHandler(new RDFHandlerBase()
+            {
+                @Override
+                public void handleStatement(Statement st)
+                {
+                    blackhole.consume(st);
+                }
+            });
+        parser.parse(new ByteArrayInputStream(document), "http://example.org/");
+    }
+}
@@ -0,0 +1,105 @@
+package com.github.sesameloader.benchmark;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import com.github.sesameloader.RepositoryManager;
+import com.github.sesameloader.StatementChunkQueue;
+import com.github.sesameloader.StatementFromQueueIntoRepositoryPusher;
+import com.github.sesameloader.StatementIntoQueuePusher;
+import com.github.sesameloader.metrics.LoaderMetrics;
+
+/**
+ * Measures the hand-off between the parser and the loading threads in isolation: a single
+ * producer pushes pre-built statements through the queue to pushers whose connections discard
+ * them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(QueueHandOffBenchmark.STATEMENTS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueueHandOffBenchmark
+{
+    static final int STATEMENTS = 1000000;
+    
+    @Param({ "1", "4", "16" })
+    public int pushThreads;
+    
+    @Param({ "1", "256", "4096" })
+    public int chunkSize;
+    
+    /**
+     * Whether queued statements are encoded outside the heap, best compared with -prof gc.
+     */
+    @Param({ "false", "true" })
+    public boolean offHeap;
+    
+    private List<Statement> statements;
+    
+    private RepositoryManager manager;
+    
+    private ExecutorService exec;
+    
+    @Setup(Level.Trial)
+    public void generate()
+    {
+        statements = new SyntheticTripleGenerator(ValueFactoryImpl.getInstance(), 42, STATEMENTS / 10).next(STATEMENTS);
+        manager = new NullRepositoryManager();
+        exec = Executors.newFixedThreadPool(pushThreads);
+    }
+    
+    @TearDown(Level.Trial)
+    public void shutdown()
+    {
+        exec.shutdownNow();
+    }
+    
+    @Benchmark
+    public long handOff() throws Exception
+    {
+        final StatementChunkQueue queue = new StatementChunkQueue(Math.max(2, pushThreads * 2), chunkSize);
+        queue.setOffHeap(offHeap ? ValueFactoryImpl.getInstance() : null);
+        final LoaderMetrics metrics = new LoaderMetrics(queue);
+        final CountDownLatch isDone = new CountDownLatch(pushThreads);
+        for(int i = 0; i < pushThreads; i++)
+        {
+            exec.execute(new StatementFromQueueIntoRepositoryPusher(queue, Integer.MAX_VALUE, manager, isDone, metrics
+                    .newPusherMetrics()));
+        }
+        
+        final StatementIntoQueuePusher producer = new StatementIntoQueuePusher(queue, metrics);
+        producer.startRDF();
+        for(final Statement next : statements)
+        {
+            producer.handleStatement(next);
+        }
+        producer.endRDF();
+        
+        queue.endOfStream(pushThreads);
+        isDone.await();
+        return metrics.getStatementsAdded();
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.sesameloader.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
+
+/**
+ * Generates the same sequence of statements for the same seed, shaped roughly like UniProt data:
+ * resources with an rdf:type, a handful of frequent predicates, links between resources and
+ * literals of varying length.
+ */
+public class SyntheticTripleGenerator
+{
+    private static final String NAMESPACE = "http://purl.example.org/core/";
+    
+    private static final String RESOURCES = "http://purl.example.org/resource/";
+    
+    private static final int PREDICATES = 24;
+    
+    private static final int CLASSES = 8;
+    
+    private final ValueFactory valueFactory;
+    
+    private final Random random;
+    
+    private final int resources;
+    
+    private final URI[] predicates = new URI[PREDICATES];
+    
+    private final URI[] classes = new URI[CLASSES];
+    
+    private int nextSubject = 0;
+    
+    private int remainingForSubject = 0;
+    
+    private Resource subject;
+    
+    /**
+     * @param valueFactory
+     *            The ValueFactory that creates the statements.
+     * @param seed
+     *            The seed that determines the sequence of statements.
+     * @param resources
+     *            The number of distinct subjects before subjects are reused.
+     */
+    public SyntheticTripleGenerator(ValueFactory valueFactory, long seed, int resources)
+    {
+        this.valueFactory = valueFactory;
+        this.random = new Random(seed);
+        this.resources = resources;
+        for(int i = 0; i < PREDICATES; i++)
+        {
+            predicates[i] = valueFactory.createURI(NAMESPACE, "property" + i);
+        }
+        for(int i = 0; i < CLASSES; i++)
+        {
+            classes[i] = valueFactory.createURI(NAMESPACE, "Class" + i);
+        }
+    }
+    
+    /**
+     * @return The next statement in the sequence.
+     */
+    public Statement next()
+    {
+        if(remainingForSubject == 0)
+        {
+            subject = valueFactory.createURI(RESOURCES, Integer.toString(nextSubject++ % resources));
+            remainingForSubject = 1 + random.nextInt(20);
+            return valueFactory.createStatement(subject, RDF.TYPE, classes[random.nextInt(CLASSES)]);
+        }
+        
+        remainingForSubject--;
+        // a skewed choice of predicate, so a few predicates are very frequent
+        final URI predicate = predicates[(int)(PREDICATES * Math.pow(random.nextDouble(), 3))];
+        final Value object;
+        if(random.nextInt(3) == 0)
+        {
+            object = valueFactory.createURI(RESOURCES, Integer.toString(random.nextInt(resources)));
+        }
+        else
+        {
+            object = valueFactory.createLiteral(literal(5 + random.nextInt(60)));
+        }
+        return valueFactory.createStatement(subject, predicate, object);
+    }
+    
+    /**
+     * @return The next given number of statements in the sequence.
+     */
+    public List<Statement> next(int count)
+    {
+        final List<Statement> result = new ArrayList<Statement>(count);
+        for(int i = 0; i < count; i++)
+        {
+            result.add(next());
+        }
+        return result;
+    }
+    
+    /**
+     * Serialises the next given number of statements in the given format.
+     */
+    public byte[] write(int count, RDFFormat format) throws RDFHandlerException
+    {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(count * 100);
+        final RDFWriter writer = Rio.createWriter(format, output);
+        writer.startRDF();
+        writer.handleNamespace("core", NAMESPACE);
+        writer.handleNamespace("res", RESOURCES);
+        for(int i = 0; i < count; i++)
+        {
+            writer.handleStatement(next());
+        }
+        writer.endRDF();
+        try
+        {
+            output.close();
+        }
+        catch(final IOException e)
+        {
+            throw new RDFHandlerException(e);
+        }
+        return output.toByteArray();
+    }
+    
+    private String literal(int length)
+    {
+        final char[] result = new char[length];
+        for(int i = 0; i < length; i++)
+        {
+            result[i] = (char)('a' + random.nextInt(26));
+        }
+        return new String(result);
+    }
+}
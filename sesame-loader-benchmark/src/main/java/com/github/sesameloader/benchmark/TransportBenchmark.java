@@ -0,0 +1,119 @@
+package com.github.sesameloader.benchmark;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import com.github.sesameloader.RepositoryManager;
+import com.github.sesameloader.StatementChunkQueue;
+import com.github.sesameloader.StatementFromQueueIntoRepositoryPusher;
+import com.github.sesameloader.StatementIntoQueuePusher;
+import com.github.sesameloader.metrics.LoaderMetrics;
+import com.github.sesameloader.transport.TransportType;
+import com.github.sesameloader.transport.WaitStrategy;
+
+/**
+ * Compares the transports between the parser and the loading threads: a single producer pushes
+ * pre-built statements in small chunks, so the hand-off itself dominates, to pushers whose
+ * connections discard them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(TransportBenchmark.STATEMENTS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransportBenchmark
+{
+    static final int STATEMENTS = 1000000;
+    
+    @Param({ "1", "4", "16", "32" })
+    public int pushThreads;
+    
+    /**
+     * The transport, and for ring buffers the wait strategy after the dash.
+     */
+    @Param({ "blocking", "ring-park", "ring-yield", "ring-busy-spin" })
+    public String transport;
+    
+    @Param({ "64" })
+    public int chunkSize;
+    
+    private List<Statement> statements;
+    
+    private RepositoryManager manager;
+    
+    private ExecutorService exec;
+    
+    private TransportType transportType;
+    
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+    
+    @Setup(Level.Trial)
+    public void generate()
+    {
+        statements = new SyntheticTripleGenerator(ValueFactoryImpl.getInstance(), 42, STATEMENTS / 10).next(STATEMENTS);
+        manager = new NullRepositoryManager();
+        exec = Executors.newFixedThreadPool(pushThreads);
+        
+        final String[] parts = transport.toUpperCase(Locale.ENGLISH).split("-", 2);
+        transportType = TransportType.valueOf(parts[0]);
+        if(parts.length > 1)
+        {
+            waitStrategy = WaitStrategy.valueOf(parts[1].replace('-', '_'));
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void shutdown()
+    {
+        exec.shutdownNow();
+    }
+    
+    @Benchmark
+    public long handOff() throws Exception
+    {
+        final StatementChunkQueue queue = new StatementChunkQueue(Math.max(2, pushThreads * 2), chunkSize,
+                transportType, waitStrategy);
+        final LoaderMetrics metrics = new LoaderMetrics(queue);
+        final CountDownLatch isDone = new CountDownLatch(pushThreads);
+        for(int i = 0; i < pushThreads; i++)
+        {
+            exec.execute(new StatementFromQueueIntoRepositoryPusher(queue, Integer.MAX_VALUE, manager, isDone, metrics
+                    .newPusherMetrics()));
+        }
+        
+        final StatementIntoQueuePusher producer = new StatementIntoQueuePusher(queue, metrics);
+        producer.startRDF();
+        for(final Statement next : statements)
+        {
+            producer.handleStatement(next);
+        }
+        producer.endRDF();
+        
+        queue.endOfStream(pushThreads);
+        isDone.await();
+        return metrics.getStatementsAdded();
+    }
+}
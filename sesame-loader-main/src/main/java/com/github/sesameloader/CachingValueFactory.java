@@ -0,0 +1,308 @@
+package com.github.sesameloader;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryBase;
+
+/**
+ * ValueFactory that returns the same instance for URIs and short literals it has created
+ * recently, while delegating the creation of all values to another ValueFactory.
+ * 
+ * On repetitive data this saves allocating the same values over and over, and stores whose
+ * ValueFactory remembers the internal ID of the values it creates, like the native store, look up
+ * each cached value only once.
+ * 
+ * The cache is split into segments by hash, each with its own lock and least recently used
+ * eviction, so parser threads rarely contend. Blank nodes are never cached.
+ */
+public class CachingValueFactory extends ValueFactoryBase
+{
+    /**
+     * Longer literals are rarely repeated and would push out more useful entries.
+     */
+    public static final int MAX_CACHED_LITERAL_LENGTH = 128;
+    
+    private static final int SEGMENTS = 16;
+    
+    private final ValueFactory delegate;
+    
+    private final Segment[] segments = new Segment[SEGMENTS];
+    
+    /**
+     * @param delegate
+     *            The ValueFactory that creates the values.
+     * @param capacity
+     *            The maximum number of values kept in the cache.
+     */
+    public CachingValueFactory(ValueFactory delegate, int capacity)
+    {
+        if(capacity < SEGMENTS)
+        {
+            throw new IllegalArgumentException("Value cache capacity must be at least " + SEGMENTS + ", was " + capacity);
+        }
+        this.delegate = delegate;
+        for(int i = 0; i < SEGMENTS; i++)
+        {
+            segments[i] = new Segment(capacity / SEGMENTS);
+        }
+    }
+    
+    @Override
+    public BNode createBNode()
+    {
+        return delegate.createBNode();
+    }
+    
+    @Override
+    public BNode createBNode(String nodeID)
+    {
+        return delegate.createBNode(nodeID);
+    }
+    
+    @Override
+    public URI createURI(String uri)
+    {
+        final Segment segment = segmentFor(uri.hashCode());
+        URI result = (URI)segment.get(uri);
+        if(result == null)
+        {
+            result = delegate.createURI(uri);
+            segment.put(uri, result);
+        }
+        return result;
+    }
+    
+    @Override
+    public URI createURI(String namespace, String localName)
+    {
+        return createURI(namespace + localName);
+    }
+    
+    @Override
+    public Literal createLiteral(String label)
+    {
+        return createLiteral(label, null, null);
+    }
+    
+    @Override
+    public Literal createLiteral(String label, String language)
+    {
+        return createLiteral(label, language, null);
+    }
+    
+    @Override
+    public Literal createLiteral(String label, URI datatype)
+    {
+        return createLiteral(label, null, datatype);
+    }
+    
+    private Literal createLiteral(String label, String language, URI datatype)
+    {
+        if(label.length() > MAX_CACHED_LITERAL_LENGTH)
+        {
+            return newLiteral(label, language, datatype);
+        }
+        final LiteralKey key = new LiteralKey(label, language, datatype);
+        final Segment segment = segmentFor(key.hashCode());
+        Literal result = (Literal)segment.get(key);
+        if(result == null)
+        {
+            result = newLiteral(label, language, datatype);
+            segment.put(key, result);
+        }
+        return result;
+    }
+    
+    private Literal newLiteral(String label, String language, URI datatype)
+    {
+        if(language != null)
+        {
+            return delegate.createLiteral(label, language);
+        }
+        if(datatype != null)
+        {
+            return delegate.createLiteral(label, datatype);
+        }
+        return delegate.createLiteral(label);
+    }
+    
+    @Override
+    public Statement createStatement(Resource subject, URI predicate, Value object)
+    {
+        return delegate.createStatement(subject, predicate, object);
+    }
+    
+    @Override
+    public Statement createStatement(Resource subject, URI predicate, Value object, Resource context)
+    {
+        return delegate.createStatement(subject, predicate, object, context);
+    }
+    
+    /**
+     * @return The number of values that were returned from the cache.
+     */
+    public long getHits()
+    {
+        long result = 0;
+        for(final Segment segment : segments)
+        {
+            synchronized(segment)
+            {
+                result += segment.hits;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * @return The number of values that had to be created by the delegate, excluding blank nodes and
+     *         long literals.
+     */
+    public long getMisses()
+    {
+        long result = 0;
+        for(final Segment segment : segments)
+        {
+            synchronized(segment)
+            {
+                result += segment.misses;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * @return The fraction of cacheable values that were returned from the cache.
+     */
+    public double getHitRate()
+    {
+        final long hits = getHits();
+        final long total = hits + getMisses();
+        return total == 0 ? 0 : hits / (double)total;
+    }
+    
+    public int size()
+    {
+        int result = 0;
+        for(final Segment segment : segments)
+        {
+            synchronized(segment)
+            {
+                result += segment.size();
+            }
+        }
+        return result;
+    }
+    
+    private Segment segmentFor(int hash)
+    {
+        // spread the bits, as string hashes of URIs with a common prefix differ mostly in the low bits
+        final int spread = hash ^ (hash >>> 16);
+        return segments[(spread & 0x7fffffff) % SEGMENTS];
+    }
+    
+    /**
+     * A least recently used map guarded by its own lock.
+     */
+    private static class Segment
+    {
+        private final Map<Object, Value> values;
+        
+        private long hits = 0;
+        
+        private long misses = 0;
+        
+        Segment(final int capacity)
+        {
+            this.values = new LinkedHashMap<Object, Value>(16, 0.75f, true)
+                {
+                    private static final long serialVersionUID = 1L;
+                    
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Object, Value> eldest)
+                    {
+                        return size() > capacity;
+                    }
+                };
+        }
+        
+        synchronized Value get(Object key)
+        {
+            final Value result = values.get(key);
+            if(result == null)
+            {
+                misses++;
+            }
+            else
+            {
+                hits++;
+            }
+            return result;
+        }
+        
+        synchronized void put(Object key, Value value)
+        {
+            values.put(key, value);
+        }
+        
+        synchronized int size()
+        {
+            return values.size();
+        }
+    }
+    
+    private static final class LiteralKey
+    {
+        private final String label;
+        
+        private final String language;
+        
+        private final URI datatype;
+        
+        private final int hash;
+        
+        LiteralKey(String label, String language, URI datatype)
+        {
+            this.label = label;
+            this.language = language;
+            this.datatype = datatype;
+            int h = label.hashCode();
+            if(language != null)
+            {
+                h = 31 * h + language.hashCode();
+            }
+            if(datatype != null)
+            {
+                h = 31 * h + datatype.hashCode();
+            }
+            this.hash = h;
+        }
+        
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object obj)
+        {
+            if(!(obj instanceof LiteralKey))
+            {
+                return false;
+            }
+            final LiteralKey other = (LiteralKey)obj;
+            return hash == other.hash && label.equals(other.label)
+                    && (language == null ? other.language == null : language.equals(other.language))
+                    && (datatype == null ? other.datatype == null : datatype.equals(other.datatype));
+        }
+    }
+}
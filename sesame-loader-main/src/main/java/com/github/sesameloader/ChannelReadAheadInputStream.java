@@ -0,0 +1,213 @@
+package com.github.sesameloader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a file, or a range of a file, on a dedicated I/O thread into a fixed number of large direct
+ * buffers using a FileChannel, so that disk reads overlap with parsing.
+ * 
+ * With two or more buffers the I/O thread fills one buffer while the consumer drains another, which
+ * keeps a sequential read going at full disk bandwidth even when the consumer stalls.
+ */
+public class ChannelReadAheadInputStream extends InputStream
+{
+    private static final ByteBuffer END_OF_RANGE = ByteBuffer.allocate(0);
+    
+    private final FileInputStream file;
+    
+    private final FileChannel channel;
+    
+    private final BlockingQueue<ByteBuffer> filled;
+    
+    private final BlockingQueue<ByteBuffer> empty;
+    
+    private final Thread reader;
+    
+    private final long end;
+    
+    private volatile IOException failure;
+    
+    private ByteBuffer current;
+    
+    private boolean finished = false;
+    
+    /**
+     * Reads the whole of the given file.
+     * 
+     * @param file
+     *            The file to read.
+     * @param bufferSize
+     *            The size of each buffer in bytes.
+     * @param bufferCount
+     *            The number of buffers, at least 2.
+     * @throws IOException
+     *             If the file could not be opened.
+     */
+    public ChannelReadAheadInputStream(File file, int bufferSize, int bufferCount) throws IOException
+    {
+        this(file, new FileRange(0, file.length()), bufferSize, bufferCount);
+    }
+    
+    /**
+     * Reads the given range of the given file.
+     * 
+     * @param file
+     *            The file to read.
+     * @param range
+     *            The range of bytes in the file to read.
+     * @param bufferSize
+     *            The size of each buffer in bytes.
+     * @param bufferCount
+     *            The number of buffers, at least 2.
+     * @throws IOException
+     *             If the file could not be opened.
+     */
+    public ChannelReadAheadInputStream(File file, FileRange range, int bufferSize, int bufferCount)
+        throws IOException
+    {
+        if(bufferCount < 2)
+        {
+            throw new IllegalArgumentException("Need at least two read ahead buffers, was " + bufferCount);
+        }
+        this.file = new FileInputStream(file);
+        this.channel = this.file.getChannel();
+        this.end = range.getEnd();
+        this.filled = new ArrayBlockingQueue<ByteBuffer>(bufferCount + 1);
+        this.empty = new ArrayBlockingQueue<ByteBuffer>(bufferCount);
+        for(int i = 0; i < bufferCount; i++)
+        {
+            this.empty.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+        final long start = range.getStart();
+        this.reader = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    readAhead(start);
+                }
+            }, "read-ahead-io");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+    
+    private void readAhead(long position)
+    {
+        try
+        {
+            int read = 0;
+            while(position < end && read >= 0)
+            {
+                final ByteBuffer buffer = empty.take();
+                buffer.clear();
+                if(end - position < buffer.capacity())
+                {
+                    buffer.limit((int)(end - position));
+                }
+                while(buffer.hasRemaining() && (read = channel.read(buffer, position)) >= 0)
+                {
+                    position += read;
+                }
+                buffer.flip();
+                if(buffer.hasRemaining())
+                {
+                    filled.put(buffer);
+                }
+            }
+            filled.put(END_OF_RANGE);
+        }
+        catch(final IOException e)
+        {
+            failure = e;
+            filled.offer(END_OF_RANGE);
+        }
+        catch(final InterruptedException e)
+        {
+            // closed by the consumer
+        }
+    }
+    
+    @Override
+    public int read() throws IOException
+    {
+        if(!fill())
+        {
+            return -1;
+        }
+        return current.get() & 0xFF;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if(len == 0)
+        {
+            return 0;
+        }
+        if(!fill())
+        {
+            return -1;
+        }
+        final int count = Math.min(len, current.remaining());
+        current.get(b, off, count);
+        return count;
+    }
+    
+    @Override
+    public int available() throws IOException
+    {
+        return current == null ? 0 : current.remaining();
+    }
+    
+    @Override
+    public void close() throws IOException
+    {
+        reader.interrupt();
+        file.close();
+    }
+    
+    private boolean fill() throws IOException
+    {
+        if(current != null && current.hasRemaining())
+        {
+            return true;
+        }
+        if(finished)
+        {
+            return false;
+        }
+        if(current != null)
+        {
+            empty.offer(current);
+            current = null;
+        }
+        try
+        {
+            final ByteBuffer next = filled.take();
+            if(next == END_OF_RANGE)
+            {
+                finished = true;
+                if(failure != null)
+                {
+                    throw failure;
+                }
+                return false;
+            }
+            current = next;
+            return true;
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for data to be read");
+        }
+    }
+}
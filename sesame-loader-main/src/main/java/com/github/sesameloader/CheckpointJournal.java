@@ -0,0 +1,248 @@
+package com.github.sesameloader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Records which input files, or how many statements of them, have been committed, so that a load
+ * that died can be resumed without loading them again.
+ * 
+ * The journal is a text file that is only ever appended to, one line per entry:
+ * 
+ * <pre>
+ * load &lt;id&gt;
+ * committed &lt;statements&gt; &lt;source&gt;
+ * done &lt;source&gt;
+ * </pre>
+ * 
+ * separated by tabs, where the last committed count of a source wins. Each checkpoint is forced to
+ * disk before the load continues.
+ * 
+ * Progress is first noted in memory as statements are handed to the loading threads. A checkpoint
+ * takes a {@link Snapshot} of it, waits until everything parsed up to then has been committed,
+ * and then writes the snapshot.
+ */
+public class CheckpointJournal
+{
+    private static final String UTF_8 = "UTF-8";
+    
+    private static final String LOAD = "load";
+    
+    private static final String COMMITTED = "committed";
+    
+    private static final String DONE = "done";
+    
+    private final File file;
+    
+    /**
+     * Identifies the load across resumes, so that blank nodes get the same scope every time.
+     */
+    private final String loadId;
+    
+    private final Map<String, Long> committed = new HashMap<String, Long>();
+    
+    private final Set<String> done = new HashSet<String>();
+    
+    private final Map<String, Long> parsed = new HashMap<String, Long>();
+    
+    private final Set<String> finished = new HashSet<String>();
+    
+    /**
+     * @param file
+     *            The journal file.
+     * @param resume
+     *            True to continue the load recorded in the file, false to start a new journal even
+     *            if the file exists.
+     */
+    public CheckpointJournal(File file, boolean resume) throws IOException
+    {
+        this.file = file;
+        String id = null;
+        if(resume && file.exists())
+        {
+            id = read();
+        }
+        if(id == null)
+        {
+            id = UUID.randomUUID().toString().replace("-", "");
+            append(LOAD + "\t" + id + "\n", false);
+        }
+        this.loadId = id;
+    }
+    
+    /**
+     * Reads the complete lines of the journal, and cuts off a last line that was only partly
+     * written when the load died.
+     * 
+     * @return The load ID, or null if the file holds no journal.
+     */
+    private String read() throws IOException
+    {
+        String id = null;
+        final RandomAccessFile input = new RandomAccessFile(file, "rw");
+        try
+        {
+            final byte[] bytes = new byte[(int)input.length()];
+            input.readFully(bytes);
+            int start = 0;
+            for(int end = 0; end < bytes.length; end++)
+            {
+                if(bytes[end] != '\n')
+                {
+                    continue;
+                }
+                final String[] fields = new String(bytes, start, end - start, UTF_8).split("\t", 3);
+                if(LOAD.equals(fields[0]) && fields.length == 2)
+                {
+                    id = fields[1];
+                }
+                else if(COMMITTED.equals(fields[0]) && fields.length == 3)
+                {
+                    committed.put(fields[2], Long.valueOf(fields[1]));
+                }
+                else if(DONE.equals(fields[0]) && fields.length == 2)
+                {
+                    done.add(fields[1]);
+                }
+                start = end + 1;
+            }
+            input.setLength(start);
+        }
+        finally
+        {
+            input.close();
+        }
+        return id;
+    }
+    
+    public File getFile()
+    {
+        return file;
+    }
+    
+    /**
+     * @return True if every statement of the source has been committed.
+     */
+    public synchronized boolean isDone(String source)
+    {
+        return done.contains(source);
+    }
+    
+    /**
+     * @return The number of statements at the start of the source that have been committed.
+     */
+    public synchronized long getCommitted(String source)
+    {
+        final Long result = committed.get(source);
+        return result == null ? 0 : result;
+    }
+    
+    /**
+     * @return A blank node scope for the source that stays the same when the load is resumed, so
+     *         that blank nodes in the part of a file loaded after the resume are the same as in the
+     *         part loaded before.
+     */
+    public String getBNodeScope(String source) throws IOException
+    {
+        return "r" + UUID.nameUUIDFromBytes((loadId + source).getBytes(UTF_8)).toString().replace("-", "") + "x";
+    }
+    
+    /**
+     * Notes that the first statements of the source have been handed to the loading threads.
+     */
+    public synchronized void parsed(String source, long statements)
+    {
+        parsed.put(source, statements);
+    }
+    
+    /**
+     * Notes that every statement of the source has been handed to the loading threads.
+     */
+    public synchronized void finished(String source)
+    {
+        finished.add(source);
+    }
+    
+    /**
+     * @return The progress noted so far, to be written once it has been committed.
+     */
+    public synchronized Snapshot snapshot()
+    {
+        return new Snapshot(new HashMap<String, Long>(parsed), new HashSet<String>(finished));
+    }
+    
+    /**
+     * Records the progress in the snapshot as committed and forces it to disk.
+     */
+    public synchronized void write(Snapshot snapshot) throws IOException
+    {
+        final StringBuilder entries = new StringBuilder();
+        final Map<String, Long> progressed = new HashMap<String, Long>();
+        for(final Map.Entry<String, Long> next : snapshot.parsed.entrySet())
+        {
+            if(!done.contains(next.getKey()) && next.getValue() > getCommitted(next.getKey()))
+            {
+                entries.append(COMMITTED).append('\t').append(next.getValue()).append('\t').append(next.getKey()).append('\n');
+                progressed.put(next.getKey(), next.getValue());
+            }
+        }
+        for(final String next : snapshot.finished)
+        {
+            if(!done.contains(next))
+            {
+                entries.append(DONE).append('\t').append(next).append('\n');
+            }
+        }
+        if(entries.length() > 0)
+        {
+            append(entries.toString(), true);
+            committed.putAll(progressed);
+            done.addAll(snapshot.finished);
+        }
+    }
+    
+    /**
+     * Writes the entries to the journal file and waits until they are on disk. The file is only
+     * open while it is written, so the journal never needs to be closed.
+     */
+    private void append(String entries, boolean append) throws IOException
+    {
+        final FileOutputStream output = new FileOutputStream(file, append);
+        try
+        {
+            final Writer writer = new OutputStreamWriter(output, UTF_8);
+            writer.write(entries);
+            writer.flush();
+            output.getFD().sync();
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+    
+    /**
+     * The progress noted at the start of a checkpoint.
+     */
+    public static final class Snapshot
+    {
+        private final Map<String, Long> parsed;
+        
+        private final Set<String> finished;
+        
+        private Snapshot(Map<String, Long> parsed, Set<String> finished)
+        {
+            this.parsed = parsed;
+            this.finished = finished;
+        }
+    }
+}
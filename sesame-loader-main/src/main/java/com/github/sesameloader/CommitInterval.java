@@ -0,0 +1,144 @@
+package com.github.sesameloader;
+
+/**
+ * The number of statements a single pusher adds to its connection before committing.
+ *
+ * A fixed interval never changes. An adaptive interval starts at the given size and, after each
+ * commit, moves up or down by a constant factor depending on whether the last transaction added
+ * statements faster than the one before it, so it climbs towards the size with the best
+ * throughput for the store. It is shrunk regardless of throughput while a commit takes longer
+ * than the maximum commit latency or the heap is fuller than the maximum heap fraction, grows again
+ * once neither is the case, and always stays between the minimum and maximum interval.
+ *
+ * Instances are used by a single pusher thread and are not thread safe.
+ */
+public class CommitInterval
+{
+    public static final long DEFAULT_MAX_COMMIT_LATENCY_MILLIS = 30000;
+
+    public static final double DEFAULT_MAX_HEAP_FRACTION = 0.8;
+
+    /**
+     * Multiplier applied to the interval for each step.
+     */
+    private static final double STEP = 1.25;
+
+    /**
+     * A drop in throughput smaller than this is treated as noise rather than a reason to turn
+     * around.
+     */
+    private static final double TOLERANCE = 0.95;
+
+    private final int minimum;
+
+    private final int maximum;
+
+    private final long maxCommitLatencyNanos;
+
+    private final double maxHeapFraction;
+
+    private int interval;
+
+    private boolean growing = true;
+
+    /**
+     * Whether the last change was forced by commit latency or heap use rather than throughput.
+     */
+    private boolean limited = false;
+
+    private double lastRate = 0;
+
+    /**
+     * Creates a fixed interval.
+     */
+    public CommitInterval(int interval)
+    {
+        this(interval, interval, interval, DEFAULT_MAX_COMMIT_LATENCY_MILLIS, DEFAULT_MAX_HEAP_FRACTION);
+    }
+
+    /**
+     * Creates an adaptive interval.
+     *
+     * @param initial The interval used for the first transaction.
+     * @param minimum The smallest interval to shrink to.
+     * @param maximum The largest interval to grow to.
+     * @param maxCommitLatencyMillis The commit time above which the interval is always shrunk.
+     * @param maxHeapFraction The fraction of the maximum heap in use after a commit above which the
+     *            interval is always shrunk.
+     */
+    public CommitInterval(int initial, int minimum, int maximum, long maxCommitLatencyMillis, double maxHeapFraction)
+    {
+        if(minimum < 1 || maximum < minimum)
+        {
+            throw new IllegalArgumentException("Commit interval bounds must satisfy 1 <= minimum <= maximum, were " + minimum
+                    + " and " + maximum);
+        }
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.maxCommitLatencyNanos = maxCommitLatencyMillis * 1000000L;
+        this.maxHeapFraction = maxHeapFraction;
+        this.interval = clamp(initial);
+    }
+
+    /**
+     * @return The number of statements to add before the next commit.
+     */
+    public int get()
+    {
+        return interval;
+    }
+
+    public boolean isAdaptive()
+    {
+        return minimum != maximum;
+    }
+
+    /**
+     * Adjusts the interval after a commit.
+     *
+     * @param statements The number of statements in the committed transaction.
+     * @param busyNanos The time spent adding and committing those statements, excluding any time
+     *            spent waiting for the parser.
+     * @param commitNanos The time the commit itself took.
+     */
+    public void committed(int statements, long busyNanos, long commitNanos)
+    {
+        if(isAdaptive())
+        {
+            committed(statements, busyNanos, commitNanos, MemoryGovernor.heapFraction());
+        }
+    }
+
+    void committed(int statements, long busyNanos, long commitNanos, double heapFraction)
+    {
+        if(!isAdaptive() || statements == 0)
+        {
+            return;
+        }
+
+        final double rate = statements / (double)Math.max(1, busyNanos);
+        if(commitNanos > maxCommitLatencyNanos || heapFraction > maxHeapFraction)
+        {
+            growing = false;
+            limited = true;
+        }
+        else if(limited)
+        {
+            // probe upwards again once the store or the heap has recovered
+            growing = true;
+            limited = false;
+        }
+        else if(rate < lastRate * TOLERANCE)
+        {
+            growing = !growing;
+        }
+        lastRate = rate;
+
+        interval = clamp((int)Math.min(Integer.MAX_VALUE, growing ? Math.ceil(interval * STEP) : interval / STEP));
+    }
+
+    private int clamp(int value)
+    {
+        return Math.max(minimum, Math.min(maximum, value));
+    }
+}
@@ -0,0 +1,243 @@
+package com.github.sesameloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.UnsupportedRDFormatException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sesameloader.compiled.CompiledStatementWriter;
+import com.github.sesameloader.compression.Decompressor;
+import com.github.sesameloader.compression.DecompressorRegistry;
+
+/**
+ * Parses RDF files once into compiled statement files, which LoaderMain loads without parsing them again.
+ *
+ * Each input file is compiled into a file of the same name with .rdfbin appended, so that a directory of compiled files is loaded with parseThreads as the directory it was
+ * compiled from, and a context mapping written for the input files still applies.
+ */
+public class CompileMain
+{
+    private final Logger log = LoggerFactory.getLogger(CompileMain.class);
+
+    private final File outputDirectory;
+
+    private final int dictionarySize;
+
+    private int parseThreads = 1;
+
+    private boolean fastLineParser = true;
+
+    /**
+     * @param outputDirectory The directory to write the compiled files into.
+     * @param dictionarySize The number of values that each compiled file refers back to instead of repeating them.
+     */
+    public CompileMain(File outputDirectory, int dictionarySize)
+    {
+        if (dictionarySize < 1)
+            throw new IllegalArgumentException("Dictionary size must be at least 1, was " + dictionarySize);
+        this.outputDirectory = outputDirectory;
+        this.dictionarySize = dictionarySize;
+    }
+
+    /**
+     * @param parseThreads The number of files in a directory to compile at the same time.
+     */
+    public void setParseThreads(int parseThreads)
+    {
+        if (parseThreads < 1)
+            throw new IllegalArgumentException("Need at least one parse thread, was " + parseThreads);
+        this.parseThreads = parseThreads;
+    }
+
+    /**
+     * @param fastLineParser False to parse N-Triples with Rio.
+     */
+    public void setFastLineParser(boolean fastLineParser)
+    {
+        this.fastLineParser = fastLineParser;
+    }
+
+    /**
+     * Compiles the given file, or every file in the given directory.
+     *
+     * @return The number of statements compiled.
+     * @throws IOException If a file could not be read or written.
+     */
+    public long compile(File file, final String baseUri) throws IOException
+    {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs())
+            throw new IOException("Could not create " + outputDirectory);
+        if (!file.isDirectory())
+            return compileFile(file, baseUri);
+
+        final File[] files = file.listFiles();
+        final ExecutorService parseExec = Executors.newFixedThreadPool(Math.min(parseThreads, Math.max(1, files.length)));
+        long statements = 0;
+        try
+        {
+            final List<Future<Long>> compiled = new ArrayList<Future<Long>>(files.length);
+            for (final File infile : files)
+            {
+                compiled.add(parseExec.submit(new Callable<Long>()
+                {
+                    @Override
+                    public Long call() throws Exception
+                    {
+                        return compileFile(infile, baseUri);
+                    }
+                }));
+            }
+            for (Future<Long> next : compiled)
+                statements += await(next);
+        }
+        finally
+        {
+            parseExec.shutdownNow();
+        }
+        return statements;
+    }
+
+    /**
+     * Compiles a single file. Files that can not be parsed are logged as errors and not written.
+     *
+     * @return The number of statements compiled.
+     */
+    private long compileFile(File file, String baseUri) throws IOException
+    {
+        final String name = file.getName();
+
+        String shortFileName = name;
+        final Decompressor decompressor = DecompressorRegistry.getInstance().forFileName(name);
+        if (decompressor != null)
+            shortFileName = name.substring(0, name.length() - decompressor.getKey().length());
+
+        final RDFFormat format = RDFFormat.forFileName(shortFileName);
+        if (format == null)
+        {
+            log.error("Could not determine RDF format for filename=" + shortFileName);
+            return 0;
+        }
+
+        InputStream inputStream = new ChannelReadAheadInputStream(file, LoaderMain.DEFAULT_READ_BUFFER_SIZE, LoaderMain.DEFAULT_READ_BUFFERS);
+        if (decompressor != null)
+            inputStream = new ReadAheadInputStream(decompressor.decompress(inputStream), LoaderMain.DEFAULT_READ_BUFFER_SIZE, LoaderMain.DEFAULT_READ_BUFFERS);
+
+        final File output = new File(outputDirectory, name + CompiledStatementWriter.EXTENSION);
+        // only complete files get the final name, so an interrupted compile is not loaded by mistake
+        final File temporary = new File(outputDirectory, output.getName() + ".tmp");
+        final CompiledStatementWriter writer = new CompiledStatementWriter(temporary, dictionarySize);
+        boolean complete = false;
+        final long start = System.nanoTime();
+        try
+        {
+            final RDFParser rdfParser = LoaderMain.createParser(format, fastLineParser);
+            rdfParser.setValueFactory(new ValueFactoryImpl());
+            rdfParser.setVerifyData(false);
+            // keep the labels, the loader scopes them to the file
+            rdfParser.setPreserveBNodeIDs(true);
+            rdfParser.setRDFHandler(writer);
+            rdfParser.parse(inputStream, baseUri);
+            complete = true;
+        } catch (RDFParseException e)
+        {
+            log.error(e.getMessage());
+        } catch (RDFHandlerException e)
+        {
+            log.error(e.getMessage());
+        } catch (UnsupportedRDFormatException e)
+        {
+            log.error(e.getMessage());
+        }
+        finally
+        {
+            inputStream.close();
+            writer.close();
+        }
+
+        if (!complete)
+        {
+            temporary.delete();
+            return 0;
+        }
+        if (output.exists() && !output.delete() || !temporary.renameTo(output))
+            throw new IOException("Could not rename " + temporary + " to " + output);
+        final double seconds = Math.max(1, System.nanoTime() - start) / 1000000000.0;
+        log.info(String.format("%s compiled: %d statements in %.1fs (%d bytes)", name, writer.getStatementCount(), seconds, output.length()));
+        return writer.getStatementCount();
+    }
+
+    private static long await(Future<Long> compile) throws IOException
+    {
+        try
+        {
+            return compile.get();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for compiling to complete");
+        } catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * The main method for this class when run from the command line.
+     *
+     * Expects the following arguments:
+     *
+     * infile : The file or directory to compile.
+     * outdir : The directory to write the compiled files into, to be loaded by giving it as infile to LoaderMain.
+     * baseUri : The base URI for all of the files that are being compiled.
+     * dictionarySize : The number of values that each compiled file refers back to instead of repeating them. Defaults to 1048576.
+     * rioParser : Parses N-Triples with the Rio parser instead of the faster built-in one.
+     * parseThreads : The number of files in a directory to compile at the same time. Defaults to 1.
+     *
+     * @param args
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException
+    {
+        OptionParser parser = new OptionParser();
+        OptionSpec<File> infile = parser.accepts("infile").withRequiredArg().ofType(File.class).required();
+        OptionSpec<File> outdir = parser.accepts("outdir").withRequiredArg().ofType(File.class).required();
+        OptionSpec<String> baseUri = parser.accepts("baseUri").withRequiredArg().ofType(String.class).required();
+        OptionSpec<Integer> dictionarySize = parser.accepts("dictionarySize").withRequiredArg().ofType(Integer.class)
+                .defaultsTo(CompiledStatementWriter.DEFAULT_DICTIONARY_SIZE);
+        OptionSpec<Void> rioParser = parser.accepts("rioParser");
+        OptionSpec<Integer> parseThreads = parser.accepts("parseThreads").withRequiredArg().ofType(Integer.class).defaultsTo(1);
+
+        OptionSet options = parser.parse(args);
+        final CompileMain compiler = new CompileMain(options.valueOf(outdir), options.valueOf(dictionarySize));
+        compiler.setParseThreads(options.valueOf(parseThreads));
+        if (options.has(rioParser))
+            compiler.setFastLineParser(false);
+        compiler.compile(options.valueOf(infile), options.valueOf(baseUri));
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.sesameloader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.openrdf.rio.RDFFormat;
+
+import com.github.sesameloader.compiled.CompiledStatementWriter;
+import com.github.sesameloader.compression.Decompressor;
+import com.github.sesameloader.compression.DecompressorRegistry;
+
+/**
+ * Chooses the context that the statements of an input file without a context of their own are
+ * loaded into, so that a single load can fill many named graphs.
+ *
+ * Files are looked up in a mapping file first, which has one line per file:
+ *
+ * <pre>
+ * &lt;file&gt; &lt;context URI&gt;
+ * </pre>
+ *
+ * separated by white space, where empty lines and lines starting with # are ignored. A file given
+ * with a directory is resolved against the directory of the mapping file and only matches that
+ * file, one given by name alone matches a file of that name in any directory.
+ *
+ * Files that are not in the mapping get a context made from a namespace and their file name
+ * without compression and RDF format extensions, if a namespace is given, and no context
+ * otherwise.
+ */
+public class ContextMapping
+{
+    private static final String UTF_8 = "UTF-8";
+
+    private final String namespace;
+
+    private final Map<String, String> mapped = new HashMap<String, String>();
+
+    /**
+     * @param namespace
+     *            The namespace that file names are appended to for files that are not mapped, or
+     *            null to leave those without a context.
+     */
+    public ContextMapping(String namespace)
+    {
+        this.namespace = namespace;
+    }
+
+    /**
+     * Adds the files listed in the given mapping file, replacing earlier mappings of the same files.
+     */
+    public void read(File mappingFile) throws IOException
+    {
+        final File directory = mappingFile.getAbsoluteFile().getParentFile();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mappingFile), UTF_8));
+        try
+        {
+            String line;
+            int lineNumber = 0;
+            while((line = reader.readLine()) != null)
+            {
+                lineNumber++;
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#"))
+                {
+                    continue;
+                }
+
+                // file names may contain spaces, URIs may not
+                int split = line.length();
+                while(split > 0 && !Character.isWhitespace(line.charAt(split - 1)))
+                {
+                    split--;
+                }
+                if(split == 0)
+                {
+                    throw new IOException(mappingFile + ":" + lineNumber + ": expected a file and a context URI");
+                }
+                String context = line.substring(split);
+                if(context.startsWith("<") && context.endsWith(">"))
+                {
+                    context = context.substring(1, context.length() - 1);
+                }
+                if(context.indexOf(':') < 0)
+                {
+                    throw new IOException(mappingFile + ":" + lineNumber + ": not an absolute URI: " + context);
+                }
+
+                final String name = line.substring(0, split).trim();
+                if(name.indexOf('/') < 0 && name.indexOf(File.separatorChar) < 0)
+                {
+                    mapped.put(name, context);
+                }
+                else
+                {
+                    final File file = new File(name);
+                    mapped.put((file.isAbsolute() ? file : new File(directory, name)).getCanonicalPath(), context);
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return The context URI for the statements of the given file that have no context of their
+     *         own, or null if they are to be left without one.
+     */
+    public String getContext(File file) throws IOException
+    {
+        String result = mapped.get(file.getCanonicalPath());
+        if(result == null)
+        {
+            result = mapped.get(file.getName());
+        }
+        if(result == null && file.getName().endsWith(CompiledStatementWriter.EXTENSION))
+        {
+            // a compiled file is found under the name of the file it was compiled from
+            result = mapped.get(withoutCompiledExtension(file.getName()));
+        }
+        if(result == null && namespace != null)
+        {
+            result = namespace + encode(baseName(file.getName()));
+        }
+        return result;
+    }
+
+    /**
+     * @return The file name without its compiled, compression and RDF format extensions.
+     */
+    static String baseName(String fileName)
+    {
+        String result = withoutCompiledExtension(fileName);
+        final Decompressor decompressor = DecompressorRegistry.getInstance().forFileName(result);
+        if(decompressor != null)
+        {
+            result = result.substring(0, result.length() - decompressor.getKey().length());
+        }
+        final RDFFormat format = RDFFormat.forFileName(result);
+        if(format != null)
+        {
+            for(final String extension : format.getFileExtensions())
+            {
+                if(result.toLowerCase(Locale.ENGLISH).endsWith("." + extension) && result.length() > extension.length() + 1)
+                {
+                    return result.substring(0, result.length() - extension.length() - 1);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String withoutCompiledExtension(String fileName)
+    {
+        if(fileName.endsWith(CompiledStatementWriter.EXTENSION) && fileName.length() > CompiledStatementWriter.EXTENSION.length())
+        {
+            return fileName.substring(0, fileName.length() - CompiledStatementWriter.EXTENSION.length());
+        }
+        return fileName;
+    }
+
+    /**
+     * Percent encodes everything but the unreserved characters of RFC 3986.
+     */
+    private static String encode(String name) throws IOException
+    {
+        final StringBuilder result = new StringBuilder(name.length());
+        for(final byte next : name.getBytes(UTF_8))
+        {
+            final int c = next & 0xff;
+            if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_'
+                    || c == '~')
+            {
+                result.append((char)c);
+            }
+            else
+            {
+                result.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+            }
+        }
+        return result.toString();
+    }
+}
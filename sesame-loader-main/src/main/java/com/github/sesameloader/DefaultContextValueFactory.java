@@ -0,0 +1,92 @@
+package com.github.sesameloader;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryBase;
+
+/**
+ * ValueFactory that puts every statement created without a context into a fixed context, while
+ * delegating the creation of all values to another ValueFactory.
+ * 
+ * Parsers create their statements through their ValueFactory, so the triples of a document end up
+ * in the context chosen for that document, while the statements of named graphs in N-Quads or TriG
+ * keep the context they were parsed with.
+ */
+public class DefaultContextValueFactory extends ValueFactoryBase
+{
+    private final ValueFactory delegate;
+    
+    private final Resource context;
+    
+    /**
+     * @param delegate
+     *            The ValueFactory that creates the values.
+     * @param context
+     *            The context of statements that are created without one.
+     */
+    public DefaultContextValueFactory(ValueFactory delegate, Resource context)
+    {
+        this.delegate = delegate;
+        this.context = context;
+    }
+
+    
+    @Override
+    public BNode createBNode()
+    {
+        return delegate.createBNode();
+    }
+    
+    @Override
+    public BNode createBNode(String nodeID)
+    {
+        return delegate.createBNode(nodeID);
+    }
+    
+    @Override
+    public URI createURI(String uri)
+    {
+        return delegate.createURI(uri);
+    }
+    
+    @Override
+    public URI createURI(String namespace, String localName)
+    {
+        return delegate.createURI(namespace, localName);
+    }
+    
+    @Override
+    public Literal createLiteral(String label)
+    {
+        return delegate.createLiteral(label);
+    }
+    
+    @Override
+    public Literal createLiteral(String label, String language)
+    {
+        return delegate.createLiteral(label, language);
+    }
+    
+    @Override
+    public Literal createLiteral(String label, URI datatype)
+    {
+        return delegate.createLiteral(label, datatype);
+    }
+    
+    @Override
+    public Statement createStatement(Resource subject, URI predicate, Value object)
+    {
+        return delegate.createStatement(subject, predicate, object, this.context);
+    }
+    
+    @Override
+    public Statement createStatement(Resource subject, URI predicate, Value object, Resource context)
+    {
+        return delegate.createStatement(subject, predicate, object, context == null ? this.context : context);
+    }
+}
@@ -0,0 +1,238 @@
+package com.github.sesameloader;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+
+/**
+ * Recognises statements that have been loaded before, so that pushers can skip adding them again.
+ * 
+ * Every statement, together with the contexts it goes into, is first put into a Bloom filter of a
+ * fixed size shared by all pushers. Statements the filter has not seen are certainly new. Those it
+ * may have seen are only dropped once the pusher's connection confirms that the repository
+ * already contains them, so a false positive of the filter costs a lookup but never loses a
+ * statement. A duplicate whose first copy another pusher has not committed yet is not visible to
+ * that lookup and is added as before.
+ * 
+ * The filter is thread safe and never blocks.
+ */
+public class DuplicateStatementFilter
+{
+    /**
+     * More hash functions than this cost more time than the lower false positive rate saves.
+     */
+    private static final int MAX_HASH_FUNCTIONS = 16;
+    
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    private final AtomicLongArray bits;
+    
+    private final long bitCount;
+    
+    private final int hashFunctions;
+    
+    private final AtomicLong candidates = new AtomicLong();
+    
+    private final AtomicLong duplicates = new AtomicLong();
+    
+    /**
+     * @param memoryBytes
+     *            The size of the filter in bytes.
+     * @param expectedStatements
+     *            The number of distinct statements the filter is sized for, which only decides the
+     *            number of hash functions. More statements raise the false positive rate rather
+     *            than the memory used.
+     */
+    public DuplicateStatementFilter(long memoryBytes, long expectedStatements)
+    {
+        final long words = memoryBytes / 8;
+        if(words < 1 || words > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Duplicate filter size must be between 8 bytes and 16GB, was " + memoryBytes);
+        }
+        if(expectedStatements < 1)
+        {
+            throw new IllegalArgumentException("Expected statements must be positive, was " + expectedStatements);
+        }
+        this.bits = new AtomicLongArray((int)words);
+        this.bitCount = words * 64;
+        this.hashFunctions = (int)Math.max(1,
+                Math.min(MAX_HASH_FUNCTIONS, Math.round(bitCount / (double)expectedStatements * Math.log(2))));
+    }
+    
+    /**
+     * Looks up a statement that {@link #put(Statement, Resource...)} may have seen before in the
+     * repository.
+     * 
+     * @param connection
+     *            The connection the statement is added with, which has to see every statement it
+     *            added before.
+     * @param contexts
+     *            The contexts the statement is added to, or none for its own context.
+     * @return True if the repository already contains the statement.
+     */
+    public boolean isLoaded(Statement statement, RepositoryConnection connection, Resource... contexts)
+        throws RepositoryException
+    {
+        candidates.incrementAndGet();
+        boolean contained;
+        if(contexts.length == 0)
+        {
+            contained = connection.hasStatement(statement.getSubject(), statement.getPredicate(), statement.getObject(),
+                    false, statement.getContext());
+        }
+        else
+        {
+            contained = true;
+            for(int i = 0; contained && i < contexts.length; i++)
+            {
+                contained = connection.hasStatement(statement.getSubject(), statement.getPredicate(),
+                        statement.getObject(), false, contexts[i]);
+            }
+        }
+        if(contained)
+        {
+            duplicates.incrementAndGet();
+        }
+        return contained;
+    }
+    
+    /**
+     * Puts the statement, with the contexts it is added to, into the filter.
+     * 
+     * @return True if the filter may have contained the statement already, false if it certainly
+     *         did not.
+     */
+    public boolean put(Statement statement, Resource... contexts)
+    {
+        final long hash = hash(statement, contexts);
+        // double hashing, every index is derived from the two halves of a single hash
+        final long step = mix(hash) | 1;
+        boolean present = true;
+        for(int i = 0; i < hashFunctions; i++)
+        {
+            final long index = ((hash + i * step) & Long.MAX_VALUE) % bitCount;
+            final int word = (int)(index >>> 6);
+            final long mask = 1L << index;
+            long current;
+            do
+            {
+                current = bits.get(word);
+                if((current & mask) != 0)
+                {
+                    break;
+                }
+                present = false;
+            }
+            while(!bits.compareAndSet(word, current, current | mask));
+        }
+        return present;
+    }
+    
+    /**
+     * @return The number of statements the filter may have seen before, which were looked up in
+     *         the repository.
+     */
+    public long getCandidates()
+    {
+        return candidates.get();
+    }
+    
+    /**
+     * @return The number of statements the repository was found to contain already, which were
+     *         not added again.
+     */
+    public long getDuplicates()
+    {
+        return duplicates.get();
+    }
+    
+    public int getHashFunctions()
+    {
+        return hashFunctions;
+    }
+    
+    private static long hash(Statement statement, Resource... contexts)
+    {
+        long hash = FNV_OFFSET;
+        hash = hash(hash, statement.getSubject());
+        hash = hash(hash, statement.getPredicate());
+        hash = hash(hash, statement.getObject());
+        if(contexts.length == 0)
+        {
+            hash = hash(hash, statement.getContext());
+        }
+        else
+        {
+            for(final Resource context : contexts)
+            {
+                hash = hash(hash, context);
+            }
+        }
+        return mix(hash);
+    }
+    
+    private static long hash(long hash, Value value)
+    {
+        if(value == null)
+        {
+            return hash(hash, 'N', "");
+        }
+        if(value instanceof BNode)
+        {
+            return hash(hash, 'B', ((BNode)value).getID());
+        }
+        if(value instanceof Literal)
+        {
+            final Literal literal = (Literal)value;
+            hash = hash(hash, 'L', literal.getLabel());
+            if(literal.getLanguage() != null)
+            {
+                return hash(hash, '@', literal.getLanguage());
+            }
+            if(literal.getDatatype() != null)
+            {
+                return hash(hash, '^', literal.getDatatype().stringValue());
+            }
+            return hash;
+        }
+        return hash(hash, 'U', value.stringValue());
+    }
+    
+    /**
+     * FNV-1a over a tag character and the characters of the string, with the length so that
+     * adjacent strings can not run into each other.
+     */
+    private static long hash(long hash, char tag, String value)
+    {
+        hash = (hash ^ tag) * FNV_PRIME;
+        hash = (hash ^ value.length()) * FNV_PRIME;
+        for(int i = 0; i < value.length(); i++)
+        {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+    
+    /**
+     * The finalizer of MurmurHash3, which spreads the bits of the FNV hash over the whole word.
+     */
+    private static long mix(long hash)
+    {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
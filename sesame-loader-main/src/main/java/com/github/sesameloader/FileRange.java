@@ -0,0 +1,42 @@
+package com.github.sesameloader;
+
+/**
+ * A contiguous range of bytes within a file, from start inclusive to end exclusive.
+ */
+public class FileRange
+{
+    private final long start;
+    
+    private final long end;
+    
+    public FileRange(long start, long end)
+    {
+        if(start < 0 || end < start)
+        {
+            throw new IllegalArgumentException("Invalid file range start=" + start + " end=" + end);
+        }
+        this.start = start;
+        this.end = end;
+    }
+    
+    public long getStart()
+    {
+        return start;
+    }
+    
+    public long getEnd()
+    {
+        return end;
+    }
+    
+    public long length()
+    {
+        return end - start;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "[" + start + "," + end + ")";
+    }
+}
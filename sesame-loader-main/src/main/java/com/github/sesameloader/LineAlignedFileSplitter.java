@@ -0,0 +1,89 @@
+package com.github.sesameloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a line based file, such as N-Triples, into byte ranges that each start at the beginning of
+ * a line and end just after a newline, so each range can be parsed independently.
+ */
+public class LineAlignedFileSplitter
+{
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    
+    private LineAlignedFileSplitter()
+    {
+    }
+    
+    /**
+     * Splits the given file into at most the given number of ranges of roughly equal size.
+     * 
+     * @param file
+     *            The file to split.
+     * @param parts
+     *            The maximum number of ranges to return.
+     * @param minimumRangeLength
+     *            The smallest range worth parsing separately, fewer ranges are returned for small
+     *            files.
+     * @return The ranges, in file order, which together cover the whole file.
+     * @throws IOException
+     *             If the file could not be read.
+     */
+    public static List<FileRange> split(File file, int parts, long minimumRangeLength) throws IOException
+    {
+        final long length = file.length();
+        final int count = (int)Math.max(1, Math.min(parts, length / Math.max(1, minimumRangeLength)));
+        final List<FileRange> ranges = new ArrayList<FileRange>(count);
+        
+        final RandomAccessFile input = new RandomAccessFile(file, "r");
+        try
+        {
+            long start = 0;
+            for(int i = 1; i < count && start < length; i++)
+            {
+                final long end = nextLineStart(input, Math.max(start, length / count * i), length);
+                if(end > start)
+                {
+                    ranges.add(new FileRange(start, end));
+                    start = end;
+                }
+            }
+            if(start < length || ranges.isEmpty())
+            {
+                ranges.add(new FileRange(start, length));
+            }
+        }
+        finally
+        {
+            input.close();
+        }
+        
+        return ranges;
+    }
+    
+    /**
+     * Finds the offset just after the first newline at or after the given position.
+     */
+    private static long nextLineStart(RandomAccessFile input, long position, long length) throws IOException
+    {
+        final byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        input.seek(position);
+        long offset = position;
+        int read;
+        while((read = input.read(buffer)) > 0)
+        {
+            for(int i = 0; i < read; i++)
+            {
+                if(buffer[i] == '\n')
+                {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return length;
+    }
+}
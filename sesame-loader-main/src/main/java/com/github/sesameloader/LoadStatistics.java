@@ -0,0 +1,67 @@
+package com.github.sesameloader;
+
+/**
+ * The outcome of a single load job run by a {@link LoaderService}.
+ */
+public class LoadStatistics
+{
+    private final String source;
+    
+    private final long statements;
+    
+    private final long queuedNanos;
+    
+    private final long loadNanos;
+    
+    LoadStatistics(String source, long statements, long queuedNanos, long loadNanos)
+    {
+        this.source = source;
+        this.statements = statements;
+        this.queuedNanos = queuedNanos;
+        this.loadNanos = loadNanos;
+    }
+    
+    /**
+     * @return The name of the file or a description of the stream that was loaded.
+     */
+    public String getSource()
+    {
+        return source;
+    }
+    
+    /**
+     * @return The number of statements parsed, and committed, by the job.
+     */
+    public long getStatements()
+    {
+        return statements;
+    }
+    
+    /**
+     * @return The time the job waited for a free job thread before it started.
+     */
+    public long getQueuedMillis()
+    {
+        return queuedNanos / 1000000L;
+    }
+    
+    /**
+     * @return The time from the start of parsing until every statement was committed.
+     */
+    public long getLoadMillis()
+    {
+        return loadNanos / 1000000L;
+    }
+    
+    public double getStatementsPerSecond()
+    {
+        return statements / (Math.max(1, loadNanos) / 1000000000.0);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return String.format("%s: %d statements in %dms (%.0f statements/s), queued %dms", source, statements,
+                getLoadMillis(), getStatementsPerSecond(), getQueuedMillis());
+    }
+}
@@ -6,19 +6,25 @@ package com.github.sesameloader;
  */
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
@@ -26,6 +32,7 @@ import joptsimple.OptionSpec;
 
 import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFHandlerException;
@@ -37,17 +44,149 @@ import org.openrdf.sail.SailException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.sesameloader.compiled.CompiledStatementReader;
+import com.github.sesameloader.compiled.CompiledStatementWriter;
+import com.github.sesameloader.compression.Decompressor;
+import com.github.sesameloader.compression.DecompressorRegistry;
+import com.github.sesameloader.metrics.LoaderMetrics;
+import com.github.sesameloader.metrics.MetricsReporter;
+import com.github.sesameloader.ntriples.FastNTriplesParser;
+import com.github.sesameloader.route.FanOutStage;
+import com.github.sesameloader.route.RoutingKey;
+import com.github.sesameloader.route.RoutingStage;
+import com.github.sesameloader.sort.ExternalSortStage;
+import com.github.sesameloader.transport.TransportType;
+import com.github.sesameloader.transport.WaitStrategy;
+
 import java.util.concurrent.CountDownLatch;
 
 public class LoaderMain
 {
 
-    private final BlockingQueue<Statement> queue = new ArrayBlockingQueue<Statement>(1000);
+    /**
+     * The default number of statements handed from the parser to a pusher in a single chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    /**
+     * Single line based files are only split into ranges that are at least this long, as smaller ranges are not worth a separate parser.
+     */
+    static final long MINIMUM_SPLIT_RANGE_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * The default size in bytes of each buffer that input files are read into ahead of the parser.
+     */
+    public static final int DEFAULT_READ_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The default number of buffers that input files are read into ahead of the parser.
+     */
+    public static final int DEFAULT_READ_BUFFERS = 2;
+
+    /**
+     * The default number of seconds between reports of the load progress in the log.
+     */
+    public static final int DEFAULT_METRICS_INTERVAL = 60;
+
+    /**
+     * The default smallest and largest number of statements per transaction for an adaptive commit interval.
+     */
+    public static final int DEFAULT_MIN_COMMIT_INTERVAL = 1000;
+    public static final int DEFAULT_MAX_COMMIT_INTERVAL = 1000000;
+
+    /**
+     * The default number of distinct statements the duplicate filter is sized for.
+     */
+    public static final long DEFAULT_DEDUP_EXPECTED_STATEMENTS = 100000000L;
+
+    /**
+     * The default number of seconds between checkpoints of a load with a checkpoint journal.
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 300;
+
+    /**
+     * The default number of chunks each additional target repository may fall behind by before it holds back the parsers.
+     */
+    public static final int DEFAULT_TARGET_BUFFER_CHUNKS = 64;
+
+    /**
+     * The databaseProvider that builds a new native store at the end of the load, and can not look up statements before then.
+     */
+    private static final String NATIVE_BULK_PROVIDER = "native-bulk";
+
+    /**
+     * Registers N-Quads, so that files ending in .nq are recognised.
+     */
+    private static final RDFFormat NQUADS = FastNTriplesParser.NQUADS;
+
+    private final StatementChunkQueue queue;
+    /**
+     * The queue parsers put statements into, which is the pusher queue unless statements are sorted in between.
+     */
+    private StatementChunkQueue parseQueue;
+    private int parseQueueConsumers;
+    /**
+     * The number of threads taking chunks from the pusher queue, which is the routing stage if statements are routed.
+     */
+    private int queueConsumers;
+    private ExternalSortStage sortStage;
+    private List<StatementChunkQueue> lanes;
+    private RoutingStage routingStage;
+    /**
+     * The loaders of the other repositories that every statement is also loaded into, or that the statements are split across.
+     */
+    private final List<LoaderMain> targets = new ArrayList<LoaderMain>();
+    private RoutingKey shardKey;
+    private FanOutStage fanOutStage;
+    private Thread fanOutThread;
+    /**
+     * The queue the fan out stage feeds the loading threads of this loader through, and the number of threads taking from it.
+     */
+    private StatementChunkQueue fanOutQueue;
+    private int fanOutQueueConsumers;
+    /**
+     * The ValueFactory the parsers create values with.
+     */
+    private ValueFactory valueFactory;
+    /**
+     * The contexts every statement is put into, or none to keep the context of each statement.
+     */
+    private final Resource[] contexts;
+    private ContextMapping contextMapping;
     private final Logger log = LoggerFactory.getLogger(LoaderMain.class);
     private final CountDownLatch isDone;
     private final ExecutorService exec;
     private final RepositoryManager manager;
     private final List<StatementFromQueueIntoRepositoryPusher> pushers = new ArrayList<StatementFromQueueIntoRepositoryPusher>();
+    private final LoaderMetrics metrics;
+    private final int commitInterval;
+    private int metricsInterval = DEFAULT_METRICS_INTERVAL;
+    private int parseThreads = 1;
+    private int documentParseThreads = 0;
+    private int readBufferSize = DEFAULT_READ_BUFFER_SIZE;
+    private int readBuffers = DEFAULT_READ_BUFFERS;
+    private boolean offHeapChunks = false;
+    private boolean fastLineParser = true;
+    private MemoryGovernor memoryGovernor;
+    /**
+     * Whether this loader started the memory governor, and so stops it when it is closed or replaced.
+     */
+    private boolean ownsMemoryGovernor;
+    private TransportType transport = TransportType.BLOCKING;
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+    private CheckpointJournal journal;
+    private long checkpointIntervalNanos;
+    private volatile long lastCheckpointNanos;
+    private final Lock checkpointLock = new ReentrantLock();
+    private boolean closeAfterLoad = true;
+    private volatile boolean closed = false;
+    /**
+     * The number of group syncs started and completed, and whether one is running, guarded by syncLock.
+     */
+    private final Object syncLock = new Object();
+    private long syncsStarted = 0;
+    private long syncsCompleted = 0;
+    private boolean syncing = false;
 
     /**
      * Creates an instance of the LoaderMain class for a single bulk loading process using the given data directory as the repository location.
@@ -63,7 +202,25 @@ public class LoaderMain
     public LoaderMain(File dataDir, String providerType, Integer commitXStatements, Integer threads, Resource... contexts) throws SailException,
             RepositoryException
     {
-        this(getRepositoryManager(dataDir, providerType), commitXStatements, threads, contexts);
+        this(dataDir, providerType, commitXStatements, threads, DEFAULT_CHUNK_SIZE, contexts);
+    }
+
+    /**
+     * Creates an instance of the LoaderMain class for a single bulk loading process using the given data directory as the repository location.
+     *
+     * @param dataDir The directory where the repository keeps its data files.
+     * @param providerType The type of the repository to be used. Currently support "native" and "owlim" as values.
+     * @param commitXStatements The number of statements to commit in each transaction.
+     * @param threads The number of threads to use for loading.
+     * @param chunkSize The number of statements handed from the parser to the loading threads at a time.
+     * @param contexts The contexts to put the statements into.
+     * @throws SailException If there is a Sail exception thrown during the creation of the repository.
+     * @throws RepositoryException If there is a Repository exception thrown during the creation of the repository.
+     */
+    public LoaderMain(File dataDir, String providerType, Integer commitXStatements, Integer threads, Integer chunkSize, Resource... contexts) throws SailException,
+            RepositoryException
+    {
+        this(getRepositoryManager(dataDir, providerType), commitXStatements, threads, chunkSize, contexts);
 
         log.warn("The repository will not automatically be shutdown. You are responsible for ensuring that the repository manager shuts the repository down correctly after loading");
     }
@@ -79,6 +236,32 @@ public class LoaderMain
      * @throws RepositoryException If there is a Repository exception thrown during the creation of the repository.
      */
     public LoaderMain(RepositoryManager nextManager, Integer commitXStatements, Integer threads, Resource... contexts) throws SailException, RepositoryException
+    {
+        this(nextManager, commitXStatements, threads, DEFAULT_CHUNK_SIZE, contexts);
+    }
+
+    /**
+     * Creates an instance of the LoaderMain class for a single bulk loading process using the given repository manager to access the repository.
+     *
+     * @param nextManager The repository manager to use when accessing the repository.
+     * @param commitXStatements The number of statements to commit in each transaction.
+     * @param threads The number of threads to use for loading.
+     * @param chunkSize The number of statements handed from the parser to the loading threads at a time.
+     * @param contexts The contexts to put the statements into.
+     * @throws SailException If there is a Sail exception thrown during the creation of the repository.
+     * @throws RepositoryException If there is a Repository exception thrown during the creation of the repository.
+     */
+    public LoaderMain(RepositoryManager nextManager, Integer commitXStatements, Integer threads, Integer chunkSize, Resource... contexts) throws SailException, RepositoryException
+    {
+        // Two chunks per thread keeps every pusher busy while the parser fills the next chunk
+        this(nextManager, commitXStatements, threads, chunkSize, Math.max(2, threads * 2), contexts);
+    }
+
+    /**
+     * Creates an instance of the LoaderMain class with a queue of the given number of chunks in front of its loading threads.
+     */
+    private LoaderMain(RepositoryManager nextManager, Integer commitXStatements, Integer threads, Integer chunkSize, int queueCapacity, Resource[] contexts)
+            throws SailException, RepositoryException
     {
         this.manager = nextManager;
         
@@ -92,7 +275,15 @@ public class LoaderMain
             throw new RuntimeException("Tried to select more than the maximum number of threads for the given repository manager");
         }
         
+        queue = new StatementChunkQueue(queueCapacity, chunkSize);
+        parseQueue = queue;
+        parseQueueConsumers = threads;
+        queueConsumers = threads;
+        valueFactory = nextManager.getValueFactory();
+        metrics = new LoaderMetrics(queue);
         isDone = new CountDownLatch(threads);
+        commitInterval = commitXStatements;
+        this.contexts = contexts;
         createPushers(commitXStatements, threads, manager, contexts);
     }
 
@@ -107,16 +298,452 @@ public class LoaderMain
         this.manager.shutDown();
     }
 
+    /**
+     * Sets the number of files that are parsed concurrently when a directory is loaded. Defaults to 1, which parses the files one after the other on the calling thread.
+     *
+     * When a single large, uncompressed N-Triples file is loaded, it is instead split into this many parts which are parsed concurrently.
+     *
+     * @param parseThreads The number of threads to use for parsing.
+     */
+    public void setParseThreads(int parseThreads)
+    {
+        if (parseThreads < 1)
+            throw new IllegalArgumentException("Need at least one parse thread, was " + parseThreads);
+        this.parseThreads = parseThreads;
+    }
+
+    /**
+     * Sets the number of files in formats other than N-Triples and N-Quads, such as RDF/XML and Turtle, that are parsed concurrently when a directory is loaded. These parse many
+     * times slower per byte than the line based formats, so giving them threads of their own keeps them from holding up the rest of a directory. By default they share the
+     * parseThreads.
+     *
+     * When a single large, uncompressed RDF/XML file is loaded, it is instead split between the top level elements of its rdf:RDF element into this many parts which are parsed
+     * concurrently.
+     *
+     * @param documentParseThreads The number of threads to use for parsing documents.
+     */
+    public void setDocumentParseThreads(int documentParseThreads)
+    {
+        if (documentParseThreads < 1)
+            throw new IllegalArgumentException("Need at least one document parse thread, was " + documentParseThreads);
+        this.documentParseThreads = documentParseThreads;
+    }
+
+    /**
+     * Sets the size and number of the buffers that a dedicated I/O thread reads each input file into ahead of the parser.
+     *
+     * @param readBufferSize The size of each buffer in bytes.
+     * @param readBuffers The number of buffers for each file, at least 2 so that reading and parsing overlap.
+     */
+    public void setReadBuffers(int readBufferSize, int readBuffers)
+    {
+        if (readBufferSize < 1)
+            throw new IllegalArgumentException("Read buffer size must be positive, was " + readBufferSize);
+        if (readBuffers < 2)
+            throw new IllegalArgumentException("Need at least two read buffers, was " + readBuffers);
+        this.readBufferSize = readBufferSize;
+        this.readBuffers = readBuffers;
+    }
+
+    /**
+     * Sets how often the progress of each stage of a load is reported in the log. The same figures are available over JMX while a load runs.
+     *
+     * @param seconds The number of seconds between reports, or 0 to only report at the end of a load.
+     */
+    public void setMetricsInterval(int seconds)
+    {
+        if (seconds < 0)
+            throw new IllegalArgumentException("Metrics interval can not be negative, was " + seconds);
+        this.metricsInterval = seconds;
+    }
+
+    /**
+     * Lets every loading thread tune its own number of statements per transaction, starting from the commit interval given to the constructor.
+     *
+     * Each thread grows its interval while that improves its throughput and shrinks it when throughput drops, when a commit takes longer than maxCommitLatencyMillis or when the heap is
+     * more than {@link CommitInterval#DEFAULT_MAX_HEAP_FRACTION} full after garbage collection.
+     *
+     * @param minCommitInterval The smallest number of statements per transaction.
+     * @param maxCommitInterval The largest number of statements per transaction.
+     * @param maxCommitLatencyMillis The commit time above which the number of statements per transaction is always reduced.
+     */
+    public void setAdaptiveCommitInterval(int minCommitInterval, int maxCommitInterval, long maxCommitLatencyMillis)
+    {
+        for (StatementFromQueueIntoRepositoryPusher pusher:pushers)
+            pusher.setCommitInterval(new CommitInterval(commitInterval, minCommitInterval, maxCommitInterval, maxCommitLatencyMillis,
+                    CommitInterval.DEFAULT_MAX_HEAP_FRACTION));
+    }
+
+    /**
+     * Lets the parsers reuse the URIs and short literals they created recently instead of creating them again, which saves memory and, for stores that remember the IDs of the values
+     * they create, ID lookups on repetitive data. Must be called before the first load.
+     *
+     * @param entries The maximum number of values kept in the cache.
+     */
+    public void setValueCacheSize(int entries)
+    {
+        final CachingValueFactory cache = new CachingValueFactory(manager.getValueFactory(), entries);
+        valueFactory = cache;
+        metrics.setValueCache(cache);
+        // sorting may have been set up first
+        if (sortStage != null)
+            sortStage.setValueFactory(cache);
+        if (offHeapChunks)
+            setOffHeapChunks(true);
+    }
+
+    /**
+     * Loads the statements of each input file that have no context of their own into the context the given mapping chooses for the file. Statements that the parser gives a
+     * context, such as those of named graphs in N-Quads or TriG, always keep it, as the loading threads add every statement with its own context through connection.add. Must be
+     * called before the first load.
+     *
+     * Loads from an InputStream are not affected.
+     *
+     * @param contextMapping The mapping from files to contexts, or null to leave statements without a context of their own in the default context.
+     * @throws IllegalStateException If this loader was created with contexts, which every statement is put into instead.
+     */
+    public void setContextMapping(ContextMapping contextMapping)
+    {
+        if (contexts.length > 0)
+            throw new IllegalStateException("This loader puts every statement into the contexts it was created with");
+        this.contextMapping = contextMapping;
+    }
+
+    /**
+     * Records in the given journal which input files, or how many statements at their start, have been committed, so that a load that died can be resumed with the same journal.
+     * Must be called before the first load.
+     *
+     * Every intervalSeconds a parser thread waits until the statements parsed so far have been committed and then writes a checkpoint, and a final one is written at the end of
+     * each load. When resuming, files that were loaded completely are skipped, and the statements of a partly loaded file that were committed are parsed again but not loaded.
+     * Blank nodes are scoped to the file and the journal, so they are the same before and after a resume. Loads from an InputStream are not recorded.
+     *
+     * Each checkpoint makes every loading thread commit. With {@link #setSortRunSize(int, File)} only the checkpoint at the end of each load is written, as waiting for a checkpoint
+     * would end the sort early.
+     *
+     * @param journalFile The journal file.
+     * @param resume True to skip the work recorded in an existing journal, false to start a new journal.
+     * @param intervalSeconds The number of seconds between checkpoints.
+     * @throws IOException If the journal could not be read or created.
+     */
+    public void setCheckpointJournal(File journalFile, boolean resume, int intervalSeconds) throws IOException
+    {
+        if (intervalSeconds < 1)
+            throw new IllegalArgumentException("Checkpoint interval must be positive, was " + intervalSeconds);
+        journal = new CheckpointJournal(journalFile, resume);
+        checkpointIntervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+        lastCheckpointNanos = System.nanoTime();
+    }
+
+    /**
+     * Makes the loading threads skip statements that the repository already contains, for example when files overlap.
+     *
+     * Every statement is put into a Bloom filter of the given size, and only the statements it may have seen before are looked up in the repository, so a statement is never skipped
+     * unless the repository is known to contain it. A duplicate of a statement another loading thread has not committed yet is added as before.
+     *
+     * @param memoryBytes The size of the filter in bytes.
+     * @param expectedStatements The number of distinct statements the filter is sized for, which decides its number of hash functions.
+     */
+    public void setDuplicateFilter(long memoryBytes, long expectedStatements)
+    {
+        final DuplicateStatementFilter filter = new DuplicateStatementFilter(memoryBytes, expectedStatements);
+        for (StatementFromQueueIntoRepositoryPusher pusher:pushers)
+            pusher.setDuplicateFilter(filter);
+        metrics.setDuplicateFilter(filter);
+    }
+
+    /**
+     * Sets whether statements wait for the loading threads encoded outside the Java heap rather than as statement objects, which is off by default.
+     *
+     * The statements the parsers create then become garbage straight away and the values are created again by the loading threads, so far fewer objects survive long enough to be
+     * promoted to the old generation when there are many loading threads or large chunks.
+     *
+     * @param offHeapChunks True to encode queued statements outside the heap.
+     */
+    public void setOffHeapChunks(boolean offHeapChunks)
+    {
+        this.offHeapChunks = offHeapChunks;
+        queue.setOffHeap(offHeapChunks ? valueFactory : null);
+        if (lanes != null)
+            for (StatementChunkQueue lane:lanes)
+                lane.setOffHeap(offHeapChunks ? valueFactory : null);
+        if (parseQueue != queue)
+            parseQueue.setOffHeap(offHeapChunks ? valueFactory : null);
+    }
+
+    /**
+     * Watches the memory in use and, while it runs out, makes the parsers wait until the loading threads have emptied the queue and the loading threads commit after every chunk,
+     * so that large queues and commit intervals do not run the JVM out of memory. Must be called before the first load.
+     *
+     * @param heapThreshold The fraction of the tenured heap in use after a collection above which memory is under pressure.
+     * @param offHeapLimit The number of bytes of direct buffers above which memory is under pressure, or 0 to only watch the heap.
+     * @see MemoryGovernor
+     */
+    public void setMemoryGovernor(double heapThreshold, long offHeapLimit)
+    {
+        final MemoryGovernor governor = new MemoryGovernor(heapThreshold, offHeapLimit);
+        governor.start();
+        setMemoryGovernor(governor);
+        ownsMemoryGovernor = true;
+    }
+
+    /**
+     * Watches the memory in use with a governor that the caller starts and stops. Several loaders in the same JVM, such as the loaders of the repositories of
+     * {@link #addTarget(RepositoryManager, int, int)}, have to share a single governor, as each governor sets the usage thresholds of the memory pools of the whole JVM and
+     * restores them when it is stopped. Must be called before the first load.
+     *
+     * @param governor The governor, which this loader does not stop.
+     * @see #setMemoryGovernor(double, long)
+     */
+    public void setMemoryGovernor(MemoryGovernor governor)
+    {
+        if (memoryGovernor != null && ownsMemoryGovernor)
+            memoryGovernor.stop();
+        ownsMemoryGovernor = false;
+        memoryGovernor = governor;
+        parseQueue.setMemoryGovernor(memoryGovernor);
+        for (StatementFromQueueIntoRepositoryPusher pusher:pushers)
+            pusher.setMemoryGovernor(memoryGovernor);
+        metrics.setMemoryGovernor(memoryGovernor);
+    }
+
+    /**
+     * Sets whether N-Triples and N-Quads are read with the {@link FastNTriplesParser}, which is the default, rather than with Rio. Rio does not read N-Quads.
+     *
+     * @param fastLineParser False to parse N-Triples with Rio.
+     */
+    public void setFastLineParser(boolean fastLineParser)
+    {
+        this.fastLineParser = fastLineParser;
+    }
+
+    /**
+     * Sets what the chunks of statements move through between the parsers, the pipeline stages and the loading threads. Must be called before the first load.
+     *
+     * The default {@link TransportType#BLOCKING} queue shares one lock between producers and consumers and lets waiting threads sleep. The {@link TransportType#RING} buffer is lock
+     * free, and its waiting threads follow the given wait strategy, which costs CPU time in exchange for faster hand-offs.
+     *
+     * @param transport The kind of transport.
+     * @param waitStrategy How threads wait on a ring buffer that is full or empty.
+     */
+    public void setTransport(TransportType transport, WaitStrategy waitStrategy)
+    {
+        this.transport = transport;
+        this.waitStrategy = waitStrategy;
+        try
+        {
+            queue.setTransport(transport, waitStrategy, queueConsumers);
+            if (parseQueue != queue)
+                parseQueue.setTransport(transport, waitStrategy, parseQueueConsumers);
+            if (lanes != null)
+                for (StatementChunkQueue lane:lanes)
+                    lane.setTransport(transport, waitStrategy, 1);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while changing the transport", e);
+        }
+    }
+
+    /**
+     * Gives every loading thread a queue of its own and sends each statement to the thread chosen by hashing its subject or context, instead of letting all threads take from one
+     * queue. Must be called before the first load, and before {@link #setSortRunSize(int, File)}.
+     *
+     * Each thread then adds all statements about a subject, or in a context, so concurrent transactions contend less inside the store and each transaction touches fewer parts of
+     * its indexes. Data with a few very common subjects or contexts keeps the threads that get them busier than the others.
+     *
+     * @param key The part of each statement that decides its loading thread.
+     */
+    public void setRouting(RoutingKey key)
+    {
+        if (sortStage != null)
+            throw new IllegalStateException("Routing has to be set up before sorting");
+        if (lanes != null)
+            throw new IllegalStateException("Statements are already being routed");
+        lanes = new ArrayList<StatementChunkQueue>(pushers.size());
+        for (StatementFromQueueIntoRepositoryPusher pusher:pushers)
+        {
+            // a single producer and consumer only need one chunk in flight and one being filled
+            final StatementChunkQueue lane = new StatementChunkQueue(2, queue.getChunkSize(), transport, waitStrategy);
+            if (offHeapChunks)
+                lane.setOffHeap(valueFactory);
+            lanes.add(lane);
+            pusher.setQueue(lane);
+        }
+        try
+        {
+            // every pusher moves to its lane after taking a marker from the shared queue
+            queue.sync(pushers.size());
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while moving the loading threads to their queues", e);
+        }
+        queueConsumers = 1;
+        if (parseQueue == queue)
+            parseQueueConsumers = 1;
+        routingStage = new RoutingStage(queue, lanes, key);
+        final Thread routingThread = new Thread(routingStage, "statement-router");
+        routingThread.start();
+    }
+
+    /**
+     * Sorts the statements of each load in subject, predicate, object order before they reach the loading threads, so a store that assigns IDs in the order it first sees values writes
+     * its indexes mostly sequentially. Must be called before the first load.
+     *
+     * Sorting delays all loading until a load has been parsed completely. Statements are sorted in memory runSize at a time and spilled to run files in the given directory, which are
+     * merged at the end of the load.
+     *
+     * @param runSize The number of statements sorted in memory at a time.
+     * @param directory The directory for the temporary run files.
+     */
+    public void setSortRunSize(int runSize, File directory)
+    {
+        if (sortStage != null)
+            throw new IllegalStateException("Statements are already being sorted");
+        parseQueue = new StatementChunkQueue(queue.capacity(), queue.getChunkSize(), transport, waitStrategy);
+        if (offHeapChunks)
+            parseQueue.setOffHeap(valueFactory);
+        parseQueue.setMemoryGovernor(memoryGovernor);
+        parseQueueConsumers = 1;
+        sortStage = new ExternalSortStage(parseQueue, queue, queueConsumers, runSize, directory, valueFactory);
+        final Thread sortThread = new Thread(sortStage, "external-sort");
+        sortThread.start();
+    }
+
+    /**
+     * Also loads every statement into the given repository, with loading threads of its own, so that a single parse fills several repositories, which may be of different types.
+     * With {@link #setSharding(RoutingKey)} the repository instead gets its share of the statements. Must be called before the first load.
+     *
+     * The repository is fed through a queue of the given number of chunks. Its loading threads can fall behind those of the other repositories by that many chunks before the
+     * parsers wait for them, so a slow repository only holds back the others once its queue is full. From then on a single thread that hands chunks to every repository waits for
+     * it, and all repositories load at the pace of the slowest one. Loads, and checkpoints, wait until every repository has committed.
+     *
+     * @param target The repository manager of the other repository.
+     * @param threads The number of threads loading into it.
+     * @param bufferChunks The number of chunks waiting for its loading threads.
+     * @return The loader of the other repository, which can be set up like this one before the first load, for example with routing or a duplicate filter of its own, but is
+     * loaded and closed through this loader. None of the settings of this loader, such as sorting, off-heap chunks, a memory governor or a value cache, are copied to it.
+     * @throws SailException
+     * @throws RepositoryException
+     */
+    public LoaderMain addTarget(RepositoryManager target, int threads, int bufferChunks) throws SailException, RepositoryException
+    {
+        if (fanOutThread != null)
+            throw new IllegalStateException("Targets have to be added before the first load");
+        if (bufferChunks < 1)
+            throw new IllegalArgumentException("Need room for at least one chunk, was " + bufferChunks);
+        final LoaderMain loader = new LoaderMain(target, commitInterval, threads, queue.getChunkSize(), bufferChunks, contexts);
+        targets.add(loader);
+        return loader;
+    }
+
+    /**
+     * Splits the statements between this repository and the targets, instead of loading every statement into all of them, so that a single parse builds several smaller stores
+     * whose indexes each stay small enough to be kept in memory. Each statement goes to the repository chosen by hashing its subject or context, so a subject, or a context, is
+     * never split across repositories. Must be called before the first load.
+     *
+     * @param key The part of each statement that decides its repository.
+     */
+    public void setSharding(RoutingKey key)
+    {
+        if (fanOutThread != null)
+            throw new IllegalStateException("Sharding has to be set up before the first load");
+        this.shardKey = key;
+    }
+
+    /**
+     * Puts a fan out stage between the parsers and the loading threads of this loader and of every target, unless there are no targets or it has been started already. Setting up
+     * routing and sorting of this loader and its targets is done by then.
+     */
+    private synchronized void startFanOut()
+    {
+        if (targets.isEmpty() || fanOutThread != null)
+            return;
+        fanOutQueue = parseQueue;
+        fanOutQueueConsumers = parseQueueConsumers;
+        final List<StatementChunkQueue> outputs = new ArrayList<StatementChunkQueue>(targets.size() + 1);
+        final List<Integer> consumers = new ArrayList<Integer>(targets.size() + 1);
+        outputs.add(fanOutQueue);
+        consumers.add(fanOutQueueConsumers);
+        for (LoaderMain target:targets)
+        {
+            outputs.add(target.parseQueue);
+            consumers.add(target.parseQueueConsumers);
+        }
+        parseQueue = new StatementChunkQueue(queue.capacity(), queue.getChunkSize(), transport, waitStrategy);
+        if (offHeapChunks)
+            parseQueue.setOffHeap(valueFactory);
+        parseQueue.setMemoryGovernor(memoryGovernor);
+        parseQueueConsumers = 1;
+        fanOutStage = new FanOutStage(parseQueue, outputs, consumers, shardKey);
+        fanOutThread = new Thread(fanOutStage, "fan-out");
+        fanOutThread.start();
+    }
+
+    /**
+     * Sets whether the loading threads and their connections are stopped at the end of a load, which is the default.
+     *
+     * A loader that is not closed after each load can run any number of loads one after the other or at the same time, and each load returns once its statements have been
+     * committed. It has to be closed with {@link #close()} when it is no longer needed.
+     */
+    public void setCloseAfterLoad(boolean closeAfterLoad)
+    {
+        this.closeAfterLoad = closeAfterLoad;
+    }
+
+    /**
+     * @return The throughput and latency counters for the loads run by this loader.
+     */
+    public LoaderMetrics getMetrics()
+    {
+        return metrics;
+    }
+
     /**
      * The main method for this class when run from the command line.
      *
      * Expects the following arguments:
      *
-     * infile : The file or directory to load.
+     * infile : The file or directory to load. Files ending in .rdfbin are read as written by CompileMain.
      * dataFile : The location of the repository on the file system.
      * baseUri : The base URI for all of the files that are being loaded.
      * commitInterval : The number of statements to aggregate into a single transaction when loading.
+     * adaptiveCommit : Lets each loading thread tune its number of statements per transaction, starting from commitInterval.
+     * minCommitInterval : The smallest number of statements per transaction when adaptiveCommit is given. Defaults to 1000.
+     * maxCommitInterval : The largest number of statements per transaction when adaptiveCommit is given. Defaults to 1000000.
+     * maxCommitLatency : The commit time in milliseconds above which an adaptive commit interval is always reduced. Defaults to 30000.
+     * valueCacheSize : When given, the number of recently created URIs and short literals the parsers reuse.
+     * transport : "blocking" for a blocking queue between the parsers and the loading threads, or "ring" for a lock free ring buffer. Defaults to blocking.
+     * waitStrategy : How threads wait on a ring buffer, "busy-spin", "yield" or "park". Defaults to park.
+     * contextMapping : When given, a file listing the context that the statements of each input file without a context of their own are loaded into.
+     * contextNamespace : When given, the statements of input files without a context of their own and not listed in contextMapping are loaded into a context made by appending the
+     * file name, without extensions, to this namespace. Statements of named graphs in N-Quads or TriG always keep their context.
+     * routeBy : When given, "subject" or "context", each statement is loaded by the loading thread chosen by hashing that part of it.
+     * sortRunSize : When given, statements are sorted in subject, predicate, object order before loading, this many at a time in memory.
+     * sortDirectory : The directory for the temporary files of sortRunSize. Defaults to the system temporary directory.
+     * checkpoint : Keeps a checkpoint journal next to dataFile, in dataFile.checkpoint, so that the load can be resumed. Also enabled by resume and checkpointInterval.
+     * resume : Skips the files, and statements at the start of files, that the checkpoint journal next to dataFile records as committed by an earlier run of this load.
+     * checkpointInterval : The number of seconds between checkpoints written to the journal dataFile.checkpoint. Defaults to 300.
+     * dedupMemory : When given, the size in MB of a filter used to skip statements the repository already contains.
+     * dedupExpected : The number of distinct statements the dedupMemory filter is sized for. Defaults to 100000000.
+     * memoryGovernor : Throttles the parsers and commits early while the heap, or the direct buffers, run out of memory.
+     * memoryThreshold : The fraction of the tenured heap in use after a collection above which memoryGovernor throttles. Defaults to 0.8.
+     * offHeapLimit : When given, the size in MB of direct buffers above which memoryGovernor throttles.
+     * offHeapChunks : Keeps the statements waiting for the loading threads encoded outside the Java heap.
+     * rioParser : Parses N-Triples with the Rio parser instead of the faster built-in one.
+     * chunkSize : The number of statements handed from the parser to the loading threads at a time. Defaults to 4096.
      * pushThreads : The number of threads to use when loading the repository.
+     * parseThreads : The number of files in a directory, or parts of a single large N-Triples or N-Quads file, to parse at the same time. Defaults to 1.
+     * documentParseThreads : When given, the number of files in a directory in other formats, such as RDF/XML and Turtle, or parts of a single large RDF/XML file, to parse at the same
+     * time on threads of their own.
+     * readBufferSize : The size in bytes of each buffer that input files are read into ahead of the parser. Defaults to 4MB.
+     * readBuffers : The number of buffers that each input file is read into ahead of the parser. Defaults to 2.
+     * metricsInterval : The number of seconds between progress reports in the log, or 0 for only a final report. Defaults to 60.
+     * targetDataFile : The location of another repository that every statement is also loaded into, from the same parse. May be given several times.
+     * targetDatabaseProvider : The type of the repository of each targetDataFile, in the same order. Defaults to databaseProvider.
+     * targetBuffer : The number of chunks each targetDataFile may fall behind by before it holds back the parsers. Defaults to 64.
+     * shardBy : When given, "subject" or "context", the statements are split between dataFile and every targetDataFile by hashing that part of each statement, instead of being
+     * loaded into all of them.
      * databaseProvider : The type of the repository. Currently we support two values for this field, "native" for a Sesame Native repository and "owlim" for an OwlimSchemaRepository.
      *
      * @param args
@@ -134,24 +761,124 @@ public class LoaderMain
         OptionSpec<File> dataFile = parser.accepts("dataFile").withRequiredArg().ofType(File.class).required();
         OptionSpec<String> baseUri = parser.accepts("baseUri").withRequiredArg().ofType(String.class).required();
         OptionSpec<Integer> commitEveryXStatements = parser.accepts("commitInterval").withRequiredArg().required().ofType(Integer.class);
+        OptionSpec<Void> adaptiveCommit = parser.accepts("adaptiveCommit");
+        OptionSpec<Integer> minCommitInterval = parser.accepts("minCommitInterval").withRequiredArg().ofType(Integer.class).defaultsTo(DEFAULT_MIN_COMMIT_INTERVAL);
+        OptionSpec<Integer> maxCommitInterval = parser.accepts("maxCommitInterval").withRequiredArg().ofType(Integer.class).defaultsTo(DEFAULT_MAX_COMMIT_INTERVAL);
+        OptionSpec<Long> maxCommitLatency = parser.accepts("maxCommitLatency").withRequiredArg().ofType(Long.class).defaultsTo(CommitInterval.DEFAULT_MAX_COMMIT_LATENCY_MILLIS);
+        OptionSpec<Integer> valueCacheSize = parser.accepts("valueCacheSize").withRequiredArg().ofType(Integer.class);
+        OptionSpec<String> transport = parser.accepts("transport").withRequiredArg().ofType(String.class).defaultsTo("blocking");
+        OptionSpec<String> waitStrategy = parser.accepts("waitStrategy").withRequiredArg().ofType(String.class).defaultsTo("park");
+        OptionSpec<File> contextMapping = parser.accepts("contextMapping").withRequiredArg().ofType(File.class);
+        OptionSpec<String> contextNamespace = parser.accepts("contextNamespace").withRequiredArg().ofType(String.class);
+        OptionSpec<String> routeBy = parser.accepts("routeBy").withRequiredArg().ofType(String.class);
+        OptionSpec<Integer> sortRunSize = parser.accepts("sortRunSize").withRequiredArg().ofType(Integer.class);
+        OptionSpec<File> sortDirectory = parser.accepts("sortDirectory").withRequiredArg().ofType(File.class).defaultsTo(new File(System.getProperty("java.io.tmpdir")));
+        OptionSpec<Void> checkpoint = parser.accepts("checkpoint");
+        OptionSpec<Void> resume = parser.accepts("resume");
+        OptionSpec<Integer> checkpointInterval = parser.accepts("checkpointInterval").withRequiredArg().ofType(Integer.class).defaultsTo(DEFAULT_CHECKPOINT_INTERVAL);
+        OptionSpec<Integer> dedupMemory = parser.accepts("dedupMemory").withRequiredArg().ofType(Integer.class);
+        OptionSpec<Long> dedupExpected = parser.accepts("dedupExpected").withRequiredArg().ofType(Long.class).defaultsTo(DEFAULT_DEDUP_EXPECTED_STATEMENTS);
+        OptionSpec<Void> memoryGovernor = parser.accepts("memoryGovernor");
+        OptionSpec<Double> memoryThreshold = parser.accepts("memoryThreshold").withRequiredArg().ofType(Double.class).defaultsTo(MemoryGovernor.DEFAULT_HEAP_THRESHOLD);
+        OptionSpec<Integer> offHeapLimit = parser.accepts("offHeapLimit").withRequiredArg().ofType(Integer.class).defaultsTo(0);
+        OptionSpec<Void> offHeapChunks = parser.accepts("offHeapChunks");
+        OptionSpec<Void> rioParser = parser.accepts("rioParser");
+        OptionSpec<Integer> chunkSize = parser.accepts("chunkSize").withRequiredArg().ofType(Integer.class).defaultsTo(DEFAULT_CHUNK_SIZE);
         OptionSpec<Integer> threads = parser.accepts("pushThreads").withRequiredArg().ofType(Integer.class).required();
+        OptionSpec<Integer> parseThreads = parser.accepts("parseThreads").withRequiredArg().ofType(Integer.class).defaultsTo(1);
+        OptionSpec<Integer> documentParseThreads = parser.accepts("documentParseThreads").withRequiredArg().ofType(Integer.class);
+        OptionSpec<Integer> readBufferSize = parser.accepts("readBufferSize").withRequiredArg().ofType(Integer.class).defaultsTo(DEFAULT_READ_BUFFER_SIZE);
+        OptionSpec<Integer> readBuffers = parser.accepts("readBuffers").withRequiredArg().ofType(Integer.class).defaultsTo(DEFAULT_READ_BUFFERS);
+        OptionSpec<Integer> metricsInterval = parser.accepts("metricsInterval").withRequiredArg().ofType(Integer.class).defaultsTo(DEFAULT_METRICS_INTERVAL);
+        OptionSpec<File> targetDataFile = parser.accepts("targetDataFile").withRequiredArg().ofType(File.class);
+        OptionSpec<String> targetDatabaseProvider = parser.accepts("targetDatabaseProvider").withRequiredArg().ofType(String.class);
+        OptionSpec<Integer> targetBuffer = parser.accepts("targetBuffer").withRequiredArg().ofType(Integer.class).defaultsTo(DEFAULT_TARGET_BUFFER_CHUNKS);
+        OptionSpec<String> shardBy = parser.accepts("shardBy").withRequiredArg().ofType(String.class);
         OptionSpec<String> dataBaseProvider = parser.accepts("databaseProvider").withRequiredArg().ofType(String.class).required();
 
         OptionSet options = parser.parse(args);
+        final List<File> targetFiles = options.valuesOf(targetDataFile);
+        final List<String> targetProviders = new ArrayList<String>(options.valuesOf(targetDatabaseProvider));
+        while (targetProviders.size() < targetFiles.size())
+            targetProviders.add(options.valueOf(dataBaseProvider));
+        if (options.has(dedupMemory)
+                && (NATIVE_BULK_PROVIDER.equals(options.valueOf(dataBaseProvider)) || targetProviders.subList(0, targetFiles.size()).contains(NATIVE_BULK_PROVIDER)))
+            throw new IllegalArgumentException("-dedupMemory can not be used with " + NATIVE_BULK_PROVIDER
+                    + ", which only builds new stores and drops duplicate statements when it writes them");
         if (options.has(infile) && options.has(dataFile) && options.has(baseUri) && options.has(commitEveryXStatements)
                 && options.has(threads))
         {
             RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(options.valueOf(dataFile), options.valueOf(dataBaseProvider));
+            final List<RepositoryManager> targetManagers = new ArrayList<RepositoryManager>();
+            // a single governor for every repository, as a governor sets the JVM wide usage thresholds of the memory pools
+            final MemoryGovernor governor = options.has(memoryGovernor)
+                    ? new MemoryGovernor(options.valueOf(memoryThreshold), options.valueOf(offHeapLimit) * 1024L * 1024L) : null;
 
             try
             {
+                if (governor != null)
+                    governor.start();
                 final LoaderMain loader = new LoaderMain(repositoryManager,
-                        options.valueOf(commitEveryXStatements), options.valueOf(threads));
+                        options.valueOf(commitEveryXStatements), options.valueOf(threads), options.valueOf(chunkSize));
+                loader.setParseThreads(options.valueOf(parseThreads));
+                if (options.has(documentParseThreads))
+                    loader.setDocumentParseThreads(options.valueOf(documentParseThreads));
+                loader.setReadBuffers(options.valueOf(readBufferSize), options.valueOf(readBuffers));
+                loader.setMetricsInterval(options.valueOf(metricsInterval));
+                final File dataDirectory = options.valueOf(dataFile).getAbsoluteFile();
+                if (options.has(checkpoint) || options.has(resume) || options.has(checkpointInterval))
+                    loader.setCheckpointJournal(new File(dataDirectory.getParentFile(), dataDirectory.getName() + ".checkpoint"), options.has(resume),
+                            options.valueOf(checkpointInterval));
+                if (options.has(rioParser))
+                    loader.setFastLineParser(false);
+                if (options.has(contextMapping) || options.has(contextNamespace))
+                {
+                    final ContextMapping mapping = new ContextMapping(options.valueOf(contextNamespace));
+                    if (options.has(contextMapping))
+                        mapping.read(options.valueOf(contextMapping));
+                    loader.setContextMapping(mapping);
+                }
+                final List<LoaderMain> loaders = new ArrayList<LoaderMain>();
+                loaders.add(loader);
+                for (int i = 0; i < targetFiles.size(); i++)
+                {
+                    final RepositoryManager targetManager = LoaderMain.getRepositoryManager(targetFiles.get(i), targetProviders.get(i));
+                    targetManagers.add(targetManager);
+                    loaders.add(loader.addTarget(targetManager, options.valueOf(threads), options.valueOf(targetBuffer)));
+                }
+                // every repository is loaded the same way
+                for (LoaderMain next:loaders)
+                {
+                    if (options.has(valueCacheSize))
+                        next.setValueCacheSize(options.valueOf(valueCacheSize));
+                    if (options.has(dedupMemory))
+                        next.setDuplicateFilter(options.valueOf(dedupMemory) * 1024L * 1024L, options.valueOf(dedupExpected));
+                    if (options.has(offHeapChunks))
+                        next.setOffHeapChunks(true);
+                    if (governor != null)
+                        next.setMemoryGovernor(governor);
+                    if (options.has(transport) || options.has(waitStrategy))
+                        next.setTransport(TransportType.valueOf(options.valueOf(transport).toUpperCase(Locale.ENGLISH)),
+                                WaitStrategy.valueOf(options.valueOf(waitStrategy).toUpperCase(Locale.ENGLISH).replace('-', '_')));
+                    if (options.has(routeBy))
+                        next.setRouting(RoutingKey.valueOf(options.valueOf(routeBy).toUpperCase(Locale.ENGLISH)));
+                    if (options.has(sortRunSize))
+                        next.setSortRunSize(options.valueOf(sortRunSize), options.valueOf(sortDirectory));
+                    if (options.has(adaptiveCommit))
+                        next.setAdaptiveCommitInterval(options.valueOf(minCommitInterval), options.valueOf(maxCommitInterval),
+                                options.valueOf(maxCommitLatency));
+                }
+                if (options.has(shardBy))
+                    loader.setSharding(RoutingKey.valueOf(options.valueOf(shardBy).toUpperCase(Locale.ENGLISH)));
                 loader.load(options.valueOf(infile), options.valueOf(baseUri));
             }
             finally
             {
+                if (governor != null)
+                    governor.stop();
                 repositoryManager.shutDown();
+                for (RepositoryManager targetManager:targetManagers)
+                    targetManager.shutDown();
             }
         }
     }
@@ -187,7 +914,7 @@ public class LoaderMain
         for (int i = 0; i < threads; i++)
         {
             final StatementFromQueueIntoRepositoryPusher statementFromQueueIntoRepositoryPusher = new StatementFromQueueIntoRepositoryPusher(queue, commitEveryXStatements,
-                    connection, isDone, contexts);
+                    connection, isDone, metrics.newPusherMetrics(), contexts);
             pushers.add(statementFromQueueIntoRepositoryPusher);
             exec.submit(statementFromQueueIntoRepositoryPusher);
         }
@@ -200,6 +927,10 @@ public class LoaderMain
      *
      * The parsers are chosen based on the current registered Sesame Rio parsers.
      *
+     * The files in a directory are parsed concurrently by the number of threads set using {@link #setParseThreads(int)}, all feeding the same loading threads.
+     *
+     * Returns once every statement has been committed.
+     *
      * @param file The file or directory to load.
      * @param baseUri The base URI to use while loading the files.
      * @throws FileNotFoundException
@@ -210,31 +941,27 @@ public class LoaderMain
     public void load(File file, String baseUri)
             throws FileNotFoundException, IOException, RepositoryException, SailException
     {
-
+        final MetricsReporter reporter = new MetricsReporter(metrics, metricsInterval);
+        CheckpointJournal.Snapshot checkpoint = null;
         try
         {
-            if (file.isDirectory())
-                for (File infile : file.listFiles())
-                    loadFileInternal(infile, baseUri);
-            else
-                loadFileInternal(file, baseUri);
-            for (StatementFromQueueIntoRepositoryPusher pusher:pushers)
-                pusher.setFinished(true);
+            parse(file, baseUri);
+        } finally
+        {
+            // only signal the end once every file has been parsed
             try
             {
-                isDone.await();
-                exec.shutdown();
-                while (!exec.isTerminated())
-                    exec.awaitTermination(1, TimeUnit.SECONDS);
-            } catch (InterruptedException ex)
+                if (journal != null)
+                    checkpoint = journal.snapshot();
+                finishLoad();
+            } finally
             {
-               Thread.currentThread().interrupt();
+                reporter.stop();
             }
-        } finally
-        {
-            for (StatementFromQueueIntoRepositoryPusher pusher:pushers)
-                pusher.setFinished(true);
         }
+        throwIfPushersFailed();
+        if (checkpoint != null)
+            journal.write(checkpoint);
     }
 
     /**
@@ -242,6 +969,8 @@ public class LoaderMain
      *
      * Note that there must be a parser available in the list of currently loaded Sesame Rio parsers to match the given format.
      *
+     * Returns once every statement has been committed.
+     *
      * @param inputStream The input stream containing RDF data
      * @param format The RDFFormat for the data in the input stream
      * @param baseUri The base URI to use for the load
@@ -255,25 +984,428 @@ public class LoaderMain
     public void load(InputStream inputStream, RDFFormat format, String baseUri)
             throws IOException, RepositoryException, SailException, RDFParseException, RDFHandlerException, UnsupportedRDFormatException
     {
-
+        final MetricsReporter reporter = new MetricsReporter(metrics, metricsInterval);
         try
         {
-            loadInputStreamInternal(inputStream, format, baseUri);
-            for (StatementFromQueueIntoRepositoryPusher pusher:pushers)
-                pusher.setFinished(true);
-            exec.shutdown();
-            while (!exec.isTerminated())
-                try
-                {
-                    exec.awaitTermination(1, TimeUnit.SECONDS);
-                } catch (InterruptedException e)
-                {
+            parse(inputStream, format, baseUri);
+        } finally
+        {
+            try
+            {
+                finishLoad();
+            } finally
+            {
+                reporter.stop();
+            }
+        }
+        throwIfPushersFailed();
+    }
+
+    /**
+     * Parses the given file or directory into the queue, without waiting for the statements to be committed.
+     *
+     * @return The number of statements parsed.
+     */
+    long parse(File file, String baseUri)
+            throws FileNotFoundException, IOException, RepositoryException, SailException
+    {
+        checkOpen();
+        startFanOut();
+        if (file.isDirectory())
+            return loadDirectoryInternal(file, baseUri);
+        else if (parseThreadsFor(file) > 1 && isSplittable(file))
+            return loadSplitFileInternal(file, baseUri);
+        else
+            return loadFileInternal(file, baseUri);
+    }
+
+    /**
+     * Parses the given stream into the queue, without waiting for the statements to be committed.
+     *
+     * @return The number of statements parsed.
+     */
+    long parse(InputStream inputStream, RDFFormat format, String baseUri)
+            throws IOException, RepositoryException, RDFParseException, RDFHandlerException, UnsupportedRDFormatException
+    {
+        checkOpen();
+        startFanOut();
+        return loadInputStreamInternal(inputStream, format, baseUri);
+    }
+
+    /**
+     * Waits until every statement parsed so far has been committed, without stopping the loading threads.
+     *
+     * @throws RepositoryException If a loading thread failed.
+     */
+    void sync() throws RepositoryException
+    {
+        try
+        {
+            parseQueue.sync(parseQueueConsumers);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted while waiting for statements to be committed", e);
+        }
+        throwIfPushersFailed();
+    }
+
+    /**
+     * Waits until every statement parsed so far has been committed, like {@link #sync()}, but shares the sync with the other threads that call this method at the same time. A
+     * thread that arrives while a sync is running waits for the next one, which is started once for all threads that arrived in the meantime, so that many small loads finishing
+     * together make the loading threads commit once instead of once for each load.
+     *
+     * @throws RepositoryException If a loading thread failed.
+     */
+    void groupSync() throws RepositoryException
+    {
+        final long started;
+        synchronized (syncLock)
+        {
+            // only a sync that starts after this point covers the statements parsed so far
+            final long needed = syncsStarted + 1;
+            while (syncing && syncsCompleted < needed)
+            {
+                try
+                {
+                    syncLock.wait();
+                } catch (InterruptedException e)
+                {
                     Thread.currentThread().interrupt();
+                    throw new RepositoryException("Interrupted while waiting for statements to be committed", e);
                 }
+            }
+            if (syncsCompleted >= needed)
+            {
+                started = 0;
+            }
+            else
+            {
+                syncing = true;
+                started = ++syncsStarted;
+            }
+        }
+        if (started == 0)
+        {
+            throwIfPushersFailed();
+            return;
+        }
+        try
+        {
+            sync();
+        }
+        finally
+        {
+            synchronized (syncLock)
+            {
+                syncsCompleted = started;
+                syncing = false;
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    int getMetricsInterval()
+    {
+        return metricsInterval;
+    }
+
+    /**
+     * Waits until every statement parsed so far has been committed. Closes this loader unless it was made reusable.
+     */
+    private void finishLoad()
+    {
+        if (closeAfterLoad)
+        {
+            close();
+            return;
+        }
+        try
+        {
+            parseQueue.sync(parseQueueConsumers);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void throwIfPushersFailed() throws RepositoryException
+    {
+        if (sortStage != null && sortStage.getFailure() != null)
+            throw new RepositoryException("Sorting statements failed, they were not loaded", sortStage.getFailure());
+        if (routingStage != null && routingStage.getFailure() != null)
+            throw new RepositoryException("Routing statements failed, they were not loaded", routingStage.getFailure());
+        if (fanOutStage != null && fanOutStage.getFailure() != null)
+            throw new RepositoryException("Handing statements to the other repositories failed, they were not loaded", fanOutStage.getFailure());
+        for (StatementFromQueueIntoRepositoryPusher pusher:pushers)
+            if (pusher.getFailure() != null)
+                throw new RepositoryException("A loading thread failed, its statements were not loaded", pusher.getFailure());
+        for (LoaderMain target:targets)
+            target.throwIfPushersFailed();
+    }
+
+    /**
+     * Commits everything that has been loaded and stops the loading threads. Loads are no longer accepted afterwards.
+     *
+     * This is done at the end of every load unless the loader was made reusable with {@link #setCloseAfterLoad(boolean)}.
+     */
+    public void close()
+    {
+        synchronized (pushers)
+        {
+            if (closed)
+                return;
+            closed = true;
+        }
+        try
+        {
+            parseQueue.endOfStream(parseQueueConsumers);
+            if (fanOutThread != null)
+            {
+                // the fan out stage stops at the end of the stream, the queues behind it are ended by their loaders
+                fanOutThread.join();
+                fanOutQueue.endOfStream(fanOutQueueConsumers);
+            }
+            isDone.await();
+            exec.shutdown();
+            while (!exec.isTerminated())
+                exec.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
         } finally
         {
-            for (StatementFromQueueIntoRepositoryPusher pusher:pushers)
-                pusher.setFinished(true);
+            if (memoryGovernor != null && ownsMemoryGovernor)
+                memoryGovernor.stop();
+        }
+        for (int i = 0; i < targets.size(); i++)
+        {
+            targets.get(i).close();
+            if (fanOutStage != null)
+                log.info(String.format("target %d held back the other repositories for %.1fs", i + 1, fanOutStage.getWaitNanos(i + 1) / 1000000000.0));
+        }
+    }
+
+    private void checkOpen()
+    {
+        if (closed)
+            throw new IllegalStateException("This loader has been closed");
+    }
+
+    /**
+     * Internal helper method that loads every file in the given directory, parsing up to parseThreads files at the same time, and up to documentParseThreads files in other than
+     * line based formats at the same time on a pool of their own when that is set.
+     *
+     * The largest files are started first so that a single big file is not left parsing on its own at the end.
+     *
+     * @param directory
+     * @param baseUri
+     * @throws FileNotFoundException
+     * @throws IOException
+     * @throws RepositoryException
+     * @throws SailException
+     */
+    private long loadDirectoryInternal(File directory, final String baseUri)
+            throws FileNotFoundException, IOException, RepositoryException, SailException
+    {
+        final File[] files = directory.listFiles();
+        long statements = 0;
+        if (parseThreads == 1 && documentParseThreads == 0)
+        {
+            for (File infile : files)
+                statements += loadFileInternal(infile, baseUri);
+            return statements;
+        }
+
+        Arrays.sort(files, new Comparator<File>()
+        {
+            @Override
+            public int compare(File o1, File o2)
+            {
+                final long l1 = o1.length();
+                final long l2 = o2.length();
+                return l1 > l2 ? -1 : (l1 == l2 ? 0 : 1);
+            }
+        });
+
+        final ExecutorService parseExec = Executors.newFixedThreadPool(Math.min(parseThreads, Math.max(1, files.length)));
+        final ExecutorService documentParseExec = documentParseThreads == 0 ? parseExec
+                : Executors.newFixedThreadPool(Math.min(documentParseThreads, Math.max(1, files.length)));
+        try
+        {
+            final List<Future<Long>> parsed = new ArrayList<Future<Long>>(files.length);
+            for (final File infile : files)
+            {
+                parsed.add((isLineBased(infile) ? parseExec : documentParseExec).submit(new Callable<Long>()
+                {
+                    @Override
+                    public Long call() throws Exception
+                    {
+                        return loadFileInternal(infile, baseUri);
+                    }
+                }));
+            }
+            for (Future<Long> next : parsed)
+                statements += awaitParse(next);
+        }
+        finally
+        {
+            parseExec.shutdownNow();
+            documentParseExec.shutdownNow();
+        }
+        return statements;
+    }
+
+    /**
+     * Checks whether the given file is uncompressed, in a line based format or RDF/XML that can be split into ranges, and is large enough to be worth splitting.
+     */
+    private boolean isSplittable(File file)
+    {
+        final RDFFormat format = RDFFormat.forFileName(file.getName());
+        return (RDFFormat.NTRIPLES.equals(format) || NQUADS.equals(format) || RDFFormat.RDFXML.equals(format)) && file.length() >= 2 * MINIMUM_SPLIT_RANGE_LENGTH;
+    }
+
+    /**
+     * Checks whether the given file, compressed or not, is in a line based format or compiled, which are parsed by the parseThreads, rather than by the documentParseThreads.
+     */
+    private static boolean isLineBased(File file)
+    {
+        final String name = file.getName();
+        if (name.endsWith(CompiledStatementWriter.EXTENSION))
+            return true;
+        final Decompressor decompressor = DecompressorRegistry.getInstance().forFileName(name);
+        final RDFFormat format = RDFFormat.forFileName(decompressor == null ? name : name.substring(0, name.length() - decompressor.getKey().length()));
+        return RDFFormat.NTRIPLES.equals(format) || NQUADS.equals(format);
+    }
+
+    /**
+     * @return The number of threads that parse the given file, or the parts of it.
+     */
+    private int parseThreadsFor(File file)
+    {
+        return documentParseThreads == 0 || isLineBased(file) ? parseThreads : documentParseThreads;
+    }
+
+    /**
+     * Internal helper method that splits a single line based file into newline aligned ranges, or an RDF/XML file into ranges between top level elements, and parses as many
+     * ranges at the same time as there are threads for the format.
+     *
+     * Blank node labels are preserved, but scoped to this load of this file, so that a label refers to the same blank node in every range of the file.
+     *
+     * @param file
+     * @param baseUri
+     * @throws FileNotFoundException
+     * @throws IOException
+     * @throws RepositoryException
+     * @throws SailException
+     */
+    private long loadSplitFileInternal(final File file, final String baseUri)
+            throws FileNotFoundException, IOException, RepositoryException, SailException
+    {
+        final RDFFormat format = RDFFormat.forFileName(file.getName());
+        final String source = journal == null ? null : file.getCanonicalPath();
+        if (source != null && journal.isDone(source))
+        {
+            log.info(file.getName() + " was loaded before, skipping it");
+            return 0;
+        }
+        final int threads = parseThreadsFor(file);
+        final RdfXmlFileSplitter documentSplit = RDFFormat.RDFXML.equals(format) ? RdfXmlFileSplitter.split(file, threads, MINIMUM_SPLIT_RANGE_LENGTH) : null;
+        if (RDFFormat.RDFXML.equals(format) && documentSplit == null)
+        {
+            log.debug(file.getName() + " can not be split, parsing it as a whole");
+            return loadFileInternal(file, baseUri);
+        }
+        final List<FileRange> ranges = documentSplit != null ? documentSplit.getRanges() : LineAlignedFileSplitter.split(file, threads, MINIMUM_SPLIT_RANGE_LENGTH);
+        final ValueFactory scopedValueFactory = withFileContext(file, new ScopedBNodeValueFactory(valueFactory,
+                source == null ? newBNodeScope() : journal.getBNodeScope(source)));
+        final AtomicInteger rangesLoaded = new AtomicInteger();
+
+        log.debug("parsing " + file.getName() + " using format " + format.toString() + " in " + ranges.size() + " ranges");
+
+        final long start = System.nanoTime();
+        final AtomicLong statements = new AtomicLong();
+
+        final ExecutorService parseExec = Executors.newFixedThreadPool(ranges.size());
+        try
+        {
+            final List<Future<Void>> parsed = new ArrayList<Future<Void>>(ranges.size());
+            for (final FileRange range : ranges)
+            {
+                parsed.add(parseExec.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws Exception
+                    {
+                        // the ranges are only the same when resuming with the same number of parse threads
+                        final String rangeSource = source == null ? null : source + "#" + range.getStart() + "-" + range.getEnd();
+                        if (rangeSource != null && journal.isDone(rangeSource))
+                        {
+                            rangesLoaded.incrementAndGet();
+                            return null;
+                        }
+                        final InputStream inputStream = documentSplit != null ? documentSplit.open(range, readBufferSize, readBuffers)
+                                : new ChannelReadAheadInputStream(file, range, readBufferSize, readBuffers);
+                        try
+                        {
+                            statements.addAndGet(loadInputStreamInternal(inputStream, format, baseUri, scopedValueFactory, true, rangeSource));
+                            if (rangeSource != null)
+                                journal.finished(rangeSource);
+                            rangesLoaded.incrementAndGet();
+                        } catch (RDFParseException e)
+                        {
+                            log.error("range " + range + " of " + file.getName() + ": " + e.getMessage());
+                        } catch (RDFHandlerException e)
+                        {
+                            log.error(e.getMessage());
+                        } finally
+                        {
+                            inputStream.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> next : parsed)
+                awaitParse(next);
+            if (source != null && rangesLoaded.get() == ranges.size())
+                journal.finished(source);
+        }
+        finally
+        {
+            parseExec.shutdownNow();
+            logFileParsed(file.getName(), statements.get(), start);
+        }
+        return statements.get();
+    }
+
+    /**
+     * Waits for a single parse task to finish, rethrowing the exception that it failed with.
+     */
+    private <T> T awaitParse(Future<T> parse)
+            throws IOException, RepositoryException, SailException
+    {
+        try
+        {
+            return parse.get();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for parsing to complete");
+        } catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RepositoryException)
+                throw (RepositoryException) cause;
+            if (cause instanceof SailException)
+                throw (SailException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
         }
     }
 
@@ -291,36 +1423,55 @@ public class LoaderMain
      * @throws RepositoryException
      * @throws SailException
      */
-    private void loadFileInternal(File file, String baseUri)
+    private long loadFileInternal(File file, String baseUri)
             throws FileNotFoundException, IOException, RepositoryException, SailException
     {
         final String name = file.getName();
+        if (name.endsWith(CompiledStatementWriter.EXTENSION))
+            return loadCompiledFileInternal(file);
 
         String shortFileName = name;
-        InputStream inputStream = null;
+        final Decompressor decompressor = DecompressorRegistry.getInstance().forFileName(name);
+        if (decompressor != null)
+            shortFileName = name.substring(0, name.length() - decompressor.getKey().length());
 
-        if (name.endsWith(".gz"))
+        RDFFormat format = RDFFormat.forFileName(shortFileName);
+        if (format == null)
         {
-            inputStream = new GZIPInputStream(new FileInputStream(file));
-            shortFileName = name.substring(0, name.length() - 3);
+            log.error("Could not determine RDF format for filename="+shortFileName);
+            return 0;
         }
-        else
+
+        final String source = journal == null ? null : file.getCanonicalPath();
+        if (source != null && journal.isDone(source))
         {
-            inputStream = new FileInputStream(file);
+            log.info(name + " was loaded before, skipping it");
+            return 0;
         }
 
-        RDFFormat format = RDFFormat.forFileName(shortFileName);
-        if (format == null)
+        // read the file on a dedicated I/O thread, so disk reads and parsing overlap
+        InputStream inputStream = new ChannelReadAheadInputStream(file, readBufferSize, readBuffers);
+
+        if (decompressor != null)
         {
-            log.error("Could not determine RDF format for filename="+shortFileName);
-            return;
+            // decompress on another thread, so decompression and parsing overlap as well
+            inputStream = new ReadAheadInputStream(decompressor.decompress(inputStream), readBufferSize, readBuffers);
         }
 
         log.debug("parsing " + shortFileName + " using format " + format.toString());
 
+        final long start = System.nanoTime();
+        long statements = 0;
         try
         {
-            loadInputStreamInternal(inputStream, format, baseUri);
+            if (source == null)
+                statements = loadInputStreamInternal(inputStream, format, baseUri, withFileContext(file, valueFactory), false, null);
+            else
+            {
+                statements = loadInputStreamInternal(inputStream, format, baseUri,
+                        withFileContext(file, new ScopedBNodeValueFactory(valueFactory, journal.getBNodeScope(source))), true, source);
+                journal.finished(source);
+            }
         } catch (RDFParseException e)
         {
             log.error(e.getMessage());
@@ -333,8 +1484,86 @@ public class LoaderMain
         }
         finally
         {
-            log.info(shortFileName + " read");
+            inputStream.close();
+            logFileParsed(shortFileName, statements, start);
         }
+        return statements;
+    }
+
+    /**
+     * Internal helper method that loads a file written by CompileMain, reading the statements without parsing them again.
+     *
+     * Blank node labels were kept when compiling, so they are scoped to this load of the file as when the journal preserves them.
+     *
+     * @param file
+     * @throws IOException
+     * @throws RepositoryException
+     */
+    private long loadCompiledFileInternal(File file)
+            throws IOException, RepositoryException
+    {
+        final String source = journal == null ? null : file.getCanonicalPath();
+        if (source != null && journal.isDone(source))
+        {
+            log.info(file.getName() + " was loaded before, skipping it");
+            return 0;
+        }
+
+        final ValueFactory scopedValueFactory = withFileContext(file, new ScopedBNodeValueFactory(valueFactory,
+                source == null ? newBNodeScope() : journal.getBNodeScope(source)));
+        final CompiledStatementReader reader = new CompiledStatementReader(file, scopedValueFactory);
+        final StatementIntoQueuePusher handler = newHandler(source);
+
+        log.debug("reading compiled " + file.getName());
+
+        final long start = System.nanoTime();
+        try
+        {
+            reader.read(handler);
+            if (source != null)
+                journal.finished(source);
+        } catch (RDFHandlerException e)
+        {
+            log.error(e.getMessage());
+        }
+        finally
+        {
+            // hand on whatever was read before a failure
+            handler.flush();
+            reader.close();
+            logFileParsed(file.getName(), handler.getStatementCount(), start);
+        }
+        return handler.getStatementCount();
+    }
+
+    /**
+     * @return A prefix for blank node labels that no other load of a file uses.
+     */
+    private static String newBNodeScope()
+    {
+        return "r" + UUID.randomUUID().toString().replace("-", "") + "x";
+    }
+
+    /**
+     * Wraps the given ValueFactory so that the parser puts the statements of the given file without a context of their own into the context of the file, if it has one.
+     */
+    private ValueFactory withFileContext(File file, ValueFactory valueFactory) throws IOException
+    {
+        final String context = contextMapping == null ? null : contextMapping.getContext(file);
+        if (context == null)
+            return valueFactory;
+        log.debug("loading " + file.getName() + " into context " + context);
+        return new DefaultContextValueFactory(valueFactory, valueFactory.createURI(context));
+    }
+
+    /**
+     * Logs the parse rate for a single file.
+     */
+    private void logFileParsed(String name, long statements, long startNanos)
+    {
+        metrics.fileParsed();
+        final double seconds = Math.max(1, System.nanoTime() - startNanos) / 1000000000.0;
+        log.info(String.format("%s read: %d statements in %.1fs (%.0f statements/s)", name, statements, seconds, statements / seconds));
     }
 
     /**
@@ -348,15 +1577,134 @@ public class LoaderMain
      * @throws RDFParseException Thrown if the RDF data is not properly formed.
      * @throws RDFHandlerException Thrown if the bulk statement loader fails for any reason.
      * @throws UnsupportedRDFormatException Thrown if a parser was not currently loaded to match the given format.
+     * @return The number of statements parsed.
      */
-    private void loadInputStreamInternal(InputStream stream, RDFFormat format, String baseUri)
+    private long loadInputStreamInternal(InputStream stream, RDFFormat format, String baseUri)
             throws IOException, RepositoryException, RDFParseException, RDFHandlerException, UnsupportedRDFormatException
     {
-        RDFParser rdfParser = Rio.createParser(format);
-        rdfParser.setValueFactory(manager.getValueFactory());
+        return loadInputStreamInternal(stream, format, baseUri, valueFactory, false, null);
+    }
+
+    /**
+     * Internal helper method that loads RDF in bulk from the given InputStream using the given format, base URI and ValueFactory.
+     *
+     * @param stream The input stream containing RDF data
+     * @param format The RDFFormat for the data in the input stream
+     * @param baseUri The base URI to use for the load
+     * @param valueFactory The ValueFactory the parser creates values with
+     * @param preserveBNodeIDs Whether the parser should pass blank node labels on to the ValueFactory
+     * @param source The name of the input in the checkpoint journal, or null if it is not recorded
+     * @throws IOException Thrown if the stream fails for any reason.
+     * @throws RepositoryException Thrown if there is an error related to the repository
+     * @throws RDFParseException Thrown if the RDF data is not properly formed.
+     * @throws RDFHandlerException Thrown if the bulk statement loader fails for any reason.
+     * @throws UnsupportedRDFormatException Thrown if a parser was not currently loaded to match the given format.
+     * @return The number of statements parsed.
+     */
+    private long loadInputStreamInternal(InputStream stream, RDFFormat format, String baseUri, ValueFactory valueFactory, boolean preserveBNodeIDs, String source)
+            throws IOException, RepositoryException, RDFParseException, RDFHandlerException, UnsupportedRDFormatException
+    {
+        RDFParser rdfParser = createParser(format, fastLineParser);
+        rdfParser.setValueFactory(valueFactory);
         rdfParser.setVerifyData(false);
-        rdfParser.setPreserveBNodeIDs(false);
-        rdfParser.setRDFHandler(new StatementIntoQueuePusher(queue));
-        rdfParser.parse(stream, baseUri);
+        rdfParser.setPreserveBNodeIDs(preserveBNodeIDs);
+        final StatementIntoQueuePusher handler = newHandler(source);
+        rdfParser.setRDFHandler(handler);
+        try
+        {
+            rdfParser.parse(stream, baseUri);
+        }
+        finally
+        {
+            // hand on whatever was parsed before a failure
+            handler.flush();
+        }
+        return handler.getStatementCount();
+    }
+
+    /**
+     * @return A parser for the given format, the built-in line parser for N-Triples and N-Quads unless fastLineParser is false.
+     */
+    static RDFParser createParser(RDFFormat format, boolean fastLineParser)
+    {
+        return fastLineParser && FastNTriplesParser.supports(format) ? new FastNTriplesParser(format) : Rio.createParser(format);
+    }
+
+    /**
+     * @return A handler that puts statements into the queue, recording them in the checkpoint journal under the given source if it is not null.
+     */
+    private StatementIntoQueuePusher newHandler(String source)
+    {
+        return source == null ? new StatementIntoQueuePusher(parseQueue, metrics) : new CheckpointingHandler(source, journal.getCommitted(source));
+    }
+
+    /**
+     * Waits until every statement parsed so far has been committed and records that in the checkpoint journal, if the checkpoint interval has passed since the last checkpoint and
+     * no other thread is writing one. A failed checkpoint is logged and the load continues.
+     */
+    private void checkpointIfDue()
+    {
+        // the sort stage merges and hands on everything it holds at every sync
+        if (sortStage != null)
+            return;
+        if (System.nanoTime() - lastCheckpointNanos < checkpointIntervalNanos || !checkpointLock.tryLock())
+            return;
+        try
+        {
+            if (System.nanoTime() - lastCheckpointNanos < checkpointIntervalNanos)
+                return;
+            final long start = System.nanoTime();
+            final CheckpointJournal.Snapshot checkpoint = journal.snapshot();
+            sync();
+            journal.write(checkpoint);
+            log.info(String.format("checkpoint written to %s in %.1fs", journal.getFile(), (System.nanoTime() - start) / 1000000000.0));
+        } catch (RepositoryException e)
+        {
+            log.error("Not writing a checkpoint, as a loading thread failed", e);
+        } catch (IOException e)
+        {
+            log.error("Could not write checkpoint to " + journal.getFile(), e);
+        } finally
+        {
+            lastCheckpointNanos = System.nanoTime();
+            checkpointLock.unlock();
+        }
+    }
+
+    /**
+     * Skips the statements at the start of a source that the checkpoint journal has recorded as committed, and notes and checkpoints the progress of the rest.
+     */
+    private class CheckpointingHandler extends StatementIntoQueuePusher
+    {
+        private final String source;
+
+        private final long committed;
+
+        private long skipped = 0;
+
+        CheckpointingHandler(String source, long committed)
+        {
+            super(parseQueue, metrics);
+            this.source = source;
+            this.committed = committed;
+            if (committed > 0)
+                log.info("resuming " + source + " after its first " + committed + " statements");
+        }
+
+        @Override
+        public void handleStatement(Statement st)
+        {
+            if (skipped < committed)
+                skipped++;
+            else
+                super.handleStatement(st);
+        }
+
+        @Override
+        protected void handedOver()
+        {
+            journal.parsed(source, committed + getStatementCount());
+            checkpointIfDue();
+        }
     }
 }
@@ -0,0 +1,186 @@
+package com.github.sesameloader;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openrdf.model.Resource;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.sail.SailException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sesameloader.metrics.LoaderMetrics;
+import com.github.sesameloader.metrics.MetricsReporter;
+
+/**
+ * A long lived loader that accepts any number of load jobs, possibly at the same time, and runs
+ * them all on the same loading threads and repository connections.
+ * 
+ * Each job is parsed on one of a fixed number of job threads and completes once its statements
+ * are committed. Jobs that finish parsing while the loading threads are committing for another job
+ * share the next commit, so many small jobs do not make the loading threads commit once each. The
+ * loading threads are only stopped by {@link #close()}.
+ */
+public class LoaderService
+{
+    private static final Logger LOG = LoggerFactory.getLogger(LoaderService.class);
+    
+    private static final AtomicInteger SERVICE_IDS = new AtomicInteger();
+    
+    private final LoaderMain loader;
+    
+    private final ExecutorService jobs;
+    
+    private final MetricsReporter reporter;
+    
+    /**
+     * Creates a service with one job thread per available processor.
+     * 
+     * @param manager
+     *            The repository manager to use when accessing the repository.
+     * @param commitXStatements
+     *            The number of statements to commit in each transaction.
+     * @param threads
+     *            The number of loading threads.
+     * @param contexts
+     *            The contexts to put the statements into.
+     */
+    public LoaderService(RepositoryManager manager, Integer commitXStatements, Integer threads, Resource... contexts)
+        throws SailException, RepositoryException
+    {
+        this(new LoaderMain(manager, commitXStatements, threads, contexts), Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Creates a service that runs its jobs on the given loader, which can be configured through its
+     * setters beforehand. The service owns the loader from then on.
+     * 
+     * @param loader
+     *            The loader to run the jobs on.
+     * @param jobThreads
+     *            The number of jobs that are parsed at the same time.
+     */
+    public LoaderService(LoaderMain loader, int jobThreads)
+    {
+        if(jobThreads < 1)
+        {
+            throw new IllegalArgumentException("Need at least one job thread, was " + jobThreads);
+        }
+        this.loader = loader;
+        loader.setCloseAfterLoad(false);
+        
+        final int serviceId = SERVICE_IDS.incrementAndGet();
+        this.jobs = Executors.newFixedThreadPool(jobThreads, new ThreadFactory()
+            {
+                private final AtomicInteger threadIds = new AtomicInteger();
+                
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    return new Thread(r, "loader-service-" + serviceId + "-job-" + threadIds.incrementAndGet());
+                }
+            });
+        this.reporter = new MetricsReporter(loader.getMetrics(), loader.getMetricsInterval());
+    }
+    
+    /**
+     * Loads the given file, or every file in the given directory, choosing the format of each file
+     * from its name.
+     * 
+     * @return The statistics of the job, available once its statements are committed.
+     */
+    public Future<LoadStatistics> submit(final File file, final String baseUri)
+    {
+        final long submitted = System.nanoTime();
+        return jobs.submit(new Callable<LoadStatistics>()
+            {
+                @Override
+                public LoadStatistics call() throws Exception
+                {
+                    final long start = System.nanoTime();
+                    final long statements = loader.parse(file, baseUri);
+                    loader.groupSync();
+                    final LoadStatistics result = new LoadStatistics(file.getName(), statements, start - submitted,
+                            System.nanoTime() - start);
+                    LOG.info(result.toString());
+                    return result;
+                }
+            });
+    }
+    
+    /**
+     * Loads the given stream, which is closed once it has been parsed.
+     * 
+     * @param source
+     *            A description of the stream for the statistics and the log.
+     * @return The statistics of the job, available once its statements are committed.
+     */
+    public Future<LoadStatistics> submit(final InputStream inputStream, final RDFFormat format, final String baseUri,
+            final String source)
+    {
+        final long submitted = System.nanoTime();
+        return jobs.submit(new Callable<LoadStatistics>()
+            {
+                @Override
+                public LoadStatistics call() throws Exception
+                {
+                    final long start = System.nanoTime();
+                    final long statements;
+                    try
+                    {
+                        statements = loader.parse(inputStream, format, baseUri);
+                    }
+                    finally
+                    {
+                        inputStream.close();
+                    }
+                    loader.groupSync();
+                    final LoadStatistics result = new LoadStatistics(source, statements, start - submitted,
+                            System.nanoTime() - start);
+                    LOG.info(result.toString());
+                    return result;
+                }
+            });
+    }
+    
+    /**
+     * @return The throughput and latency counters for every job run by this service.
+     */
+    public LoaderMetrics getMetrics()
+    {
+        return loader.getMetrics();
+    }
+    
+    /**
+     * Waits for the jobs that have been submitted to finish, then commits and stops the loading
+     * threads. The repository manager is left open.
+     */
+    public void close()
+    {
+        jobs.shutdown();
+        try
+        {
+            while(!jobs.awaitTermination(1, TimeUnit.SECONDS))
+            {
+                LOG.debug("Waiting for load jobs to finish");
+            }
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            loader.close();
+            reporter.stop();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.github.sesameloader;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the memory in use during a load and tells the parsers and pushers when it is running
+ * out, so that a load can run with large queues and commit intervals without running out of
+ * memory.
+ *
+ * The heap is under pressure once the tenured pools are fuller than the heap threshold after a
+ * collection. The JVM notifies the governor as soon as a collection leaves them that full, and
+ * the usage is checked again at most every {@link #CHECK_INTERVAL_MILLIS} while it is asked.
+ * Memory outside the heap, which the direct buffers of off heap chunks and some stores use, is
+ * under pressure once the direct buffers take more than the off heap limit, if one is given. The
+ * pressure ends once usage drops a little below the thresholds, so that it does not flap.
+ *
+ * While memory is under pressure, parsers wait before handing over a chunk until the loading
+ * threads have emptied the queue, and loading threads commit after every chunk instead of waiting
+ * for their commit interval, which frees the memory that the store holds for open transactions.
+ */
+public class MemoryGovernor implements NotificationListener
+{
+    public static final double DEFAULT_HEAP_THRESHOLD = 0.8;
+
+    public static final long CHECK_INTERVAL_MILLIS = 100;
+
+    private static final long CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(CHECK_INTERVAL_MILLIS);
+
+    /**
+     * How far below its threshold usage has to drop to end the pressure.
+     */
+    private static final double HYSTERESIS = 0.05;
+
+    private static final String DIRECT_BUFFER_POOL = "java.nio:type=BufferPool,name=direct";
+
+    private final Logger log = LoggerFactory.getLogger(MemoryGovernor.class);
+
+    private final double heapThreshold;
+
+    private final long offHeapLimit;
+
+    private final List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+
+    private final List<Long> previousThresholds = new ArrayList<Long>();
+
+    private volatile boolean underPressure = false;
+
+    private volatile long lastCheckNanos;
+
+    private boolean offHeapUnknown = false;
+
+    private final AtomicLong pressureEvents = new AtomicLong();
+
+    private final AtomicLong earlyCommits = new AtomicLong();
+
+    private final AtomicLong throttledNanos = new AtomicLong();
+
+    /**
+     * @param heapThreshold
+     *            The fraction of the maximum size of the tenured pools in use after a collection
+     *            above which the heap is under pressure.
+     * @param offHeapLimit
+     *            The number of bytes of direct buffers above which memory outside the heap is under
+     *            pressure, or 0 to not watch memory outside the heap.
+     */
+    public MemoryGovernor(double heapThreshold, long offHeapLimit)
+    {
+        if(heapThreshold <= 0 || heapThreshold > 1)
+        {
+            throw new IllegalArgumentException("Heap threshold must be a fraction between 0 and 1, was " + heapThreshold);
+        }
+        this.heapThreshold = heapThreshold;
+        this.offHeapLimit = offHeapLimit;
+        this.lastCheckNanos = System.nanoTime() - CHECK_INTERVAL_NANOS;
+        for(final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            // of the heap pools only the tenured ones support collection usage thresholds
+            if(pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported())
+            {
+                pools.add(pool);
+            }
+        }
+    }
+
+    /**
+     * Sets the collection usage thresholds of the tenured pools and starts listening for the
+     * notifications of the JVM.
+     */
+    public void start()
+    {
+        for(final MemoryPoolMXBean pool : pools)
+        {
+            previousThresholds.add(pool.getCollectionUsageThreshold());
+            final long max = pool.getUsage().getMax();
+            if(max > 0)
+            {
+                pool.setCollectionUsageThreshold((long)(max * heapThreshold));
+            }
+        }
+        ((NotificationEmitter)ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+    }
+
+    /**
+     * Stops listening and restores the thresholds the pools had before {@link #start()}.
+     */
+    public void stop()
+    {
+        try
+        {
+            ((NotificationEmitter)ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+        }
+        catch(final ListenerNotFoundException e)
+        {
+            // never started
+        }
+        for(int i = 0; i < previousThresholds.size(); i++)
+        {
+            pools.get(i).setCollectionUsageThreshold(previousThresholds.get(i));
+        }
+        previousThresholds.clear();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback)
+    {
+        if(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType()))
+        {
+            synchronized(this)
+            {
+                if(!underPressure)
+                {
+                    pressureEvents.incrementAndGet();
+                    log.warn("Tenured heap above " + Math.round(heapThreshold * 100)
+                            + "% after a collection, throttling the parsers and committing early");
+                }
+                underPressure = true;
+                lastCheckNanos = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * @return True while memory is under pressure.
+     */
+    public boolean isUnderPressure()
+    {
+        if(System.nanoTime() - lastCheckNanos >= CHECK_INTERVAL_NANOS)
+        {
+            check();
+        }
+        return underPressure;
+    }
+
+    /**
+     * Waits while memory is under pressure and the given queue is not empty.
+     */
+    public void awaitRelief(StatementChunkQueue queue) throws InterruptedException
+    {
+        if(!isUnderPressure() || queue.isEmpty())
+        {
+            return;
+        }
+        final long start = System.nanoTime();
+        while(isUnderPressure() && !queue.isEmpty())
+        {
+            Thread.sleep(Math.max(1, CHECK_INTERVAL_MILLIS / 10));
+        }
+        throttledNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    /**
+     * Counts a commit made before the commit interval was reached because of memory pressure.
+     */
+    public void committedEarly()
+    {
+        earlyCommits.incrementAndGet();
+    }
+
+    /**
+     * @return The number of times memory came under pressure.
+     */
+    public long getPressureEvents()
+    {
+        return pressureEvents.get();
+    }
+
+    /**
+     * @return The number of commits made early because of memory pressure.
+     */
+    public long getEarlyCommits()
+    {
+        return earlyCommits.get();
+    }
+
+    /**
+     * @return The total time parser threads spent waiting for memory pressure to end.
+     */
+    public long getThrottledNanos()
+    {
+        return throttledNanos.get();
+    }
+
+    private synchronized void check()
+    {
+        final long now = System.nanoTime();
+        if(now - lastCheckNanos < CHECK_INTERVAL_NANOS)
+        {
+            return;
+        }
+        lastCheckNanos = now;
+
+        final boolean previous = underPressure;
+        final double margin = previous ? HYSTERESIS : 0;
+        final double heap = heapFraction();
+        boolean pressure = heap > heapThreshold - margin;
+        long offHeap = -1;
+        if(!pressure && offHeapLimit > 0)
+        {
+            offHeap = offHeapUsed();
+            pressure = offHeap > offHeapLimit * (1 - margin);
+        }
+
+        if(pressure && !previous)
+        {
+            pressureEvents.incrementAndGet();
+            log.warn(String.format("Memory under pressure, heap %.0f%% used%s, throttling the parsers and committing early",
+                    heap * 100, offHeap < 0 ? "" : ", " + (offHeap >> 20) + "MB of direct buffers"));
+        }
+        else if(!pressure && previous)
+        {
+            log.info(String.format("Memory pressure ended, heap %.0f%% used", heap * 100));
+        }
+        underPressure = pressure;
+    }
+
+    /**
+     * @return The number of bytes of direct buffers, or 0 if the JVM does not report them.
+     */
+    private long offHeapUsed()
+    {
+        if(offHeapUnknown)
+        {
+            return 0;
+        }
+        try
+        {
+            // read through JMX, as BufferPoolMXBean needs Java 7
+            return ((Number)ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(DIRECT_BUFFER_POOL),
+                    "MemoryUsed")).longValue();
+        }
+        catch(final Exception e)
+        {
+            log.warn("The JVM does not report the size of direct buffers, not watching memory outside the heap");
+            offHeapUnknown = true;
+            return 0;
+        }
+    }
+
+    /**
+     * Uses the occupancy of the tenured pools after their last collection where the JVM reports it,
+     * as the heap as a whole is mostly garbage waiting to be collected during a load.
+     */
+    static double heapFraction()
+    {
+        double result = -1;
+        for(final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            // of the heap pools only the tenured ones support usage thresholds
+            if(pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported())
+            {
+                final MemoryUsage collected = pool.getCollectionUsage();
+                final long max = pool.getUsage().getMax();
+                if(collected != null && max > 0)
+                {
+                    result = Math.max(result, collected.getUsed() / (double)max);
+                }
+            }
+        }
+        if(result < 0)
+        {
+            final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            final long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+            result = heap.getUsed() / (double)max;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,295 @@
+package com.github.sesameloader;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+
+/**
+ * A chunk that keeps its statements encoded in a direct buffer outside the Java heap instead of
+ * as statement objects.
+ * 
+ * The parser's statements become garbage as soon as they are encoded, while they are still young,
+ * rather than after they have waited in the queue long enough to be promoted to the old
+ * generation. Values are only created again, with the given ValueFactory, while a pusher iterates
+ * over the chunk to add it to its connection.
+ * 
+ * Each value is a tag byte followed by its strings, each string a length and its UTF-8 bytes. The
+ * buffer grows when a chunk's statements do not fit, and is kept when the chunk is recycled.
+ */
+public class OffHeapStatementChunk extends StatementChunk
+{
+    /**
+     * The number of bytes initially reserved for each statement.
+     */
+    private static final int INITIAL_BYTES_PER_STATEMENT = 128;
+    
+    private static final byte NULL = 0;
+    
+    private static final byte URI = 1;
+    
+    private static final byte BNODE = 2;
+    
+    private static final byte PLAIN_LITERAL = 3;
+    
+    private static final byte LANGUAGE_LITERAL = 4;
+    
+    private static final byte TYPED_LITERAL = 5;
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final ValueFactory valueFactory;
+    
+    private final int capacity;
+    
+    /**
+     * Replaces unpaired surrogates the way {@link String#getBytes(Charset)} does.
+     */
+    private final CharsetEncoder encoder = UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    
+    private ByteBuffer buffer;
+    
+    private int size = 0;
+    
+    /**
+     * @param capacity
+     *            The maximum number of statements in this chunk.
+     * @param valueFactory
+     *            The ValueFactory to create the values with when the statements are read.
+     */
+    public OffHeapStatementChunk(int capacity, ValueFactory valueFactory)
+    {
+        super(1);
+        if(capacity < 1)
+        {
+            throw new IllegalArgumentException("Chunk capacity must be at least 1, was " + capacity);
+        }
+        this.capacity = capacity;
+        this.valueFactory = valueFactory;
+        this.buffer = ByteBuffer.allocateDirect(capacity * INITIAL_BYTES_PER_STATEMENT);
+    }
+    
+    @Override
+    public boolean add(Statement st)
+    {
+        final int start = buffer.position();
+        while(true)
+        {
+            try
+            {
+                writeValue(st.getSubject());
+                writeValue(st.getPredicate());
+                writeValue(st.getObject());
+                writeValue(st.getContext());
+                break;
+            }
+            catch(final BufferOverflowException e)
+            {
+                buffer.position(start);
+                grow();
+            }
+        }
+        size++;
+        return size == capacity;
+    }
+    
+    @Override
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+    
+    @Override
+    public int size()
+    {
+        return size;
+    }
+    
+    @Override
+    public int capacity()
+    {
+        return capacity;
+    }
+    
+    /**
+     * Empties this chunk, keeping its buffer for the next statements.
+     */
+    @Override
+    public void clear()
+    {
+        buffer.clear();
+        size = 0;
+    }
+    
+    /**
+     * Creates the statements again as they are iterated over. Only one iteration at a time is
+     * expected, but any number may run, as each reads from its own view of the buffer.
+     */
+    @Override
+    public Iterator<Statement> iterator()
+    {
+        final ByteBuffer input = buffer.duplicate();
+        input.flip();
+        return new Iterator<Statement>()
+            {
+                private final CharsetDecoder decoder = UTF_8.newDecoder();
+                
+                private CharBuffer chars = CharBuffer.allocate(256);
+                
+                private int next = 0;
+                
+                @Override
+                public boolean hasNext()
+                {
+                    return next < size;
+                }
+                
+                @Override
+                public Statement next()
+                {
+                    if(next >= size)
+                    {
+                        throw new NoSuchElementException();
+                    }
+                    next++;
+                    final Resource subject = (Resource)readValue();
+                    final URI predicate = (URI)readValue();
+                    final Value object = readValue();
+                    final Resource context = (Resource)readValue();
+                    if(context == null)
+                    {
+                        return valueFactory.createStatement(subject, predicate, object);
+                    }
+                    return valueFactory.createStatement(subject, predicate, object, context);
+                }
+                
+                @Override
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+                
+                private Value readValue()
+                {
+                    final byte tag = input.get();
+                    switch(tag)
+                    {
+                        case NULL:
+                            return null;
+                        case URI:
+                            return valueFactory.createURI(readString());
+                        case BNODE:
+                            return valueFactory.createBNode(readString());
+                        case PLAIN_LITERAL:
+                            return valueFactory.createLiteral(readString());
+                        case LANGUAGE_LITERAL:
+                            return valueFactory.createLiteral(readString(), readString());
+                        case TYPED_LITERAL:
+                            return valueFactory.createLiteral(readString(), valueFactory.createURI(readString()));
+                        default:
+                            throw new IllegalStateException("Corrupt chunk, unknown value tag " + tag);
+                    }
+                }
+                
+                private String readString()
+                {
+                    final int length = input.getInt();
+                    final int limit = input.limit();
+                    input.limit(input.position() + length);
+                    if(chars.capacity() < length)
+                    {
+                        // UTF-8 never has fewer bytes than the string has chars
+                        chars = CharBuffer.allocate(length);
+                    }
+                    chars.clear();
+                    decoder.reset();
+                    decoder.decode(input, chars, true);
+                    decoder.flush(chars);
+                    input.limit(limit);
+                    chars.flip();
+                    return chars.toString();
+                }
+            };
+    }
+    
+    private void writeValue(Value value)
+    {
+        if(value == null)
+        {
+            buffer.put(NULL);
+        }
+        else if(value instanceof URI)
+        {
+            buffer.put(URI);
+            writeString(value.stringValue());
+        }
+        else if(value instanceof BNode)
+        {
+            buffer.put(BNODE);
+            writeString(((BNode)value).getID());
+        }
+        else
+        {
+            final Literal literal = (Literal)value;
+            if(literal.getLanguage() != null)
+            {
+                buffer.put(LANGUAGE_LITERAL);
+                writeString(literal.getLabel());
+                writeString(literal.getLanguage());
+            }
+            else if(literal.getDatatype() != null)
+            {
+                buffer.put(TYPED_LITERAL);
+                writeString(literal.getLabel());
+                writeString(literal.getDatatype().stringValue());
+            }
+            else
+            {
+                buffer.put(PLAIN_LITERAL);
+                writeString(literal.getLabel());
+            }
+        }
+    }
+    
+    /**
+     * Encodes the string straight into the buffer, leaving room for its length in front of it.
+     */
+    private void writeString(String value)
+    {
+        final int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        encoder.reset();
+        final CoderResult result = encoder.encode(CharBuffer.wrap(value), buffer, true);
+        if(result.isOverflow() || encoder.flush(buffer).isOverflow())
+        {
+            throw new BufferOverflowException();
+        }
+        buffer.putInt(lengthPosition, buffer.position() - lengthPosition - 4);
+    }
+    
+    /**
+     * Doubles the buffer, copying the statements already in it.
+     */
+    private void grow()
+    {
+        final ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+}
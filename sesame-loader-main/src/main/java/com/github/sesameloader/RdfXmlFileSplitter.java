@@ -0,0 +1,387 @@
+package com.github.sesameloader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits an RDF/XML file into byte ranges between the top level elements of its rdf:RDF element,
+ * usually rdf:Description elements, so each range can be parsed independently.
+ *
+ * Each range is parsed as a document of its own, made of everything in the file up to and including
+ * the rdf:RDF start tag, with the XML declaration, entity declarations and namespace declarations,
+ * then the range and then the rdf:RDF end tag. Blank nodes with an rdf:nodeID are shared between
+ * ranges when the parser keeps their labels.
+ *
+ * Finding the boundaries takes a pass over the whole file, but only looks for the start and end of
+ * tags, which is far less work than parsing it.
+ */
+public class RdfXmlFileSplitter
+{
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+
+    private final byte[] header;
+
+    private final byte[] footer;
+
+    private final List<FileRange> ranges;
+
+    private RdfXmlFileSplitter(File file, byte[] header, byte[] footer, List<FileRange> ranges)
+    {
+        this.file = file;
+        this.header = header;
+        this.footer = footer;
+        this.ranges = ranges;
+    }
+
+    /**
+     * Splits the given file into at most the given number of ranges of roughly equal size.
+     *
+     * @param file
+     *            The file to split.
+     * @param parts
+     *            The maximum number of ranges to return.
+     * @param minimumRangeLength
+     *            The smallest range worth parsing separately, fewer ranges are returned for small
+     *            files.
+     * @return The split file, or null if the file is not encoded in UTF-8 or another encoding that
+     *         is compatible with ASCII, has no rdf:RDF root element, or ends before that element
+     *         does.
+     * @throws IOException
+     *             If the file could not be read.
+     */
+    public static RdfXmlFileSplitter split(File file, int parts, long minimumRangeLength) throws IOException
+    {
+        final long length = file.length();
+        final int count = (int)Math.max(1, Math.min(parts, length / Math.max(1, minimumRangeLength)));
+
+        final Scanner scanner = new Scanner(new FileInputStream(file));
+        try
+        {
+            return scanner.split(file, count);
+        }
+        finally
+        {
+            scanner.close();
+        }
+    }
+
+    /**
+     * @return The ranges between top level elements, in file order, from just after the rdf:RDF
+     *         start tag to just before its end tag.
+     */
+    public List<FileRange> getRanges()
+    {
+        return ranges;
+    }
+
+    /**
+     * @return The bytes of the file up to and including the rdf:RDF start tag.
+     */
+    public byte[] getHeader()
+    {
+        return header;
+    }
+
+    /**
+     * @return The bytes of the rdf:RDF end tag.
+     */
+    public byte[] getFooter()
+    {
+        return footer;
+    }
+
+    /**
+     * Opens the given range as a document of its own, read ahead on a dedicated I/O thread.
+     */
+    public InputStream open(FileRange range, int bufferSize, int bufferCount) throws IOException
+    {
+        return new SequenceInputStream(Collections.enumeration(Arrays.<InputStream> asList(new ByteArrayInputStream(header),
+                new ChannelReadAheadInputStream(file, range, bufferSize, bufferCount), new ByteArrayInputStream(footer))));
+    }
+
+    /**
+     * Reads a file once, keeping track of the depth of elements and of the offset of each byte.
+     */
+    private static class Scanner
+    {
+        private final InputStream input;
+
+        private final byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+
+        private int position = 0;
+
+        private int limit = 0;
+
+        /**
+         * The offset in the file of the byte after the last one read.
+         */
+        private long offset = 0;
+
+        Scanner(InputStream input)
+        {
+            this.input = input;
+        }
+
+        RdfXmlFileSplitter split(File file, int count) throws IOException
+        {
+            if(!isAsciiCompatible())
+            {
+                return null;
+            }
+
+            int depth = 0;
+            String root = null;
+            long contentStart = -1;
+            long step = 0;
+            long nextCut = 0;
+            final List<Long> cuts = new ArrayList<Long>();
+            while(skipTo('<') >= 0)
+            {
+                final long tagStart = offset - 1;
+                int b = read();
+                if(b == '?')
+                {
+                    skipPast("?>");
+                }
+                else if(b == '!')
+                {
+                    skipMarkupDeclaration();
+                }
+                else if(b == '/')
+                {
+                    if(skipTag(b) < 0)
+                    {
+                        return null;
+                    }
+                    depth--;
+                    if(depth == 0)
+                    {
+                        return new RdfXmlFileSplitter(file, readHeader(file, contentStart), ("</" + root + ">").getBytes("UTF-8"),
+                                ranges(contentStart, cuts, tagStart));
+                    }
+                    if(depth == 1 && offset >= nextCut && cuts.size() < count - 1)
+                    {
+                        cuts.add(offset);
+                        nextCut = offset + step;
+                    }
+                }
+                else if(depth == 0)
+                {
+                    final StringBuilder name = new StringBuilder();
+                    while(b > ' ' && b != '>' && b != '/')
+                    {
+                        name.append((char)b);
+                        b = read();
+                    }
+                    root = name.toString();
+                    final int last = b == '>' ? ' ' : skipTag(b);
+                    if(!(root.equals("RDF") || root.endsWith(":RDF")) || last < 0 || last == '/')
+                    {
+                        // not RDF/XML with an rdf:RDF element that has contents
+                        return null;
+                    }
+                    depth = 1;
+                    contentStart = offset;
+                    step = Math.max(1, (file.length() - contentStart) / count);
+                    nextCut = contentStart + step;
+                }
+                else
+                {
+                    final int last = skipTag(b);
+                    if(last < 0)
+                    {
+                        return null;
+                    }
+                    if(last != '/')
+                    {
+                        depth++;
+                    }
+                    else if(depth == 1 && offset >= nextCut && cuts.size() < count - 1)
+                    {
+                        cuts.add(offset);
+                        nextCut = offset + step;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return False if the file starts like UTF-16 or UTF-32, where markup can not be found
+         *         byte by byte.
+         */
+        private boolean isAsciiCompatible() throws IOException
+        {
+            limit = Math.max(0, input.read(buffer));
+            return limit >= 2 && buffer[0] != 0 && buffer[1] != 0 && buffer[0] != (byte)0xfe && buffer[0] != (byte)0xff;
+        }
+
+        private static List<FileRange> ranges(long contentStart, List<Long> cuts, long contentEnd)
+        {
+            final List<FileRange> result = new ArrayList<FileRange>(cuts.size() + 1);
+            long start = contentStart;
+            for(final Long cut : cuts)
+            {
+                result.add(new FileRange(start, cut));
+                start = cut;
+            }
+            result.add(new FileRange(start, contentEnd));
+            return result;
+        }
+
+        private static byte[] readHeader(File file, long length) throws IOException
+        {
+            final byte[] header = new byte[(int)length];
+            final RandomAccessFile headerInput = new RandomAccessFile(file, "r");
+            try
+            {
+                headerInput.readFully(header);
+            }
+            finally
+            {
+                headerInput.close();
+            }
+            return header;
+        }
+
+        /**
+         * Skips the rest of a start or end tag, whose attribute values may contain '>'.
+         *
+         * @param last
+         *            The byte of the tag read last.
+         * @return The last byte before the closing '>', which is '/' for an empty element, or -1
+         *         at the end of the file.
+         */
+        private int skipTag(int last) throws IOException
+        {
+            int b;
+            while((b = read()) >= 0)
+            {
+                if(b == '>')
+                {
+                    return last;
+                }
+                if(b == '"' || b == '\'')
+                {
+                    if(skipTo(b) < 0)
+                    {
+                        return -1;
+                    }
+                }
+                last = b;
+            }
+            return -1;
+        }
+
+        /**
+         * Skips a comment, a CDATA section or a declaration such as DOCTYPE with its internal
+         * subset.
+         */
+        private void skipMarkupDeclaration() throws IOException
+        {
+            int b = read();
+            if(b == '-')
+            {
+                read();
+                skipPast("-->");
+                return;
+            }
+            if(b == '[')
+            {
+                skipPast("]]>");
+                return;
+            }
+            int brackets = 0;
+            while(b >= 0 && (b != '>' || brackets > 0))
+            {
+                if(b == '[')
+                {
+                    brackets++;
+                }
+                else if(b == ']')
+                {
+                    brackets--;
+                }
+                else if(b == '"' || b == '\'')
+                {
+                    skipTo(b);
+                }
+                else if(b == '<' && brackets > 0)
+                {
+                    // a declaration in the internal subset
+                    b = read();
+                    if(b == '!' || b == '?')
+                    {
+                        if(b == '?')
+                        {
+                            skipPast("?>");
+                        }
+                        else
+                        {
+                            skipMarkupDeclaration();
+                        }
+                    }
+                }
+                b = read();
+            }
+        }
+
+        private void skipPast(String end) throws IOException
+        {
+            int matched = 0;
+            int b;
+            while(matched < end.length() && (b = read()) >= 0)
+            {
+                if(b == end.charAt(matched))
+                {
+                    matched++;
+                }
+                else
+                {
+                    matched = b == end.charAt(0) ? 1 : 0;
+                }
+            }
+        }
+
+        private int skipTo(int wanted) throws IOException
+        {
+            int b;
+            while((b = read()) >= 0 && b != wanted)
+            {
+            }
+            return b;
+        }
+
+        private int read() throws IOException
+        {
+            if(position == limit)
+            {
+                limit = input.read(buffer);
+                position = 0;
+                if(limit <= 0)
+                {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            offset++;
+            return buffer[position++] & 0xff;
+        }
+
+        void close() throws IOException
+        {
+            input.close();
+        }
+    }
+}
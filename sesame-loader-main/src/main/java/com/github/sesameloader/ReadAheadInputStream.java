@@ -0,0 +1,202 @@
+package com.github.sesameloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads another InputStream on a separate thread into a fixed number of large buffers, so that
+ * reading and decompressing the data overlaps with parsing it.
+ */
+public class ReadAheadInputStream extends InputStream
+{
+    /**
+     * A filled buffer handed from the reading thread to the consumer, or the end of the stream if
+     * length is negative.
+     */
+    private static final class Block
+    {
+        final byte[] data;
+        
+        final int length;
+        
+        final IOException failure;
+        
+        Block(byte[] data, int length, IOException failure)
+        {
+            this.data = data;
+            this.length = length;
+            this.failure = failure;
+        }
+    }
+    
+    private final InputStream source;
+    
+    private final BlockingQueue<Block> filled;
+    
+    private final BlockingQueue<byte[]> empty;
+    
+    private final Thread reader;
+    
+    private Block current;
+    
+    private int position;
+    
+    private boolean finished = false;
+    
+    private volatile boolean closed = false;
+    
+    /**
+     * @param source
+     *            The stream to read ahead of the consumer.
+     * @param bufferSize
+     *            The size of each buffer in bytes.
+     * @param bufferCount
+     *            The number of buffers, at least 2 so one can be filled while another is read.
+     */
+    public ReadAheadInputStream(InputStream source, int bufferSize, int bufferCount)
+    {
+        if(bufferCount < 2)
+        {
+            throw new IllegalArgumentException("Need at least two read ahead buffers, was " + bufferCount);
+        }
+        this.source = source;
+        this.filled = new ArrayBlockingQueue<Block>(bufferCount + 1);
+        this.empty = new ArrayBlockingQueue<byte[]>(bufferCount);
+        for(int i = 0; i < bufferCount; i++)
+        {
+            this.empty.add(new byte[bufferSize]);
+        }
+        this.reader = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    readAhead();
+                }
+            }, "read-ahead");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+    
+    private void readAhead()
+    {
+        try
+        {
+            while(!closed)
+            {
+                final byte[] buffer = empty.take();
+                int length = 0;
+                int read = 0;
+                // fill the whole buffer, so the consumer is handed few large blocks
+                while(length < buffer.length && (read = source.read(buffer, length, buffer.length - length)) >= 0)
+                {
+                    length += read;
+                }
+                if(length > 0)
+                {
+                    filled.put(new Block(buffer, length, null));
+                }
+                if(read < 0)
+                {
+                    filled.put(new Block(null, -1, null));
+                    return;
+                }
+            }
+        }
+        catch(final IOException e)
+        {
+            filled.offer(new Block(null, -1, e));
+        }
+        catch(final InterruptedException e)
+        {
+            // closed by the consumer
+        }
+    }
+    
+    @Override
+    public int read() throws IOException
+    {
+        if(!fill())
+        {
+            return -1;
+        }
+        return current.data[position++] & 0xFF;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if(len == 0)
+        {
+            return 0;
+        }
+        if(!fill())
+        {
+            return -1;
+        }
+        final int count = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, count);
+        position += count;
+        return count;
+    }
+    
+    @Override
+    public int available() throws IOException
+    {
+        return current == null ? 0 : current.length - position;
+    }
+    
+    @Override
+    public void close() throws IOException
+    {
+        closed = true;
+        reader.interrupt();
+        source.close();
+    }
+    
+    /**
+     * Makes sure the current block has data left, taking the next block from the reading thread
+     * if necessary.
+     */
+    private boolean fill() throws IOException
+    {
+        if(current != null && position < current.length)
+        {
+            return true;
+        }
+        if(finished)
+        {
+            return false;
+        }
+        if(current != null)
+        {
+            empty.offer(current.data);
+            current = null;
+        }
+        try
+        {
+            final Block next = filled.take();
+            if(next.failure != null)
+            {
+                finished = true;
+                throw next.failure;
+            }
+            if(next.length < 0)
+            {
+                finished = true;
+                return false;
+            }
+            current = next;
+            position = 0;
+            return true;
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for data to be read");
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.sesameloader;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryBase;
+
+/**
+ * ValueFactory that prefixes every blank node identifier with a fixed scope, while delegating the
+ * creation of all values to another ValueFactory.
+ * 
+ * Parsers that preserve blank node identifiers then map the same label to the same blank node
+ * across several parsers working on parts of one document, and to different blank nodes for
+ * different documents.
+ */
+public class ScopedBNodeValueFactory extends ValueFactoryBase
+{
+    private final ValueFactory delegate;
+    
+    private final String scope;
+    
+    /**
+     * @param delegate
+     *            The ValueFactory that creates the values.
+     * @param scope
+     *            The prefix for all blank node identifiers, which must itself be valid as the
+     *            start of a blank node identifier.
+     */
+    public ScopedBNodeValueFactory(ValueFactory delegate, String scope)
+    {
+        this.delegate = delegate;
+        this.scope = scope;
+    }
+    
+    @Override
+    public BNode createBNode()
+    {
+        return delegate.createBNode();
+    }
+    
+    @Override
+    public BNode createBNode(String nodeID)
+    {
+        return delegate.createBNode(scope + nodeID);
+    }
+    
+    @Override
+    public URI createURI(String uri)
+    {
+        return delegate.createURI(uri);
+    }
+    
+    @Override
+    public URI createURI(String namespace, String localName)
+    {
+        return delegate.createURI(namespace, localName);
+    }
+    
+    @Override
+    public Literal createLiteral(String label)
+    {
+        return delegate.createLiteral(label);
+    }
+    
+    @Override
+    public Literal createLiteral(String label, String language)
+    {
+        return delegate.createLiteral(label, language);
+    }
+    
+    @Override
+    public Literal createLiteral(String label, URI datatype)
+    {
+        return delegate.createLiteral(label, datatype);
+    }
+    
+    @Override
+    public Statement createStatement(Resource subject, URI predicate, Value object)
+    {
+        return delegate.createStatement(subject, predicate, object);
+    }
+    
+    @Override
+    public Statement createStatement(Resource subject, URI predicate, Value object, Resource context)
+    {
+        return delegate.createStatement(subject, predicate, object, context);
+    }
+}
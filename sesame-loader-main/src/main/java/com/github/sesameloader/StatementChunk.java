@@ -0,0 +1,106 @@
+package com.github.sesameloader;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.openrdf.model.Statement;
+
+/**
+ * A fixed capacity chunk of statements that is handed from the parser to the pushers as a single
+ * unit.
+ * 
+ * Chunks are reused through {@link StatementChunkQueue#recycle(StatementChunk)} once a pusher has
+ * added their contents to the repository, so the backing array is only allocated once per chunk.
+ */
+public class StatementChunk implements Iterable<Statement>
+{
+    private final Statement[] statements;
+    
+    private int size = 0;
+    
+    /**
+     * Creates an empty chunk that can hold up to the given number of statements.
+     * 
+     * @param capacity
+     *            The maximum number of statements in this chunk.
+     */
+    public StatementChunk(int capacity)
+    {
+        if(capacity < 1)
+        {
+            throw new IllegalArgumentException("Chunk capacity must be at least 1, was " + capacity);
+        }
+        this.statements = new Statement[capacity];
+    }
+    
+    /**
+     * Adds a statement to this chunk.
+     * 
+     * @param st
+     *            The statement to add.
+     * @return True if the chunk is full after adding the statement and should be handed on.
+     */
+    public boolean add(Statement st)
+    {
+        statements[size++] = st;
+        return size == statements.length;
+    }
+    
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+    
+    public int size()
+    {
+        return size;
+    }
+    
+    public int capacity()
+    {
+        return statements.length;
+    }
+    
+    /**
+     * Empties this chunk, releasing the references to the statements it contained.
+     */
+    public void clear()
+    {
+        for(int i = 0; i < size; i++)
+        {
+            statements[i] = null;
+        }
+        size = 0;
+    }
+    
+    @Override
+    public Iterator<Statement> iterator()
+    {
+        return new Iterator<Statement>()
+            {
+                private int next = 0;
+                
+                @Override
+                public boolean hasNext()
+                {
+                    return next < size;
+                }
+                
+                @Override
+                public Statement next()
+                {
+                    if(next >= size)
+                    {
+                        throw new NoSuchElementException();
+                    }
+                    return statements[next++];
+                }
+                
+                @Override
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+            };
+    }
+}
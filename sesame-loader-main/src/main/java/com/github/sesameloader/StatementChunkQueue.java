@@ -0,0 +1,320 @@
+package com.github.sesameloader;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openrdf.model.ValueFactory;
+
+import com.github.sesameloader.transport.Transport;
+import com.github.sesameloader.transport.TransportType;
+import com.github.sesameloader.transport.WaitStrategy;
+
+/**
+ * Bounded queue of full {@link StatementChunk}s between the parser and the pushers, together with
+ * a pool of emptied chunks that the parser reuses.
+ * 
+ * Handing over whole chunks means the queue is touched once per chunk instead of once per
+ * statement. The chunks move through a {@link Transport}, a blocking queue by default.
+ * 
+ * The end of the stream and points where every pusher has to commit are signalled in band with
+ * marker chunks, so pushers block in {@link #take()} without timeouts and wake up as soon as
+ * there is something to do.
+ */
+public class StatementChunkQueue
+{
+    /**
+     * Tells the pusher that takes it that no more chunks will follow.
+     */
+    private static final StatementChunk END_OF_STREAM = new StatementChunk(1);
+    
+    private volatile Transport<StatementChunk> queue;
+    
+    private volatile Transport<StatementChunk> recycled;
+    
+    private final int chunkSize;
+    
+    /**
+     * The ValueFactory off heap chunks create their statements with, or null for chunks that keep
+     * statement objects.
+     */
+    private volatile ValueFactory offHeapValueFactory;
+    
+    /**
+     * Holds parsers back while memory is under pressure, or null.
+     */
+    private volatile MemoryGovernor memoryGovernor;
+    
+    /**
+     * Keeps the markers of concurrent syncs from interleaving, which could hand one pusher two
+     * markers of the same sync.
+     */
+    private final Lock syncLock = new ReentrantLock();
+    
+    /**
+     * @param capacity
+     *            The maximum number of full chunks waiting for a pusher.
+     * @param chunkSize
+     *            The number of statements in each chunk.
+     */
+    public StatementChunkQueue(int capacity, int chunkSize)
+    {
+        this(capacity, chunkSize, TransportType.BLOCKING, WaitStrategy.PARK);
+    }
+    
+    /**
+     * @param capacity
+     *            The maximum number of full chunks waiting for a pusher.
+     * @param chunkSize
+     *            The number of statements in each chunk.
+     * @param transport
+     *            The kind of transport the chunks move through.
+     * @param waitStrategy
+     *            How threads wait on a transport that does not block.
+     */
+    public StatementChunkQueue(int capacity, int chunkSize, TransportType transport, WaitStrategy waitStrategy)
+    {
+        this.queue = transport.create(capacity, waitStrategy);
+        // Enough room for every chunk that can be in flight at the same time, any more are
+        // left to the garbage collector
+        this.recycled = transport.create(capacity * 2, waitStrategy);
+        this.chunkSize = chunkSize;
+    }
+    
+    /**
+     * Moves this queue to a new kind of transport. Must only be called while the queue is empty.
+     * 
+     * The consumers waiting on the old transport are each given a sync marker, and take from the
+     * new transport once they have passed it.
+     * 
+     * @param consumers
+     *            The number of threads taking chunks from this queue.
+     */
+    public void setTransport(TransportType transport, WaitStrategy waitStrategy, int consumers)
+        throws InterruptedException
+    {
+        final Transport<StatementChunk> previous = queue;
+        queue = transport.create(previous.capacity(), waitStrategy);
+        recycled = transport.create(recycled.capacity(), waitStrategy);
+        final Barrier barrier = new Barrier(consumers);
+        syncLock.lock();
+        try
+        {
+            for(int i = 0; i < consumers; i++)
+            {
+                previous.put(barrier);
+            }
+        }
+        finally
+        {
+            syncLock.unlock();
+        }
+        barrier.await();
+    }
+    
+    /**
+     * @return An empty chunk, reused from a previous load if one is available.
+     */
+    public StatementChunk newChunk()
+    {
+        final StatementChunk chunk = recycled.poll();
+        
+        if(chunk != null)
+        {
+            return chunk;
+        }
+        
+        final ValueFactory valueFactory = offHeapValueFactory;
+        if(valueFactory != null)
+        {
+            return new OffHeapStatementChunk(chunkSize, valueFactory);
+        }
+        return new StatementChunk(chunkSize);
+    }
+    
+    /**
+     * Makes new chunks keep their statements encoded outside the heap, creating them again with
+     * the given ValueFactory when they are taken out of the chunk.
+     * 
+     * @param valueFactory
+     *            The ValueFactory for the statements, or null to keep statement objects in the
+     *            chunks again.
+     * @see OffHeapStatementChunk
+     */
+    public void setOffHeap(ValueFactory valueFactory)
+    {
+        this.offHeapValueFactory = valueFactory;
+        // chunks of the previous kind are not reused
+        while(recycled.poll() != null)
+        {
+        }
+    }
+    
+    /**
+     * Makes {@link #put(StatementChunk)} wait while memory is under pressure, until the queue has
+     * been emptied.
+     * 
+     * @param memoryGovernor
+     *            The governor, or null to only wait for space in the queue.
+     */
+    public void setMemoryGovernor(MemoryGovernor memoryGovernor)
+    {
+        this.memoryGovernor = memoryGovernor;
+    }
+    
+    /**
+     * Waits for space in the queue and then adds the given chunk.
+     */
+    public void put(StatementChunk chunk) throws InterruptedException
+    {
+        final MemoryGovernor governor = memoryGovernor;
+        if(governor != null)
+        {
+            governor.awaitRelief(this);
+        }
+        queue.put(chunk);
+    }
+    
+    /**
+     * Retrieves the next full chunk, waiting up to the given time for one to become available.
+     * 
+     * @return The next chunk, or null if the timeout elapsed.
+     */
+    public StatementChunk poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return queue.poll(timeout, unit);
+    }
+    
+    /**
+     * Waits for and retrieves the next chunk, which may be a marker.
+     * 
+     * @see #isEndOfStream(StatementChunk)
+     * @see Barrier
+     */
+    public StatementChunk take() throws InterruptedException
+    {
+        return queue.take();
+    }
+    
+    /**
+     * Tells the given number of pushers that no more chunks will follow, after the chunks already
+     * in the queue.
+     */
+    public void endOfStream(int consumers) throws InterruptedException
+    {
+        for(int i = 0; i < consumers; i++)
+        {
+            queue.put(END_OF_STREAM);
+        }
+    }
+    
+    public static boolean isEndOfStream(StatementChunk chunk)
+    {
+        return chunk == END_OF_STREAM;
+    }
+    
+    /**
+     * Waits until each of the given number of pushers has taken every chunk put before this call,
+     * and has committed them.
+     */
+    public void sync(int consumers) throws InterruptedException
+    {
+        barrier(consumers).await();
+    }
+    
+    /**
+     * Starts a {@link #sync(int)} without waiting for it, so that several queues can be synced at
+     * the same time.
+     * 
+     * @return The marker, which can be awaited to finish the sync.
+     */
+    public Barrier barrier(int consumers) throws InterruptedException
+    {
+        final Barrier barrier = new Barrier(consumers);
+        syncLock.lock();
+        try
+        {
+            for(int i = 0; i < consumers; i++)
+            {
+                queue.put(barrier);
+            }
+        }
+        finally
+        {
+            syncLock.unlock();
+        }
+        return barrier;
+    }
+    
+    /**
+     * Returns a chunk to the pool after its statements have been added to the repository. Markers
+     * are ignored.
+     */
+    public void recycle(StatementChunk chunk)
+    {
+        if(chunk == END_OF_STREAM || chunk instanceof Barrier)
+        {
+            return;
+        }
+
+        chunk.clear();
+        recycled.offer(chunk);
+    }
+    
+    public boolean isEmpty()
+    {
+        return queue.size() == 0;
+    }
+    
+    /**
+     * @return The number of full chunks waiting for a pusher.
+     */
+    public int size()
+    {
+        return queue.size();
+    }
+    
+    /**
+     * @return The maximum number of full chunks waiting for a pusher.
+     */
+    public int capacity()
+    {
+        return queue.capacity();
+    }
+    
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+    
+    /**
+     * Marker that is put into the queue once for every pusher by {@link StatementChunkQueue#sync(int)}.
+     * A pusher that takes one commits and then waits in {@link #arrive()} until every other pusher
+     * has taken one too, so no pusher can take two.
+     */
+    public static final class Barrier extends StatementChunk
+    {
+        private final CountDownLatch arrived;
+        
+        private Barrier(int consumers)
+        {
+            super(1);
+            this.arrived = new CountDownLatch(consumers);
+        }
+        
+        public void arrive() throws InterruptedException
+        {
+            arrived.countDown();
+            arrived.await();
+        }
+        
+        /**
+         * Waits until every pusher has arrived.
+         */
+        public void await() throws InterruptedException
+        {
+            arrived.await();
+        }
+    }
+}
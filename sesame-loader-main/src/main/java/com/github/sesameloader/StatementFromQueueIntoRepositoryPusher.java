@@ -1,8 +1,8 @@
 package com.github.sesameloader;
 
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
 
 import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
@@ -11,47 +11,123 @@ import org.openrdf.repository.RepositoryException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.sesameloader.metrics.PusherMetrics;
+
 
 public class StatementFromQueueIntoRepositoryPusher
     implements Runnable
 {
 
-	private final BlockingQueue<Statement> queue;
+	private volatile StatementChunkQueue queue;
+
+	private volatile StatementChunkQueue nextQueue;
 
 	private final RepositoryConnection connection;
-	private final int commitEveryStatements;
-    private volatile boolean finished = false;
+	private volatile CommitInterval commitInterval;
+    private volatile RepositoryException failure;
 	private final CountDownLatch isDone;
+	private final PusherMetrics metrics;
 
 	private Logger log = LoggerFactory.getLogger(StatementFromQueueIntoRepositoryPusher.class);
 
     private Resource[] contexts;
 
-	public StatementFromQueueIntoRepositoryPusher(BlockingQueue<Statement> queue, int commitEveryStatements,
-	    RepositoryManager manager, CountDownLatch isDone, Resource... contexts) throws RepositoryException
+	private volatile DuplicateStatementFilter duplicateFilter;
+
+	private volatile MemoryGovernor memoryGovernor;
+
+	/**
+	 * The statements of the current chunk that are added to the connection, when duplicates are
+	 * filtered out.
+	 */
+	private final List<Statement> pending = new ArrayList<Statement>();
+
+	/**
+	 * The number of statements added in the current transaction.
+	 */
+	private int counter = 0;
+
+	/**
+	 * Time spent adding to and committing the current transaction.
+	 */
+	private long busyNanos = 0;
+
+	public StatementFromQueueIntoRepositoryPusher(StatementChunkQueue queue, int commitEveryStatements,
+	    RepositoryManager manager, CountDownLatch isDone, PusherMetrics metrics, Resource... contexts) throws RepositoryException
 	{
 		super();
 		this.queue = queue;
-		this.commitEveryStatements = commitEveryStatements;
+		this.commitInterval = new CommitInterval(commitEveryStatements);
 		this.connection = manager.getConnection();
 		this.contexts = contexts;
         this.isDone = isDone;
+        this.metrics = metrics;
+        metrics.commitInterval(commitEveryStatements);
+	}
+
+	/**
+	 * Replaces the number of statements added before each commit, for example with an adaptive
+	 * interval. Takes effect from the next chunk taken from the queue.
+	 */
+	public void setCommitInterval(CommitInterval commitInterval)
+	{
+		this.commitInterval = commitInterval;
+		metrics.commitInterval(commitInterval.get());
+	}
+
+	/**
+	 * Replaces the queue this pusher takes chunks from. Takes effect once the pusher has taken the
+	 * next marker from its current queue, so one has to follow. A pusher that has not started yet
+	 * would otherwise wait on the new queue for a marker put into the old one.
+	 */
+	public void setQueue(StatementChunkQueue queue)
+	{
+		this.nextQueue = queue;
+	}
+
+	/**
+	 * Makes this pusher skip statements the repository already contains. Takes effect from the
+	 * next chunk taken from the queue.
+	 *
+	 * @param duplicateFilter The filter shared by all pushers of a loader, or null to add every
+	 *            statement.
+	 */
+	public void setDuplicateFilter(DuplicateStatementFilter duplicateFilter)
+	{
+		this.duplicateFilter = duplicateFilter;
+	}
+
+	/**
+	 * Makes this pusher commit after every chunk while memory is under pressure.
+	 *
+	 * @param memoryGovernor The governor shared by all pushers of a loader, or null to only commit
+	 *            at the commit interval.
+	 */
+	public void setMemoryGovernor(MemoryGovernor memoryGovernor)
+	{
+		this.memoryGovernor = memoryGovernor;
 	}
 
 	@Override
 	public void run()
 	{
-		int counter = 0;
 		if (log.isDebugEnabled())
 			log.debug("Running into repository pusher");
 		try
 		{
-			while (!this.finished || !queue.isEmpty())
-				counter = takeStatementFromQueueAddToConnection(counter);
-			connection.commit();
+			while (takeChunkFromQueueAddToConnection())
+				;
+			if (failure == null)
+				commit();
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
 		} catch (RepositoryException e)
 		{
-			log.error("Pusher failed " + e.getMessage());
+			failed(e);
+		} catch (RuntimeException e)
+		{
+			failed(new RepositoryException("Unexpected failure while committing", e));
 		}
 		finally
 		{
@@ -67,35 +143,169 @@ public class StatementFromQueueIntoRepositoryPusher
 		}
 	}
 
-	private int takeStatementFromQueueAddToConnection(int counter)
-	    throws RepositoryException
+	/**
+	 * Takes the next chunk from the queue and adds its statements to the connection in a single call,
+	 * committing once at least the current commit interval of statements have been added since the
+	 * last commit, or after every chunk while memory is under pressure.
+	 *
+	 * After a failure, including unchecked exceptions, the statements are discarded, but markers
+	 * are still honoured so that the parser and the other pushers can not wait on this pusher
+	 * forever.
+	 *
+	 * @return False once the end of the stream has been reached.
+	 */
+	private boolean takeChunkFromQueueAddToConnection()
+	    throws InterruptedException
 	{
+		final StatementChunkQueue queue = this.queue;
+		final long takeStart = System.nanoTime();
+		final StatementChunk chunk = queue.take();
+		metrics.pollBlocked(System.nanoTime() - takeStart);
+
+		if (StatementChunkQueue.isEndOfStream(chunk))
+			return false;
+
+		try
 		{
-			try
+			if (chunk instanceof StatementChunkQueue.Barrier)
 			{
-				final Statement st = queue.poll(100, TimeUnit.MILLISECONDS);
-				if (st != null)
+				try
 				{
-					connection.add(st, contexts);
-					counter++;
-					if (counter % commitEveryStatements == 0)
+					if (failure == null && counter > 0)
+						commit();
+				}
+				finally
+				{
+					// arrive even if the commit failed
+					final StatementChunkQueue next = nextQueue;
+					if (next != null)
 					{
-						if (log.isDebugEnabled())
-							log.debug("Committing into the connection pusher");
-						connection.commit();
+						this.queue = next;
+						nextQueue = null;
 					}
-
+					((StatementChunkQueue.Barrier) chunk).arrive();
+				}
+			}
+			else if (failure == null)
+			{
+				final long addStart = System.nanoTime();
+				// without contexts of its own, the connection keeps the context of each statement
+				final int added = add(chunk, chunk.size());
+				final long addNanos = System.nanoTime() - addStart;
+				metrics.added(added, addNanos);
+				busyNanos += addNanos;
+				counter += added;
+				final MemoryGovernor governor = memoryGovernor;
+				if (counter >= commitInterval.get())
+				{
+					if (log.isDebugEnabled())
+						log.debug("Committing into the connection pusher");
+					commit();
+				}
+				else if (counter > 0 && governor != null && governor.isUnderPressure())
+				{
+					governor.committedEarly();
+					commit();
 				}
-			} catch (InterruptedException e1)
+			}
+		} catch (RepositoryException e)
+		{
+			failed(e);
+		} catch (RuntimeException e)
+		{
+			// for example from a store or filter that does not support an operation
+			failed(new RepositoryException("Unexpected failure while adding statements", e));
+		} catch (Error e)
+		{
+			failed(new RepositoryException("Unexpected failure while adding statements", e));
+		}
+		finally
+		{
+			queue.recycle(chunk);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the given statements, skipping those the repository already contains if there is a
+	 * duplicate filter.
+	 *
+	 * @return The number of statements added.
+	 */
+	private int add(Iterable<Statement> statements, int size)
+	    throws RepositoryException
+	{
+		final DuplicateStatementFilter filter = duplicateFilter;
+		if (filter == null)
+		{
+			connection.add(statements, contexts);
+			return size;
+		}
+		return addNew(statements, filter);
+	}
+
+	/**
+	 * Adds the statements that the repository does not contain yet. The statements collected so far are added before a possible duplicate is looked up, so that duplicates
+	 * within the chunk are found as well.
+	 *
+	 * @return The number of statements added.
+	 */
+	private int addNew(Iterable<Statement> statements, DuplicateStatementFilter filter)
+	    throws RepositoryException
+	{
+		int added = 0;
+		for (Statement next : statements)
+		{
+			if (filter.put(next, contexts))
 			{
-				Thread.currentThread().interrupt();
+				connection.add(pending, contexts);
+				added += pending.size();
+				pending.clear();
+				if (filter.isLoaded(next, connection, contexts))
+					continue;
 			}
+			pending.add(next);
 		}
-		return counter;
+		connection.add(pending, contexts);
+		added += pending.size();
+		pending.clear();
+		return added;
 	}
 
-    public void setFinished(boolean b)
-    {
-        finished =true;
-    }
-}
\ No newline at end of file
+	private void failed(RepositoryException e)
+	{
+		log.error("Pusher failed, discarding the statements it is given from now on", e);
+		failure = e;
+		try
+		{
+			connection.rollback();
+		} catch (RepositoryException rollbackFailure)
+		{
+			log.error("Error rolling back after failure", rollbackFailure);
+		}
+	}
+
+	/**
+	 * @return The exception that stopped this pusher from adding statements, or null if it has not
+	 *         failed.
+	 */
+	public RepositoryException getFailure()
+	{
+		return failure;
+	}
+
+	private void commit()
+	    throws RepositoryException
+	{
+		final long start = System.nanoTime();
+		connection.commit();
+		final long commitNanos = System.nanoTime() - start;
+		metrics.committed(commitNanos);
+
+		final CommitInterval interval = commitInterval;
+		interval.committed(counter, busyNanos + commitNanos, commitNanos);
+		metrics.commitInterval(interval.get());
+		busyNanos = 0;
+		counter = 0;
+	}
+}
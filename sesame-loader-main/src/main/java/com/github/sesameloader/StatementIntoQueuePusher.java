@@ -1,32 +1,82 @@
 package com.github.sesameloader;
 
-import java.util.concurrent.BlockingQueue;
-
 import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.helpers.RDFHandlerBase;
 
+import com.github.sesameloader.metrics.LoaderMetrics;
+
 
 public class StatementIntoQueuePusher
     extends RDFHandlerBase
 {
 
-	private final BlockingQueue<Statement> queue;
+	private final StatementChunkQueue queue;
+
+	private final LoaderMetrics metrics;
+
+	private StatementChunk chunk;
+
+	private long statementCount = 0;
 
-	public StatementIntoQueuePusher(BlockingQueue<Statement> queue)
+	public StatementIntoQueuePusher(StatementChunkQueue queue, LoaderMetrics metrics)
 	{
 		super();
 		this.queue = queue;
+		this.metrics = metrics;
+		this.chunk = queue.newChunk();
 	}
 
 	@Override
 	public void handleStatement(Statement st)
 	{
+		statementCount++;
+		if (chunk.add(st))
+			flush();
+	}
+
+	@Override
+	public void endRDF()
+	    throws RDFHandlerException
+	{
+		flush();
+	}
+
+	/**
+	 * Hands the statements collected so far over to the pushers, even if the current chunk is not full.
+	 * 
+	 * This is called automatically at the end of the document, but needs to be called explicitly if parsing stops early.
+	 */
+	public void flush()
+	{
+		if (chunk.isEmpty())
+			return;
 		try
 		{
-			queue.put(st);
+			metrics.parsed(chunk.size());
+			final long start = System.nanoTime();
+			queue.put(chunk);
+			metrics.putBlocked(System.nanoTime() - start);
+			chunk = queue.newChunk();
+			handedOver();
 		} catch (InterruptedException e)
 		{
 			Thread.currentThread().interrupt();
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Called after each chunk has been put into the queue, when every statement counted by {@link #getStatementCount()} is in the queue. Does nothing by default.
+	 */
+	protected void handedOver()
+	{
+	}
+
+	/**
+	 * @return The number of statements this handler has received so far.
+	 */
+	public long getStatementCount()
+	{
+		return statementCount;
+	}
+}
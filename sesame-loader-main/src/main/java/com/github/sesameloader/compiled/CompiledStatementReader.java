@@ -0,0 +1,221 @@
+package com.github.sesameloader.compiled;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+
+/**
+ * Reads a file written by {@link CompiledStatementWriter} and passes its statements to a handler,
+ * creating the values with the given ValueFactory.
+ *
+ * The file is memory mapped in windows, so it is read without copying it onto the heap and
+ * without limits on its size.
+ */
+public class CompiledStatementReader
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private final ValueFactory valueFactory;
+
+    private final Value[] slots;
+
+    private int nextSlot = 0;
+
+    private MappedByteBuffer window;
+
+    /**
+     * The position in the file of the start of the current window.
+     */
+    private long windowStart = 0;
+
+    private byte[] bytes = new byte[256];
+
+    /**
+     * @throws IOException
+     *             If the file can not be read or was not written by {@link CompiledStatementWriter}.
+     */
+    public CompiledStatementReader(File file, ValueFactory valueFactory) throws IOException
+    {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.valueFactory = valueFactory;
+        try
+        {
+            map(0);
+            ensure(12);
+            if(window.getInt() != CompiledStatementWriter.MAGIC)
+            {
+                throw new IOException(file + " is not a compiled statement file");
+            }
+            final int version = window.getInt();
+            if(version != CompiledStatementWriter.VERSION)
+            {
+                throw new IOException(file + " has unsupported version " + version);
+            }
+            final int dictionarySize = window.getInt();
+            if(dictionarySize < 1)
+            {
+                throw new IOException(file + " has invalid dictionary size " + dictionarySize);
+            }
+            this.slots = new Value[dictionarySize];
+        }
+        catch(final IOException e)
+        {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Passes all statements in the file to the handler, between startRDF and endRDF.
+     *
+     * @return The number of statements read.
+     */
+    public long read(RDFHandler handler) throws IOException, RDFHandlerException
+    {
+        long statements = 0;
+        handler.startRDF();
+        while(hasRemaining())
+        {
+            final Resource subject = (Resource)readValue();
+            final URI predicate = (URI)readValue();
+            final Value object = readValue();
+            final Resource context = (Resource)readValue();
+            handler.handleStatement(context == null ? valueFactory.createStatement(subject, predicate, object)
+                    : valueFactory.createStatement(subject, predicate, object, context));
+            statements++;
+        }
+        handler.endRDF();
+        return statements;
+    }
+
+    public void close() throws IOException
+    {
+        window = null;
+        file.close();
+    }
+
+    private Value readValue() throws IOException
+    {
+        ensure(1);
+        final byte tag = window.get();
+        final Value value;
+        switch(tag)
+        {
+            case CompiledStatementWriter.NULL:
+                return null;
+            case CompiledStatementWriter.REFERENCE:
+                final int slot = readNumber();
+                if(slot >= slots.length || slots[slot] == null)
+                {
+                    throw new IOException("Reference to undefined value " + slot + " at " + position());
+                }
+                return slots[slot];
+            case CompiledStatementWriter.URI:
+                value = valueFactory.createURI(readString());
+                break;
+            case CompiledStatementWriter.BNODE:
+                value = valueFactory.createBNode(readString());
+                break;
+            case CompiledStatementWriter.PLAIN_LITERAL:
+                value = valueFactory.createLiteral(readString());
+                break;
+            case CompiledStatementWriter.LANGUAGE_LITERAL:
+                final String language = readString();
+                value = valueFactory.createLiteral(readString(), language);
+                break;
+            case CompiledStatementWriter.TYPED_LITERAL:
+                final URI datatype = (URI)readValue();
+                value = valueFactory.createLiteral(readString(), datatype);
+                break;
+            default:
+                throw new IOException("Unknown value tag " + tag + " at " + position());
+        }
+        slots[nextSlot] = value;
+        nextSlot = (nextSlot + 1) % slots.length;
+        return value;
+    }
+
+    private String readString() throws IOException
+    {
+        final int length = readNumber();
+        ensure(length);
+        if(bytes.length < length)
+        {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        window.get(bytes, 0, length);
+        return new String(bytes, 0, length, UTF_8);
+    }
+
+    private int readNumber() throws IOException
+    {
+        int result = 0;
+        for(int shift = 0; shift < 32; shift += 7)
+        {
+            ensure(1);
+            final int b = window.get();
+            result |= (b & 0x7f) << shift;
+            if((b & 0x80) == 0)
+            {
+                return result;
+            }
+        }
+        throw new IOException("Malformed number at " + position());
+    }
+
+    private boolean hasRemaining() throws IOException
+    {
+        return position() < channel.size();
+    }
+
+    private long position()
+    {
+        return windowStart + window.position();
+    }
+
+    /**
+     * Makes sure the next count bytes of the file are in the window, mapping the window again from
+     * the current position if they are not.
+     */
+    private void ensure(int count) throws IOException
+    {
+        if(window.remaining() >= count)
+        {
+            return;
+        }
+        final long position = position();
+        if(position + count > channel.size())
+        {
+            throw new IOException("Unexpected end of file at " + position);
+        }
+        map(position);
+        if(window.remaining() < count)
+        {
+            // a single string larger than the window
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, count);
+        }
+    }
+
+    private void map(long position) throws IOException
+    {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, channel.size() - position));
+    }
+}
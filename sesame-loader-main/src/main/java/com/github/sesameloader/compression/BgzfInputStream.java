@@ -0,0 +1,383 @@
+/**
+ * 
+ */
+package com.github.sesameloader.compression;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses block gzipped (BGZF) data, as written by bgzip, inflating several blocks at the same
+ * time.
+ * 
+ * Every BGZF block is a complete gzip member that records its own compressed size, so a reading
+ * thread can cut the file into blocks without inflating them. Groups of blocks are inflated by a
+ * pool of threads and handed to the consumer in file order.
+ */
+public class BgzfInputStream extends InputStream
+{
+    private static final int HEADER_LENGTH = 12;
+    
+    private static final int TRAILER_LENGTH = 8;
+    
+    private static final int BLOCKS_PER_TASK = 16;
+    
+    private static final ThreadFactory DAEMON_THREADS = new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                final Thread thread = new Thread(r, "bgzf-inflater");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    
+    private final InputStream compressed;
+    
+    private final ExecutorService inflaters;
+    
+    private final BlockingQueue<Future<byte[]>> pending;
+    
+    private final Thread reader;
+    
+    private byte[] current;
+    
+    private int position;
+    
+    private boolean finished = false;
+    
+    /**
+     * @param compressed
+     *            The BGZF data, positioned at the start of a block.
+     * @param threads
+     *            The number of blocks to inflate at the same time.
+     */
+    public BgzfInputStream(InputStream compressed, int threads)
+    {
+        this.compressed = compressed;
+        this.inflaters = Executors.newFixedThreadPool(threads, DAEMON_THREADS);
+        this.pending = new ArrayBlockingQueue<Future<byte[]>>(threads * 2);
+        this.reader = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    readBlocks();
+                }
+            }, "bgzf-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+    
+    /**
+     * Checks whether the given bytes, from the start of a gzip member, contain a BGZF header.
+     * 
+     * @param header
+     *            At least the first 18 bytes of the member.
+     * @param length
+     *            The number of valid bytes in header.
+     */
+    public static boolean isBgzf(byte[] header, int length)
+    {
+        if(length < HEADER_LENGTH || (header[0] & 0xFF) != 0x1f || (header[1] & 0xFF) != 0x8b || header[2] != 8
+                || (header[3] & 4) == 0)
+        {
+            return false;
+        }
+        final int extraLength = readShort(header, 10);
+        return findBlockSize(header, HEADER_LENGTH, Math.min(length, HEADER_LENGTH + extraLength)) >= 0;
+    }
+    
+    private void readBlocks()
+    {
+        try
+        {
+            while(true)
+            {
+                final List<byte[]> blocks = new ArrayList<byte[]>(BLOCKS_PER_TASK);
+                byte[] block = null;
+                while(blocks.size() < BLOCKS_PER_TASK && (block = readBlock()) != null)
+                {
+                    blocks.add(block);
+                }
+                if(!blocks.isEmpty())
+                {
+                    pending.put(inflaters.submit(new Callable<byte[]>()
+                        {
+                            @Override
+                            public byte[] call() throws IOException
+                            {
+                                return inflate(blocks);
+                            }
+                        }));
+                }
+                if(block == null)
+                {
+                    pending.put(done(null, null));
+                    return;
+                }
+            }
+        }
+        catch(final IOException e)
+        {
+            try
+            {
+                // the consumer takes every block before this one, so the failure always gets through
+                pending.put(done(null, e));
+            }
+            catch(final InterruptedException closed)
+            {
+                // closed by the consumer
+            }
+        }
+        catch(final InterruptedException e)
+        {
+            // closed by the consumer
+        }
+    }
+    
+    /**
+     * Reads the next complete block after its gzip header.
+     * 
+     * @return The compressed data followed by the CRC32 and size trailer, or null at the end of the
+     *         stream.
+     */
+    private byte[] readBlock() throws IOException
+    {
+        final byte[] header = new byte[HEADER_LENGTH];
+        final int headerRead = readFully(header, 0, HEADER_LENGTH);
+        if(headerRead == 0)
+        {
+            return null;
+        }
+        if(headerRead < HEADER_LENGTH)
+        {
+            throw new EOFException("Truncated BGZF block header");
+        }
+        if((header[0] & 0xFF) != 0x1f || (header[1] & 0xFF) != 0x8b || (header[3] & 4) == 0)
+        {
+            throw new IOException("Not a BGZF block, the gzip file can not be inflated in parallel");
+        }
+        final int extraLength = readShort(header, 10);
+        final byte[] extra = new byte[extraLength];
+        if(readFully(extra, 0, extraLength) < extraLength)
+        {
+            throw new EOFException("Truncated BGZF block header");
+        }
+        final int blockSize = findBlockSize(extra, 0, extraLength);
+        if(blockSize < 0)
+        {
+            throw new IOException("Not a BGZF block, the gzip file can not be inflated in parallel");
+        }
+        final int remaining = blockSize + 1 - HEADER_LENGTH - extraLength;
+        if(remaining < TRAILER_LENGTH)
+        {
+            throw new IOException("Invalid BGZF block size " + blockSize);
+        }
+        final byte[] block = new byte[remaining];
+        if(readFully(block, 0, remaining) < remaining)
+        {
+            throw new EOFException("Truncated BGZF block");
+        }
+        return block;
+    }
+    
+    private int readFully(byte[] buffer, int offset, int length) throws IOException
+    {
+        int total = 0;
+        while(total < length)
+        {
+            final int read = compressed.read(buffer, offset + total, length - total);
+            if(read < 0)
+            {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+    
+    private static byte[] inflate(List<byte[]> blocks) throws IOException
+    {
+        int total = 0;
+        for(final byte[] block : blocks)
+        {
+            total += readInt(block, block.length - 4);
+        }
+        final byte[] output = new byte[total];
+        final Inflater inflater = new Inflater(true);
+        final CRC32 crc = new CRC32();
+        try
+        {
+            int offset = 0;
+            for(final byte[] block : blocks)
+            {
+                final int size = readInt(block, block.length - 4);
+                inflater.reset();
+                inflater.setInput(block, 0, block.length - TRAILER_LENGTH);
+                int inflated = 0;
+                while(inflated < size)
+                {
+                    final int count = inflater.inflate(output, offset + inflated, size - inflated);
+                    if(count == 0 && (inflater.finished() || inflater.needsInput()))
+                    {
+                        throw new EOFException("BGZF block is shorter than its recorded size");
+                    }
+                    inflated += count;
+                }
+                crc.reset();
+                crc.update(output, offset, size);
+                if((int)crc.getValue() != readInt(block, block.length - TRAILER_LENGTH))
+                {
+                    throw new IOException("CRC32 mismatch in BGZF block");
+                }
+                offset += size;
+            }
+        }
+        catch(final DataFormatException e)
+        {
+            throw new IOException("Corrupt BGZF block: " + e.getMessage());
+        }
+        finally
+        {
+            inflater.end();
+        }
+        return output;
+    }
+    
+    /**
+     * Finds the BSIZE value of the BC subfield in the given gzip extra field.
+     * 
+     * @return The total block size minus one, or -1 if there is no BC subfield.
+     */
+    private static int findBlockSize(byte[] extra, int offset, int end)
+    {
+        int next = offset;
+        while(next + 4 <= end)
+        {
+            final int subfieldLength = readShort(extra, next + 2);
+            if(extra[next] == 'B' && extra[next + 1] == 'C' && subfieldLength == 2 && next + 6 <= end)
+            {
+                return readShort(extra, next + 4);
+            }
+            next += 4 + subfieldLength;
+        }
+        return -1;
+    }
+    
+    private static int readShort(byte[] buffer, int offset)
+    {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+    
+    private static int readInt(byte[] buffer, int offset)
+    {
+        return readShort(buffer, offset) | readShort(buffer, offset + 2) << 16;
+    }
+    
+    private static Future<byte[]> done(final byte[] result, final IOException failure)
+    {
+        final FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>()
+            {
+                @Override
+                public byte[] call() throws IOException
+                {
+                    if(failure != null)
+                    {
+                        throw failure;
+                    }
+                    return result;
+                }
+            });
+        task.run();
+        return task;
+    }
+    
+    @Override
+    public int read() throws IOException
+    {
+        if(!fill())
+        {
+            return -1;
+        }
+        return current[position++] & 0xFF;
+    }
+    
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if(len == 0)
+        {
+            return 0;
+        }
+        if(!fill())
+        {
+            return -1;
+        }
+        final int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+    
+    @Override
+    public void close() throws IOException
+    {
+        reader.interrupt();
+        inflaters.shutdownNow();
+        compressed.close();
+    }
+    
+    private boolean fill() throws IOException
+    {
+        while(current == null || position >= current.length)
+        {
+            if(finished)
+            {
+                return false;
+            }
+            try
+            {
+                current = pending.take().get();
+                position = 0;
+                if(current == null)
+                {
+                    finished = true;
+                    return false;
+                }
+            }
+            catch(final InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for BGZF blocks to be inflated");
+            }
+            catch(final ExecutionException e)
+            {
+                finished = true;
+                if(e.getCause() instanceof IOException)
+                {
+                    throw (IOException)e.getCause();
+                }
+                throw new IOException("Failed to inflate BGZF block: " + e.getCause());
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * 
+ */
+package com.github.sesameloader.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.kohsuke.MetaInfServices;
+
+/**
+ * Decompresses bzip2 files, including files made of several concatenated bzip2 streams as written
+ * by pbzip2.
+ */
+@MetaInfServices()
+public class Bzip2Decompressor implements Decompressor
+{
+    private static final String KEY = ".bz2";
+    
+    @Override
+    public InputStream decompress(InputStream compressed) throws IOException
+    {
+        return new BZip2CompressorInputStream(compressed, true);
+    }
+    
+    @Override
+    public String getKey()
+    {
+        return KEY;
+    }
+}
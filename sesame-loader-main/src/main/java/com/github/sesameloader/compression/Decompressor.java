@@ -0,0 +1,34 @@
+/**
+ * 
+ */
+package com.github.sesameloader.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decompresses input files that are compressed in a particular format, identified by their file
+ * extension.
+ */
+public interface Decompressor
+{
+    /**
+     * Wraps the given compressed stream in a stream that returns the decompressed data.
+     * 
+     * @param compressed
+     *            The compressed data.
+     * @return A stream of the decompressed data, which closes the compressed stream when it is
+     *         closed.
+     * @throws IOException
+     *             If the compressed data could not be read.
+     */
+    InputStream decompress(InputStream compressed) throws IOException;
+    
+    /**
+     * 
+     * @return The file extension, including the leading dot, of the files this decompressor
+     *         handles. This must be unique across all decompressors or the behaviour will be
+     *         inconsistent.
+     */
+    String getKey();
+}
@@ -0,0 +1,95 @@
+/**
+ * 
+ */
+package com.github.sesameloader.compression;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the decompressor for a file based on its file extension.
+ */
+public class DecompressorRegistry
+{
+    private static final Logger LOG = LoggerFactory.getLogger(DecompressorRegistry.class);
+    
+    private static volatile DecompressorRegistry instance;
+    
+    private ConcurrentHashMap<String, Decompressor> services = new ConcurrentHashMap<String, Decompressor>();
+    
+    /**
+     * 
+     */
+    public DecompressorRegistry()
+    {
+        final ServiceLoader<Decompressor> serviceLoader =
+                java.util.ServiceLoader.load(Decompressor.class, Decompressor.class.getClassLoader());
+        
+        final Iterator<Decompressor> servicesIterator = serviceLoader.iterator();
+        
+        while(servicesIterator.hasNext())
+        {
+            Decompressor decompressor = servicesIterator.next();
+            Decompressor putIfAbsent = services.putIfAbsent(decompressor.getKey(), decompressor);
+            
+            if(putIfAbsent != null)
+            {
+                LOG.error("Decompressor with key=" + decompressor.getKey() + " class="
+                        + putIfAbsent.getClass().getName() + " replaced the decompressor="
+                        + decompressor.getClass().getName());
+                
+                services.put(decompressor.getKey(), decompressor);
+            }
+        }
+    }
+    
+    public Map<String, Decompressor> getAll()
+    {
+        return Collections.unmodifiableMap(services);
+    }
+    
+    public Decompressor get(String key)
+    {
+        return services.get(key);
+    }
+    
+    /**
+     * @param fileName
+     *            The name of a file.
+     * @return The decompressor for the extension of the file name, or null if the file is not
+     *         compressed in a known format.
+     */
+    public Decompressor forFileName(String fileName)
+    {
+        final int dot = fileName.lastIndexOf('.');
+        
+        if(dot < 0)
+        {
+            return null;
+        }
+        
+        return services.get(fileName.substring(dot));
+    }
+    
+    public static DecompressorRegistry getInstance()
+    {
+        if(instance == null)
+        {
+            synchronized(DecompressorRegistry.class)
+            {
+                if(instance == null)
+                {
+                    instance = new DecompressorRegistry();
+                }
+            }
+        }
+        
+        return instance;
+    }
+}
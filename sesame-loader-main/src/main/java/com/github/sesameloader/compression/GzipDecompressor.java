@@ -0,0 +1,56 @@
+/**
+ * 
+ */
+package com.github.sesameloader.compression;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.kohsuke.MetaInfServices;
+
+/**
+ * Decompresses gzip files.
+ * 
+ * Block gzipped (BGZF) files written by bgzip are inflated on several threads, other gzip files
+ * are inflated sequentially.
+ */
+@MetaInfServices()
+public class GzipDecompressor implements Decompressor
+{
+    private static final String KEY = ".gz";
+    
+    private static final int HEADER_PEEK_LENGTH = 18;
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    @Override
+    public InputStream decompress(InputStream compressed) throws IOException
+    {
+        final BufferedInputStream buffered = new BufferedInputStream(compressed, BUFFER_SIZE);
+        
+        buffered.mark(HEADER_PEEK_LENGTH);
+        final byte[] header = new byte[HEADER_PEEK_LENGTH];
+        int length = 0;
+        int read;
+        while(length < header.length && (read = buffered.read(header, length, header.length - length)) >= 0)
+        {
+            length += read;
+        }
+        buffered.reset();
+        
+        if(BgzfInputStream.isBgzf(header, length))
+        {
+            return new BgzfInputStream(buffered, Runtime.getRuntime().availableProcessors());
+        }
+        
+        return new GZIPInputStream(buffered, BUFFER_SIZE);
+    }
+    
+    @Override
+    public String getKey()
+    {
+        return KEY;
+    }
+}
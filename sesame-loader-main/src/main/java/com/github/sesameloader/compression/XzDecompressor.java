@@ -0,0 +1,31 @@
+/**
+ * 
+ */
+package com.github.sesameloader.compression;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.kohsuke.MetaInfServices;
+
+/**
+ * Decompresses xz files, including files made of several concatenated xz streams.
+ */
+@MetaInfServices()
+public class XzDecompressor implements Decompressor
+{
+    private static final String KEY = ".xz";
+    
+    @Override
+    public InputStream decompress(InputStream compressed) throws IOException
+    {
+        return new XZCompressorInputStream(compressed, true);
+    }
+    
+    @Override
+    public String getKey()
+    {
+        return KEY;
+    }
+}
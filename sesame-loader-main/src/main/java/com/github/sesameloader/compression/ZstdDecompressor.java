@@ -0,0 +1,122 @@
+/**
+ * 
+ */
+package com.github.sesameloader.compression;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.kohsuke.MetaInfServices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decompresses zstd files by piping them through an external zstd process, which must be available
+ * on the PATH.
+ * 
+ * The decompression runs in its own process, so it overlaps with parsing without using a loader
+ * thread.
+ */
+@MetaInfServices()
+public class ZstdDecompressor implements Decompressor
+{
+    private static final Logger LOG = LoggerFactory.getLogger(ZstdDecompressor.class);
+    
+    private static final String KEY = ".zst";
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    @Override
+    public InputStream decompress(final InputStream compressed) throws IOException
+    {
+        final Process process = new ProcessBuilder("zstd", "-d", "-c", "-q").start();
+        
+        final Thread feeder = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    final OutputStream toProcess = process.getOutputStream();
+                    final byte[] buffer = new byte[BUFFER_SIZE];
+                    try
+                    {
+                        int read;
+                        while((read = compressed.read(buffer)) >= 0)
+                        {
+                            toProcess.write(buffer, 0, read);
+                        }
+                    }
+                    catch(final IOException e)
+                    {
+                        LOG.error("Failed to pipe data to zstd", e);
+                    }
+                    finally
+                    {
+                        try
+                        {
+                            toProcess.close();
+                            compressed.close();
+                        }
+                        catch(final IOException e)
+                        {
+                            LOG.error("Failed to close zstd input", e);
+                        }
+                    }
+                }
+            }, "zstd-feeder");
+        feeder.setDaemon(true);
+        feeder.start();
+        
+        return new FilterInputStream(process.getInputStream())
+            {
+                @Override
+                public int read() throws IOException
+                {
+                    return checkExit(super.read());
+                }
+                
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException
+                {
+                    return checkExit(super.read(b, off, len));
+                }
+                
+                @Override
+                public void close() throws IOException
+                {
+                    super.close();
+                    process.destroy();
+                }
+                
+                /**
+                 * Makes sure a truncated output is reported instead of silently ending the stream.
+                 */
+                private int checkExit(int read) throws IOException
+                {
+                    if(read < 0)
+                    {
+                        try
+                        {
+                            if(process.waitFor() != 0)
+                            {
+                                throw new IOException("zstd failed with exit code " + process.exitValue());
+                            }
+                        }
+                        catch(final InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return read;
+                }
+            };
+    }
+    
+    @Override
+    public String getKey()
+    {
+        return KEY;
+    }
+}
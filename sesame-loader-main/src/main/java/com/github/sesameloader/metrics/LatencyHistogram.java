@@ -0,0 +1,99 @@
+package com.github.sesameloader.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies in power of two millisecond buckets.
+ * 
+ * Bucket 0 counts latencies below 1ms, and bucket i counts latencies from 2^(i-1)ms up to 2^i ms.
+ */
+public class LatencyHistogram
+{
+    private static final int BUCKETS = 32;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    
+    private final AtomicLong count = new AtomicLong();
+    
+    private final AtomicLong totalNanos = new AtomicLong();
+    
+    private final AtomicLong maxNanos = new AtomicLong();
+    
+    public void record(long nanos)
+    {
+        final long millis = nanos / 1000000L;
+        final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while(nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos))
+        {
+            // retry until this is no longer the maximum or it was stored
+        }
+    }
+    
+    public long getCount()
+    {
+        return count.get();
+    }
+    
+    public long getMeanMillis()
+    {
+        final long n = count.get();
+        return n == 0 ? 0 : totalNanos.get() / n / 1000000L;
+    }
+    
+    public long getMaxMillis()
+    {
+        return maxNanos.get() / 1000000L;
+    }
+    
+    /**
+     * @param fraction
+     *            The percentile as a fraction, for instance 0.99 for the 99th percentile.
+     * @return The upper bound in milliseconds of the bucket containing the given percentile.
+     */
+    public long getPercentileMillis(double fraction)
+    {
+        final long n = count.get();
+        if(n == 0)
+        {
+            return 0;
+        }
+        final long rank = (long)Math.ceil(n * fraction);
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++)
+        {
+            seen += buckets.get(i);
+            if(seen >= rank)
+            {
+                return Math.min(1L << i, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+    
+    /**
+     * @return The non empty buckets, formatted as "&lt;upper bound in ms&gt;ms:&lt;count&gt;".
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder result = new StringBuilder();
+        for(int i = 0; i < BUCKETS; i++)
+        {
+            final long inBucket = buckets.get(i);
+            if(inBucket > 0)
+            {
+                if(result.length() > 0)
+                {
+                    result.append(' ');
+                }
+                result.append('<').append(1L << i).append("ms:").append(inBucket);
+            }
+        }
+        return result.toString();
+    }
+}
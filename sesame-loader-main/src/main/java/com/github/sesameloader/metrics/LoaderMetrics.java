@@ -0,0 +1,343 @@
+package com.github.sesameloader.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.sesameloader.CachingValueFactory;
+import com.github.sesameloader.DuplicateStatementFilter;
+import com.github.sesameloader.MemoryGovernor;
+import com.github.sesameloader.StatementChunkQueue;
+
+/**
+ * Throughput and latency counters for each stage of a load: parsing, the queue between the parsers
+ * and the pushers, and adding and committing in the pushers.
+ */
+public class LoaderMetrics implements LoaderMetricsMBean
+{
+    private final StatementChunkQueue queue;
+    
+    private final long startNanos = System.nanoTime();
+    
+    private final AtomicLong statementsParsed = new AtomicLong();
+    
+    private final AtomicLong filesParsed = new AtomicLong();
+    
+    private final AtomicLong putBlockedNanos = new AtomicLong();
+    
+    private final AtomicLong queueSamples = new AtomicLong();
+    
+    private final AtomicLong queueSampleTotal = new AtomicLong();
+    
+    private volatile int maxQueueSize = 0;
+    
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+    
+    private final List<PusherMetrics> pushers = new CopyOnWriteArrayList<PusherMetrics>();
+    
+    private volatile CachingValueFactory valueCache;
+    
+    private volatile DuplicateStatementFilter duplicateFilter;
+    
+    private volatile MemoryGovernor memoryGovernor;
+    
+    public LoaderMetrics(StatementChunkQueue queue)
+    {
+        this.queue = queue;
+    }
+    
+    /**
+     * @return The counters for a new pusher thread.
+     */
+    public PusherMetrics newPusherMetrics()
+    {
+        final PusherMetrics result = new PusherMetrics(commitLatency);
+        pushers.add(result);
+        return result;
+    }
+    
+    /**
+     * Includes the hit rate of the given value cache in the metrics.
+     */
+    public void setValueCache(CachingValueFactory valueCache)
+    {
+        this.valueCache = valueCache;
+    }
+    
+    public CachingValueFactory getValueCache()
+    {
+        return valueCache;
+    }
+    
+    /**
+     * Includes the duplicates found by the given filter in the metrics.
+     */
+    public void setDuplicateFilter(DuplicateStatementFilter duplicateFilter)
+    {
+        this.duplicateFilter = duplicateFilter;
+    }
+    
+    public DuplicateStatementFilter getDuplicateFilter()
+    {
+        return duplicateFilter;
+    }
+    
+    /**
+     * Includes the throttling and early commits of the given governor in the metrics.
+     */
+    public void setMemoryGovernor(MemoryGovernor memoryGovernor)
+    {
+        this.memoryGovernor = memoryGovernor;
+    }
+    
+    public MemoryGovernor getMemoryGovernor()
+    {
+        return memoryGovernor;
+    }
+    
+    public void parsed(long statements)
+    {
+        statementsParsed.addAndGet(statements);
+    }
+    
+    public void fileParsed()
+    {
+        filesParsed.incrementAndGet();
+    }
+    
+    public void putBlocked(long nanos)
+    {
+        putBlockedNanos.addAndGet(nanos);
+    }
+    
+    /**
+     * Records the current number of chunks in the queue, so the occupancy can be followed over
+     * time.
+     */
+    public void sampleQueue()
+    {
+        final int size = queue.size();
+        queueSamples.incrementAndGet();
+        queueSampleTotal.addAndGet(size);
+        if(size > maxQueueSize)
+        {
+            maxQueueSize = size;
+        }
+    }
+    
+    @Override
+    public long getStatementsParsed()
+    {
+        return statementsParsed.get();
+    }
+    
+    @Override
+    public long getFilesParsed()
+    {
+        return filesParsed.get();
+    }
+    
+    @Override
+    public double getParseRate()
+    {
+        return perSecond(getStatementsParsed());
+    }
+    
+    @Override
+    public long getStatementsAdded()
+    {
+        long result = 0;
+        for(final PusherMetrics pusher : pushers)
+        {
+            result += pusher.getStatementsAdded();
+        }
+        return result;
+    }
+    
+    @Override
+    public double getAddRate()
+    {
+        return perSecond(getStatementsAdded());
+    }
+    
+    @Override
+    public long[] getStatementsAddedPerPusher()
+    {
+        final long[] result = new long[pushers.size()];
+        for(int i = 0; i < result.length; i++)
+        {
+            result[i] = pushers.get(i).getStatementsAdded();
+        }
+        return result;
+    }
+    
+    public List<PusherMetrics> getPushers()
+    {
+        return pushers;
+    }
+    
+    @Override
+    public int getQueueSize()
+    {
+        return queue.size();
+    }
+    
+    @Override
+    public int getQueueCapacity()
+    {
+        return queue.capacity();
+    }
+    
+    @Override
+    public double getAverageQueueSize()
+    {
+        final long samples = queueSamples.get();
+        return samples == 0 ? 0 : (double)queueSampleTotal.get() / samples;
+    }
+    
+    @Override
+    public int getMaxQueueSize()
+    {
+        return maxQueueSize;
+    }
+    
+    @Override
+    public long getCommitCount()
+    {
+        return commitLatency.getCount();
+    }
+    
+    @Override
+    public long getCommitLatencyMeanMillis()
+    {
+        return commitLatency.getMeanMillis();
+    }
+    
+    @Override
+    public long getCommitLatencyMedianMillis()
+    {
+        return commitLatency.getPercentileMillis(0.5);
+    }
+    
+    @Override
+    public long getCommitLatency99thPercentileMillis()
+    {
+        return commitLatency.getPercentileMillis(0.99);
+    }
+    
+    @Override
+    public long getCommitLatencyMaxMillis()
+    {
+        return commitLatency.getMaxMillis();
+    }
+    
+    @Override
+    public String getCommitLatencyHistogram()
+    {
+        return commitLatency.toString();
+    }
+    
+    @Override
+    public int[] getCommitIntervalPerPusher()
+    {
+        final int[] result = new int[pushers.size()];
+        for(int i = 0; i < result.length; i++)
+        {
+            result[i] = pushers.get(i).getCommitInterval();
+        }
+        return result;
+    }
+    
+    @Override
+    public long getValueCacheHits()
+    {
+        final CachingValueFactory cache = valueCache;
+        return cache == null ? 0 : cache.getHits();
+    }
+    
+    @Override
+    public long getValueCacheMisses()
+    {
+        final CachingValueFactory cache = valueCache;
+        return cache == null ? 0 : cache.getMisses();
+    }
+    
+    @Override
+    public double getValueCacheHitRate()
+    {
+        final CachingValueFactory cache = valueCache;
+        return cache == null ? 0 : cache.getHitRate();
+    }
+    
+    @Override
+    public int getValueCacheSize()
+    {
+        final CachingValueFactory cache = valueCache;
+        return cache == null ? 0 : cache.size();
+    }
+    
+    @Override
+    public long getDuplicateCandidates()
+    {
+        final DuplicateStatementFilter filter = duplicateFilter;
+        return filter == null ? 0 : filter.getCandidates();
+    }
+    
+    @Override
+    public long getDuplicatesDropped()
+    {
+        final DuplicateStatementFilter filter = duplicateFilter;
+        return filter == null ? 0 : filter.getDuplicates();
+    }
+    
+    @Override
+    public boolean isMemoryUnderPressure()
+    {
+        final MemoryGovernor governor = memoryGovernor;
+        return governor != null && governor.isUnderPressure();
+    }
+    
+    @Override
+    public long getMemoryPressureEvents()
+    {
+        final MemoryGovernor governor = memoryGovernor;
+        return governor == null ? 0 : governor.getPressureEvents();
+    }
+    
+    @Override
+    public long getEarlyCommits()
+    {
+        final MemoryGovernor governor = memoryGovernor;
+        return governor == null ? 0 : governor.getEarlyCommits();
+    }
+    
+    @Override
+    public long getParserThrottledMillis()
+    {
+        final MemoryGovernor governor = memoryGovernor;
+        return governor == null ? 0 : governor.getThrottledNanos() / 1000000L;
+    }
+    
+    @Override
+    public long getParserBlockedMillis()
+    {
+        return putBlockedNanos.get() / 1000000L;
+    }
+    
+    @Override
+    public long getPusherBlockedMillis()
+    {
+        long result = 0;
+        for(final PusherMetrics pusher : pushers)
+        {
+            result += pusher.getPollBlockedMillis();
+        }
+        return result;
+    }
+    
+    private double perSecond(long count)
+    {
+        final long elapsed = System.nanoTime() - startNanos;
+        return elapsed <= 0 ? 0 : count * 1000000000.0 / elapsed;
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.sesameloader.metrics;
+
+/**
+ * JMX view of the progress of a running load.
+ */
+public interface LoaderMetricsMBean
+{
+    long getStatementsParsed();
+    
+    long getFilesParsed();
+    
+    /**
+     * @return The average number of statements parsed per second since the load started.
+     */
+    double getParseRate();
+    
+    long getStatementsAdded();
+    
+    /**
+     * @return The average number of statements added to the repository per second since the load
+     *         started.
+     */
+    double getAddRate();
+    
+    long[] getStatementsAddedPerPusher();
+    
+    int getQueueSize();
+    
+    int getQueueCapacity();
+    
+    double getAverageQueueSize();
+    
+    int getMaxQueueSize();
+    
+    long getCommitCount();
+    
+    long getCommitLatencyMeanMillis();
+    
+    long getCommitLatencyMedianMillis();
+    
+    long getCommitLatency99thPercentileMillis();
+    
+    long getCommitLatencyMaxMillis();
+    
+    String getCommitLatencyHistogram();
+    
+    /**
+     * @return The number of statements each pusher currently adds before committing, which changes
+     *         during a load when the commit interval is adaptive.
+     */
+    int[] getCommitIntervalPerPusher();
+    
+    /**
+     * @return The number of URIs and literals the parsers got from the value cache, 0 if there is
+     *         none.
+     */
+    long getValueCacheHits();
+    
+    long getValueCacheMisses();
+    
+    double getValueCacheHitRate();
+    
+    int getValueCacheSize();
+    
+    /**
+     * @return The number of statements the duplicate filter may have seen before, which were looked
+     *         up in the repository, 0 if there is no filter.
+     */
+    long getDuplicateCandidates();
+    
+    /**
+     * @return The number of statements found in the repository already, which were not added again.
+     */
+    long getDuplicatesDropped();
+    
+    /**
+     * @return True while the memory governor finds memory under pressure, false if there is no
+     *         governor.
+     */
+    boolean isMemoryUnderPressure();
+    
+    /**
+     * @return The number of times memory came under pressure, 0 if there is no memory governor.
+     */
+    long getMemoryPressureEvents();
+    
+    /**
+     * @return The number of commits made before the commit interval because of memory pressure.
+     */
+    long getEarlyCommits();
+    
+    /**
+     * @return The part of the parser blocked time spent waiting for memory pressure to end.
+     */
+    long getParserThrottledMillis();
+    
+    /**
+     * @return The total time parser threads spent waiting for room in the queue.
+     */
+    long getParserBlockedMillis();
+    
+    /**
+     * @return The total time pusher threads spent waiting for statements in the queue.
+     */
+    long getPusherBlockedMillis();
+}
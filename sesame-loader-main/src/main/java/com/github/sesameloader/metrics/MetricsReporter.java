@@ -0,0 +1,191 @@
+package com.github.sesameloader.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes {@link LoaderMetrics} as an MBean while a load runs, samples the queue occupancy every
+ * second and logs a summary of every stage at a fixed interval.
+ */
+public class MetricsReporter
+{
+    private static final Logger LOG = LoggerFactory.getLogger(MetricsReporter.class);
+    
+    private static final AtomicInteger LOADER_IDS = new AtomicInteger();
+    
+    private final LoaderMetrics metrics;
+    
+    private final ScheduledExecutorService scheduler;
+    
+    private ObjectName objectName;
+    
+    private long lastReportNanos = System.nanoTime();
+    
+    private long lastParsed = 0;
+    
+    private long[] lastAdded = new long[0];
+    
+    /**
+     * Starts reporting on the given metrics.
+     * 
+     * @param metrics
+     *            The metrics to report.
+     * @param intervalSeconds
+     *            The number of seconds between log reports, or 0 to only publish the MBean.
+     */
+    public MetricsReporter(LoaderMetrics metrics, int intervalSeconds)
+    {
+        this.metrics = metrics;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    final Thread thread = new Thread(r, "loader-metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        
+        this.scheduler.scheduleAtFixedRate(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    MetricsReporter.this.metrics.sampleQueue();
+                }
+            }, 1, 1, TimeUnit.SECONDS);
+        
+        if(intervalSeconds > 0)
+        {
+            this.scheduler.scheduleAtFixedRate(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        report();
+                    }
+                }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+        
+        register();
+    }
+    
+    /**
+     * Stops the periodic reports, logs a final report and removes the MBean.
+     */
+    public void stop()
+    {
+        scheduler.shutdownNow();
+        report();
+        unregister();
+    }
+    
+    private synchronized void report()
+    {
+        try
+        {
+            final long now = System.nanoTime();
+            final double seconds = Math.max(1, now - lastReportNanos) / 1000000000.0;
+            final long parsed = metrics.getStatementsParsed();
+            
+            LOG.info(String.format("parsed %d statements (%.0f/s) from %d files, queue %d/%d chunks (average %.1f, max %d)",
+                    parsed, (parsed - lastParsed) / seconds, metrics.getFilesParsed(), metrics.getQueueSize(),
+                    metrics.getQueueCapacity(), metrics.getAverageQueueSize(), metrics.getMaxQueueSize()));
+            
+            final List<PusherMetrics> pushers = metrics.getPushers();
+            final long[] added = new long[pushers.size()];
+            final StringBuilder rates = new StringBuilder();
+            for(int i = 0; i < added.length; i++)
+            {
+                added[i] = pushers.get(i).getStatementsAdded();
+                final long previous = i < lastAdded.length ? lastAdded[i] : 0;
+                rates.append(i == 0 ? "" : " ").append(String.format("%.0f", (added[i] - previous) / seconds));
+            }
+            
+            LOG.info(String.format("added %d statements, per pusher statements/s [%s] commit intervals %s",
+                    metrics.getStatementsAdded(), rates, Arrays.toString(metrics.getCommitIntervalPerPusher())));
+            LOG.info(String.format(
+                    "%d commits, latency mean %dms median %dms 99th %dms max %dms, blocked parsers %dms pushers %dms",
+                    metrics.getCommitCount(), metrics.getCommitLatencyMeanMillis(),
+                    metrics.getCommitLatencyMedianMillis(), metrics.getCommitLatency99thPercentileMillis(),
+                    metrics.getCommitLatencyMaxMillis(), metrics.getParserBlockedMillis(),
+                    metrics.getPusherBlockedMillis()));
+            
+            if(metrics.getValueCache() != null)
+            {
+                LOG.info(String.format("value cache %d entries, %d hits %d misses (%.1f%% hit rate)",
+                        metrics.getValueCacheSize(), metrics.getValueCacheHits(), metrics.getValueCacheMisses(),
+                        metrics.getValueCacheHitRate() * 100));
+            }
+            
+            if(metrics.getDuplicateFilter() != null)
+            {
+                LOG.info(String.format("duplicate filter %d candidates looked up, %d duplicates dropped",
+                        metrics.getDuplicateCandidates(), metrics.getDuplicatesDropped()));
+            }
+            
+            if(metrics.getMemoryGovernor() != null)
+            {
+                LOG.info(String.format("memory %s, %d times under pressure, %d early commits, parsers throttled %.1fs",
+                        metrics.isMemoryUnderPressure() ? "under pressure" : "ok", metrics.getMemoryPressureEvents(),
+                        metrics.getEarlyCommits(), metrics.getParserThrottledMillis() / 1000.0));
+            }
+            
+            lastReportNanos = now;
+            lastParsed = parsed;
+            lastAdded = added;
+        }
+        catch(final RuntimeException e)
+        {
+            // never let a reporting problem stop the scheduled reports
+            LOG.error("Failed to report loader metrics", e);
+        }
+    }
+    
+    private void register()
+    {
+        try
+        {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName =
+                    new ObjectName("com.github.sesameloader:type=LoaderMetrics,name=loader-"
+                            + LOADER_IDS.incrementAndGet());
+            server.registerMBean(metrics, objectName);
+        }
+        catch(final JMException e)
+        {
+            LOG.warn("Could not register loader metrics MBean", e);
+            objectName = null;
+        }
+    }
+    
+    private void unregister()
+    {
+        if(objectName == null)
+        {
+            return;
+        }
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+        catch(final JMException e)
+        {
+            LOG.warn("Could not unregister loader metrics MBean", e);
+        }
+    }
+}
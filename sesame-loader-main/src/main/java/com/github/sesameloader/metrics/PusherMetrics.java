@@ -0,0 +1,68 @@
+package com.github.sesameloader.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for a single pusher thread, updated by that thread and read by the reporter.
+ */
+public class PusherMetrics
+{
+    private final AtomicLong statementsAdded = new AtomicLong();
+    
+    private final AtomicLong addNanos = new AtomicLong();
+    
+    private final AtomicLong pollBlockedNanos = new AtomicLong();
+    
+    private final LatencyHistogram commitLatency;
+    
+    private volatile int commitInterval;
+    
+    PusherMetrics(LatencyHistogram commitLatency)
+    {
+        this.commitLatency = commitLatency;
+    }
+    
+    public void added(int statements, long nanos)
+    {
+        statementsAdded.addAndGet(statements);
+        addNanos.addAndGet(nanos);
+    }
+    
+    public void committed(long nanos)
+    {
+        commitLatency.record(nanos);
+    }
+    
+    /**
+     * Records the number of statements the pusher now adds before each commit.
+     */
+    public void commitInterval(int statements)
+    {
+        commitInterval = statements;
+    }
+    
+    public void pollBlocked(long nanos)
+    {
+        pollBlockedNanos.addAndGet(nanos);
+    }
+    
+    public long getStatementsAdded()
+    {
+        return statementsAdded.get();
+    }
+    
+    public long getAddMillis()
+    {
+        return addNanos.get() / 1000000L;
+    }
+    
+    public int getCommitInterval()
+    {
+        return commitInterval;
+    }
+    
+    public long getPollBlockedMillis()
+    {
+        return pollBlockedNanos.get() / 1000000L;
+    }
+}
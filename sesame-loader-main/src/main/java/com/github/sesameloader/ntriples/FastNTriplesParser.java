@@ -0,0 +1,481 @@
+package com.github.sesameloader.ntriples;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.helpers.RDFParserBase;
+
+/**
+ * Parser for N-Triples and N-Quads that works on the UTF-8 bytes of the input rather than on
+ * characters, for loading large line based dumps.
+ *
+ * Lines are parsed in place in a read buffer, and the only objects created per statement are the
+ * strings of its values and what the ValueFactory creates from them. Absolute IRIs are taken as
+ * they are and nothing is validated beyond what is needed to find the parts of a line, as with
+ * verifyData turned off, so malformed IRIs or language tags are passed on. A line that can not be
+ * split into its parts is a fatal error.
+ *
+ * A fourth term on a line is taken as the context of the statement, so the same parser reads both
+ * formats.
+ */
+public class FastNTriplesParser extends RDFParserBase
+{
+    /**
+     * N-Quads, which Sesame 2.6 does not define, registered under the .nq extension.
+     */
+    public static final RDFFormat NQUADS = nquads();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final RDFFormat format;
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+    /**
+     * The decoded characters of the current term.
+     */
+    private char[] chars = new char[256];
+
+    private int lineNumber;
+
+    /**
+     * The position in the buffer of the next byte to parse on the current line.
+     */
+    private int position;
+
+    private int lineEnd;
+
+    public FastNTriplesParser()
+    {
+        this(RDFFormat.NTRIPLES);
+    }
+
+    /**
+     * @param format
+     *            The format this parser reports, {@link RDFFormat#NTRIPLES} or {@link #NQUADS}.
+     */
+    public FastNTriplesParser(RDFFormat format)
+    {
+        super();
+        this.format = format;
+        setDatatypeHandling(DatatypeHandling.IGNORE);
+    }
+
+    /**
+     * @return True if this parser reads the given format.
+     */
+    public static boolean supports(RDFFormat format)
+    {
+        return RDFFormat.NTRIPLES.equals(format) || NQUADS.equals(format);
+    }
+
+    @Override
+    public RDFFormat getRDFFormat()
+    {
+        return format;
+    }
+
+    @Override
+    public void parse(InputStream in, String baseURI) throws IOException, RDFParseException, RDFHandlerException
+    {
+        final RDFHandler handler = getRDFHandler();
+        lineNumber = 0;
+        if(handler != null)
+        {
+            handler.startRDF();
+        }
+        try
+        {
+            int start = 0;
+            int end = 0;
+            boolean eof = false;
+            while(true)
+            {
+                int newline = indexOfNewline(start, end);
+                if(newline < 0)
+                {
+                    if(eof)
+                    {
+                        if(start < end)
+                        {
+                            parseLine(start, end);
+                        }
+                        break;
+                    }
+                    // keep the partial line and read more behind it
+                    if(start > 0)
+                    {
+                        System.arraycopy(buffer, start, buffer, 0, end - start);
+                        end -= start;
+                        start = 0;
+                    }
+                    if(end == buffer.length)
+                    {
+                        final byte[] larger = new byte[buffer.length * 2];
+                        System.arraycopy(buffer, 0, larger, 0, end);
+                        buffer = larger;
+                    }
+                    final int read = in.read(buffer, end, buffer.length - end);
+                    if(read < 0)
+                    {
+                        eof = true;
+                    }
+                    else
+                    {
+                        end += read;
+                    }
+                    continue;
+                }
+                parseLine(start, newline);
+                start = newline + 1;
+            }
+        }
+        finally
+        {
+            clear();
+        }
+        if(handler != null)
+        {
+            handler.endRDF();
+        }
+    }
+
+    /**
+     * Encodes the characters again, as the loader only reads from streams.
+     */
+    @Override
+    public void parse(Reader reader, String baseURI) throws IOException, RDFParseException, RDFHandlerException
+    {
+        final RDFHandler handler = getRDFHandler();
+        lineNumber = 0;
+        if(handler != null)
+        {
+            handler.startRDF();
+        }
+        try
+        {
+            final BufferedReader lines = new BufferedReader(reader);
+            String line;
+            while((line = lines.readLine()) != null)
+            {
+                final byte[] bytes = line.getBytes(UTF_8);
+                if(bytes.length > buffer.length)
+                {
+                    buffer = new byte[bytes.length];
+                }
+                System.arraycopy(bytes, 0, buffer, 0, bytes.length);
+                parseLine(0, bytes.length);
+            }
+        }
+        finally
+        {
+            clear();
+        }
+        if(handler != null)
+        {
+            handler.endRDF();
+        }
+    }
+
+    private int indexOfNewline(int from, int to)
+    {
+        for(int i = from; i < to; i++)
+        {
+            if(buffer[i] == '\n')
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void parseLine(int start, int end) throws RDFParseException, RDFHandlerException
+    {
+        lineNumber++;
+        position = start;
+        lineEnd = end;
+        skipWhitespace();
+        if(position == lineEnd || buffer[position] == '#')
+        {
+            return;
+        }
+
+        final Resource subject = parseResource();
+        skipWhitespace();
+        if(position == lineEnd || buffer[position] != '<')
+        {
+            error("Expected an IRI as predicate");
+        }
+        final URI predicate = parseIri();
+        skipWhitespace();
+        final Value object = parseValue();
+        skipWhitespace();
+        Resource context = null;
+        if(position < lineEnd && buffer[position] != '.')
+        {
+            context = parseResource();
+            skipWhitespace();
+        }
+        if(position == lineEnd || buffer[position] != '.')
+        {
+            error("Expected '.' at the end of the statement");
+        }
+
+        final RDFHandler handler = getRDFHandler();
+        if(handler != null)
+        {
+            handler.handleStatement(context == null ? createStatement(subject, predicate, object) : createStatement(subject,
+                    predicate, object, context));
+        }
+    }
+
+    private Value parseValue() throws RDFParseException
+    {
+        if(position < lineEnd && buffer[position] == '"')
+        {
+            return parseLiteral();
+        }
+        return parseResource();
+    }
+
+    private Resource parseResource() throws RDFParseException
+    {
+        if(position < lineEnd)
+        {
+            if(buffer[position] == '<')
+            {
+                return parseIri();
+            }
+            if(buffer[position] == '_' && position + 1 < lineEnd && buffer[position + 1] == ':')
+            {
+                position += 2;
+                final int start = position;
+                while(position < lineEnd && !isWhitespace(buffer[position]))
+                {
+                    position++;
+                }
+                // a label may contain dots, but not end with one
+                while(position > start && buffer[position - 1] == '.')
+                {
+                    position--;
+                }
+                if(position == start)
+                {
+                    error("Empty blank node label");
+                }
+                return createBNode(decode(start, position));
+            }
+        }
+        error("Expected an IRI or a blank node");
+        return null;
+    }
+
+    private URI parseIri() throws RDFParseException
+    {
+        final int start = ++position;
+        while(position < lineEnd && buffer[position] != '>')
+        {
+            position++;
+        }
+        if(position == lineEnd)
+        {
+            error("Unterminated IRI");
+        }
+        final String iri = decode(start, position);
+        position++;
+        return createURI(iri);
+    }
+
+    private Value parseLiteral() throws RDFParseException
+    {
+        final int start = ++position;
+        while(position < lineEnd && buffer[position] != '"')
+        {
+            if(buffer[position] == '\\')
+            {
+                position++;
+            }
+            position++;
+        }
+        if(position >= lineEnd)
+        {
+            error("Unterminated literal");
+        }
+        final String label = decode(start, position);
+        position++;
+
+        if(position < lineEnd && buffer[position] == '@')
+        {
+            final int languageStart = ++position;
+            while(position < lineEnd && !isWhitespace(buffer[position]) && buffer[position] != '.')
+            {
+                position++;
+            }
+            return createLiteral(label, decode(languageStart, position), null);
+        }
+        if(position + 1 < lineEnd && buffer[position] == '^' && buffer[position + 1] == '^')
+        {
+            position += 2;
+            if(position == lineEnd || buffer[position] != '<')
+            {
+                error("Expected an IRI as datatype");
+            }
+            return createLiteral(label, null, parseIri());
+        }
+        return createLiteral(label, null, null);
+    }
+
+    private void skipWhitespace()
+    {
+        while(position < lineEnd && isWhitespace(buffer[position]))
+        {
+            position++;
+        }
+    }
+
+    private static boolean isWhitespace(byte b)
+    {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Decodes UTF-8 bytes and N-Triples escapes into a string. ASCII without escapes, by far the
+     * most common case, is copied without any decoding.
+     */
+    private String decode(int from, int to) throws RDFParseException
+    {
+        if(chars.length < to - from)
+        {
+            chars = new char[Math.max(to - from, chars.length * 2)];
+        }
+        int length = 0;
+        int i = from;
+        while(i < to)
+        {
+            final int b = buffer[i] & 0xff;
+            if(b < 0x80 && b != '\\')
+            {
+                chars[length++] = (char)b;
+                i++;
+            }
+            else if(b == '\\')
+            {
+                if(i + 1 >= to)
+                {
+                    error("Incomplete escape sequence");
+                }
+                final byte escaped = buffer[i + 1];
+                i += 2;
+                switch(escaped)
+                {
+                    case 't':
+                        chars[length++] = '\t';
+                        break;
+                    case 'n':
+                        chars[length++] = '\n';
+                        break;
+                    case 'r':
+                        chars[length++] = '\r';
+                        break;
+                    case 'b':
+                        chars[length++] = '\b';
+                        break;
+                    case 'f':
+                        chars[length++] = '\f';
+                        break;
+                    case '"':
+                    case '\'':
+                    case '\\':
+                        chars[length++] = (char)escaped;
+                        break;
+                    case 'u':
+                        length = appendCodePoint(hex(i, 4), length);
+                        i += 4;
+                        break;
+                    case 'U':
+                        length = appendCodePoint(hex(i, 8), length);
+                        i += 8;
+                        break;
+                    default:
+                        error("Unknown escape sequence \\" + (char)escaped);
+                }
+            }
+            else
+            {
+                // multi byte sequences decode to fewer chars than bytes, so they fit
+                final int bytes = b >= 0xf0 ? 4 : b >= 0xe0 ? 3 : 2;
+                if(i + bytes > to)
+                {
+                    error("Incomplete UTF-8 sequence");
+                }
+                int codePoint = b & (0xff >> (bytes + 1));
+                for(int k = 1; k < bytes; k++)
+                {
+                    codePoint = (codePoint << 6) | (buffer[i + k] & 0x3f);
+                }
+                length = appendCodePoint(codePoint, length);
+                i += bytes;
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    private int hex(int from, int digits) throws RDFParseException
+    {
+        if(from + digits > lineEnd)
+        {
+            error("Incomplete escape sequence");
+        }
+        int result = 0;
+        for(int i = from; i < from + digits; i++)
+        {
+            final int digit = Character.digit(buffer[i], 16);
+            if(digit < 0)
+            {
+                error("Invalid hexadecimal digit in escape sequence");
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+    private int appendCodePoint(int codePoint, int length)
+    {
+        if(length + 2 > chars.length)
+        {
+            final char[] larger = new char[chars.length * 2];
+            System.arraycopy(chars, 0, larger, 0, length);
+            chars = larger;
+        }
+        return length + Character.toChars(codePoint, chars, length);
+    }
+
+    private void error(String message) throws RDFParseException
+    {
+        reportFatalError(message, lineNumber, -1);
+    }
+
+    private static RDFFormat nquads()
+    {
+        final RDFFormat existing = RDFFormat.valueOf("N-Quads");
+        if(existing != null)
+        {
+            return existing;
+        }
+        final RDFFormat result = new RDFFormat("N-Quads", "text/x-nquads", Charset.forName("UTF-8"), "nq", false, true);
+        RDFFormat.register(result);
+        return result;
+    }
+}
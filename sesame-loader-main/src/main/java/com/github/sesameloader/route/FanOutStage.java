@@ -0,0 +1,206 @@
+package com.github.sesameloader.route;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.openrdf.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sesameloader.StatementChunk;
+import com.github.sesameloader.StatementChunkQueue;
+
+/**
+ * Pipeline stage between the parsers and several groups of pushers, each loading a repository of
+ * its own, that hands a copy of every chunk to every group, or when sharding sends each statement
+ * to the group chosen by hashing its {@link RoutingKey}.
+ *
+ * Each group takes from its own bounded queue, so a group that loads more slowly than the others
+ * only holds this stage, and with it the parsers and the other groups, back once its queue is
+ * full. From then on every group loads at the pace of the slowest. The time spent waiting for each
+ * queue is counted, which shows the slowest repository.
+ *
+ * A sync is passed on to every queue after the statements before it, and is complete once every
+ * group has committed them. At the end of the stream this stage stops, and leaves ending the
+ * output queues to their owners. After a failure the statements that follow are dropped, but syncs
+ * and the end of the stream still reach every group, so no repository is left waiting.
+ */
+public class FanOutStage implements Runnable
+{
+    private final Logger log = LoggerFactory.getLogger(FanOutStage.class);
+
+    private final StatementChunkQueue input;
+
+    private final List<StatementChunkQueue> outputs;
+
+    private final List<Integer> consumers;
+
+    private final AtomicLongArray waitNanos;
+
+    private final RoutingKey shardKey;
+
+    private final StatementChunk[] chunks;
+
+    private volatile Throwable failure;
+
+    /**
+     * @param input
+     *            The queue the parsers put statements into.
+     * @param outputs
+     *            The queues of the groups of pushers, one for each repository.
+     * @param consumers
+     *            The number of threads taking from each output queue.
+     * @param shardKey
+     *            The part of each statement that decides its repository, or null to load every
+     *            statement into every repository.
+     */
+    public FanOutStage(StatementChunkQueue input, List<StatementChunkQueue> outputs, List<Integer> consumers, RoutingKey shardKey)
+    {
+        if(outputs.size() != consumers.size())
+        {
+            throw new IllegalArgumentException("Need the number of consumers of every output queue");
+        }
+        this.input = input;
+        this.outputs = outputs;
+        this.consumers = consumers;
+        this.waitNanos = new AtomicLongArray(outputs.size());
+        this.shardKey = shardKey;
+        this.chunks = new StatementChunk[shardKey == null ? 0 : outputs.size()];
+        for(int i = 0; i < chunks.length; i++)
+        {
+            chunks[i] = outputs.get(i).newChunk();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            while(true)
+            {
+                final StatementChunk chunk = input.take();
+                if(StatementChunkQueue.isEndOfStream(chunk))
+                {
+                    flush();
+                    return;
+                }
+                if(chunk instanceof StatementChunkQueue.Barrier)
+                {
+                    flush();
+                    // let every group commit at the same time
+                    final StatementChunkQueue.Barrier[] barriers = new StatementChunkQueue.Barrier[outputs.size()];
+                    for(int i = 0; i < barriers.length; i++)
+                    {
+                        barriers[i] = outputs.get(i).barrier(consumers.get(i));
+                    }
+                    for(final StatementChunkQueue.Barrier next : barriers)
+                    {
+                        next.await();
+                    }
+                    ((StatementChunkQueue.Barrier)chunk).arrive();
+                    continue;
+                }
+                try
+                {
+                    if(failure == null && shardKey != null)
+                    {
+                        shard(chunk);
+                    }
+                    else if(failure == null)
+                    {
+                        copy(chunk);
+                    }
+                }
+                catch(final RuntimeException e)
+                {
+                    failed(e);
+                }
+                catch(final Error e)
+                {
+                    failed(e);
+                }
+                finally
+                {
+                    input.recycle(chunk);
+                }
+            }
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void copy(StatementChunk chunk) throws InterruptedException
+    {
+        for(int i = 0; i < outputs.size(); i++)
+        {
+            // each group recycles the chunks it is given into its own pool
+            final StatementChunk copy = outputs.get(i).newChunk();
+            for(final Statement next : chunk)
+            {
+                copy.add(next);
+            }
+            put(i, copy);
+        }
+    }
+
+    private void shard(StatementChunk chunk) throws InterruptedException
+    {
+        for(final Statement next : chunk)
+        {
+            final int shard = shardKey.shard(next, chunks.length);
+            if(chunks[shard].add(next))
+            {
+                put(shard, chunks[shard]);
+                chunks[shard] = outputs.get(shard).newChunk();
+            }
+        }
+    }
+
+    /**
+     * Hands the partly filled chunk of every shard to its group, so a sync covers them.
+     */
+    private void flush() throws InterruptedException
+    {
+        for(int i = 0; i < chunks.length; i++)
+        {
+            if(!chunks[i].isEmpty())
+            {
+                put(i, chunks[i]);
+                chunks[i] = outputs.get(i).newChunk();
+            }
+        }
+    }
+
+    private void put(int output, StatementChunk chunk) throws InterruptedException
+    {
+        final long start = System.nanoTime();
+        outputs.get(output).put(chunk);
+        waitNanos.addAndGet(output, System.nanoTime() - start);
+    }
+
+    private void failed(Throwable e)
+    {
+        log.error("Handing statements to the repositories failed, discarding the statements it is given from now on", e);
+        failure = e;
+    }
+
+    /**
+     * @return The exception that stopped this stage from handing on statements, or null if it has
+     *         not failed.
+     */
+    public Throwable getFailure()
+    {
+        return failure;
+    }
+
+    /**
+     * @return The total time this stage has spent waiting for space in the given output queue.
+     */
+    public long getWaitNanos(int output)
+    {
+        return waitNanos.get(output);
+    }
+}
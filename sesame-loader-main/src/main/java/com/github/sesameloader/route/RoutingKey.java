@@ -0,0 +1,71 @@
+package com.github.sesameloader.route;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+
+/**
+ * The part of a statement that decides which pusher loads it.
+ */
+public enum RoutingKey
+{
+    /**
+     * All statements about a subject go to the same pusher.
+     */
+    SUBJECT
+    {
+        @Override
+        Value of(Statement statement)
+        {
+            return statement.getSubject();
+        }
+    },
+    
+    /**
+     * All statements in a context go to the same pusher, those without a context to the first one.
+     */
+    CONTEXT
+    {
+        @Override
+        Value of(Statement statement)
+        {
+            return statement.getContext();
+        }
+    };
+    
+    abstract Value of(Statement statement);
+    
+    /**
+     * @return The lane of the statement, between 0 and lanes - 1.
+     */
+    public int lane(Statement statement, int lanes)
+    {
+        final Value key = of(statement);
+        if(key == null)
+        {
+            return 0;
+        }
+        int hash = key.hashCode();
+        // the string hashes of URIs sharing a long prefix differ mostly in their low bits
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % lanes;
+    }
+    
+    /**
+     * Chooses the store of a statement when statements are split across several stores, which
+     * may in turn route them to their pushers by the same key. The hash is mixed differently
+     * from {@link #lane(Statement, int)}, as the statements of a shard would otherwise all go to
+     * the few lanes that agree with it.
+     * 
+     * @return The shard of the statement, between 0 and shards - 1.
+     */
+    public int shard(Statement statement, int shards)
+    {
+        final Value key = of(statement);
+        if(key == null)
+        {
+            return 0;
+        }
+        final int hash = key.hashCode() * 0x9e3779b9;
+        return (int)(((hash >>> 1) * (long)shards) >>> 31);
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.sesameloader.route;
+
+import java.util.List;
+
+import org.openrdf.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sesameloader.StatementChunk;
+import com.github.sesameloader.StatementChunkQueue;
+
+/**
+ * Pipeline stage between the parsers and the pushers that gives every pusher a queue of its own,
+ * and sends each statement to the pusher chosen by hashing its {@link RoutingKey}.
+ * 
+ * All statements about a subject, or in a context, are then added by the same pusher, so
+ * concurrent transactions rarely touch the same parts of the store's indexes, and each transaction
+ * adds statements that are close together. Every lane has this stage as its only producer and a
+ * single pusher as its only consumer.
+ * 
+ * A sync or the end of the stream is passed on to every lane after the statements routed before
+ * it. If routing a statement fails, the statements that follow are dropped, but markers are still
+ * passed on, so the pushers finish and the loader can report the failure.
+ */
+public class RoutingStage implements Runnable
+{
+    private final Logger log = LoggerFactory.getLogger(RoutingStage.class);
+    
+    private final StatementChunkQueue input;
+    
+    private final List<StatementChunkQueue> lanes;
+    
+    private final RoutingKey key;
+    
+    private final StatementChunk[] chunks;
+    
+    private volatile Throwable failure;
+    
+    /**
+     * @param input
+     *            The queue the parsers put statements into.
+     * @param lanes
+     *            The queues of the pushers, one for each.
+     * @param key
+     *            The part of each statement that decides its lane.
+     */
+    public RoutingStage(StatementChunkQueue input, List<StatementChunkQueue> lanes, RoutingKey key)
+    {
+        this.input = input;
+        this.lanes = lanes;
+        this.key = key;
+        this.chunks = new StatementChunk[lanes.size()];
+        for(int i = 0; i < chunks.length; i++)
+        {
+            chunks[i] = lanes.get(i).newChunk();
+        }
+    }
+    
+    @Override
+    public void run()
+    {
+        try
+        {
+            while(true)
+            {
+                final StatementChunk chunk = input.take();
+                if(StatementChunkQueue.isEndOfStream(chunk))
+                {
+                    flush();
+                    for(final StatementChunkQueue lane : lanes)
+                    {
+                        lane.endOfStream(1);
+                    }
+                    return;
+                }
+                if(chunk instanceof StatementChunkQueue.Barrier)
+                {
+                    flush();
+                    // let every lane commit at the same time
+                    final StatementChunkQueue.Barrier[] barriers = new StatementChunkQueue.Barrier[lanes.size()];
+                    for(int i = 0; i < barriers.length; i++)
+                    {
+                        barriers[i] = lanes.get(i).barrier(1);
+                    }
+                    for(final StatementChunkQueue.Barrier next : barriers)
+                    {
+                        next.await();
+                    }
+                    ((StatementChunkQueue.Barrier)chunk).arrive();
+                    continue;
+                }
+                try
+                {
+                    if(failure == null)
+                    {
+                        route(chunk);
+                    }
+                }
+                catch(final RuntimeException e)
+                {
+                    failed(e);
+                }
+                catch(final Error e)
+                {
+                    failed(e);
+                }
+                finally
+                {
+                    input.recycle(chunk);
+                }
+            }
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * @return The exception that stopped this stage from routing statements, or null if it has not
+     *         failed.
+     */
+    public Throwable getFailure()
+    {
+        return failure;
+    }
+    
+    private void route(StatementChunk chunk) throws InterruptedException
+    {
+        for(final Statement next : chunk)
+        {
+            final int lane = key.lane(next, chunks.length);
+            if(chunks[lane].add(next))
+            {
+                lanes.get(lane).put(chunks[lane]);
+                chunks[lane] = lanes.get(lane).newChunk();
+            }
+        }
+    }
+    
+    private void failed(Throwable e)
+    {
+        log.error("Routing statements failed, discarding the statements it is given from now on", e);
+        failure = e;
+    }
+    
+    /**
+     * Hands the partly filled chunk of every lane to its pusher.
+     */
+    private void flush() throws InterruptedException
+    {
+        for(int i = 0; i < chunks.length; i++)
+        {
+            if(!chunks[i].isEmpty())
+            {
+                lanes.get(i).put(chunks[i]);
+                chunks[i] = lanes.get(i).newChunk();
+            }
+        }
+    }
+}
@@ -0,0 +1,475 @@
+package com.github.sesameloader.sort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sesameloader.StatementChunk;
+import com.github.sesameloader.StatementChunkQueue;
+
+/**
+ * Pipeline stage between the parsers and the pushers that hands statements on in
+ * {@link StatementOrder#SPOC} order.
+ * 
+ * Statements taken from the parser queue are collected in memory, and each time the buffer fills
+ * up it is sorted and spilled to a temporary run file. When a load ends, signalled by a sync or the
+ * end of the stream, the runs are merged and the statements put into the pusher queue in order
+ * before the marker is passed on. A load that fits in a single run never touches the disk.
+ * 
+ * As every sync ends a sort, LoaderMain only writes checkpoints at the end of each load while
+ * sorting.
+ */
+public class ExternalSortStage implements Runnable
+{
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    
+    /**
+     * The number of runs read at once while merging. A load that spills more runs than this is
+     * merged in several passes.
+     */
+    private static final int MERGE_FAN_IN = 64;
+    
+    private final Logger log = LoggerFactory.getLogger(ExternalSortStage.class);
+    
+    private final StatementChunkQueue input;
+    
+    private final StatementChunkQueue output;
+    
+    private final int consumers;
+    
+    private final File directory;
+    
+    private volatile ValueFactory valueFactory;
+    
+    private final Statement[] buffer;
+    
+    private int size = 0;
+    
+    private final List<File> runs = new ArrayList<File>();
+    
+    private volatile Throwable failure;
+    
+    /**
+     * @param input
+     *            The queue the parsers put statements into.
+     * @param output
+     *            The queue the pushers take statements from.
+     * @param consumers
+     *            The number of pushers.
+     * @param runSize
+     *            The number of statements sorted in memory at a time.
+     * @param directory
+     *            The directory for the temporary run files.
+     * @param valueFactory
+     *            The ValueFactory that statements read back from the runs are created with.
+     */
+    public ExternalSortStage(StatementChunkQueue input, StatementChunkQueue output, int consumers, int runSize,
+            File directory, ValueFactory valueFactory)
+    {
+        if(runSize < 1)
+        {
+            throw new IllegalArgumentException("Sort run size must be positive, was " + runSize);
+        }
+        this.input = input;
+        this.output = output;
+        this.consumers = consumers;
+        this.buffer = new Statement[runSize];
+        this.directory = directory;
+        this.valueFactory = valueFactory;
+    }
+    
+    @Override
+    public void run()
+    {
+        try
+        {
+            while(true)
+            {
+                final StatementChunk chunk = input.take();
+                if(StatementChunkQueue.isEndOfStream(chunk))
+                {
+                    handOn();
+                    output.endOfStream(consumers);
+                    return;
+                }
+                if(chunk instanceof StatementChunkQueue.Barrier)
+                {
+                    handOn();
+                    output.sync(consumers);
+                    ((StatementChunkQueue.Barrier)chunk).arrive();
+                    continue;
+                }
+                try
+                {
+                    for(final Statement next : chunk)
+                    {
+                        add(next);
+                    }
+                }
+                catch(final IOException e)
+                {
+                    failed(e);
+                }
+                catch(final RuntimeException e)
+                {
+                    failed(e);
+                }
+                catch(final Error e)
+                {
+                    failed(e);
+                }
+                finally
+                {
+                    input.recycle(chunk);
+                }
+            }
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Replaces the ValueFactory that statements read back from the runs are created with, for
+     * example when the loader starts caching values. Takes effect from the next merge.
+     */
+    public void setValueFactory(ValueFactory valueFactory)
+    {
+        this.valueFactory = valueFactory;
+    }
+    
+    /**
+     * @return The exception that stopped this stage from sorting statements, or null if it has not
+     *         failed.
+     */
+    public Throwable getFailure()
+    {
+        return failure;
+    }
+    
+    private void add(Statement statement) throws IOException
+    {
+        if(failure != null)
+        {
+            return;
+        }
+        if(size == buffer.length)
+        {
+            spill();
+        }
+        buffer[size++] = statement;
+    }
+    
+    /**
+     * Sorts the buffer and writes it to a new run file.
+     */
+    private void spill() throws IOException
+    {
+        Arrays.sort(buffer, 0, size, StatementOrder.SPOC);
+        final File run = File.createTempFile("sesame-loader-run-", ".bin", directory);
+        runs.add(run);
+        final DataOutputStream runOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run),
+                BUFFER_SIZE));
+        try
+        {
+            for(int i = 0; i < size; i++)
+            {
+                StatementSerializer.write(runOutput, buffer[i]);
+            }
+        }
+        finally
+        {
+            runOutput.close();
+        }
+        log.debug("Spilled " + size + " statements to " + run);
+        clearBuffer();
+    }
+    
+    /**
+     * Puts every statement collected so far into the pusher queue in order.
+     */
+    private void handOn() throws InterruptedException
+    {
+        try
+        {
+            if(failure != null)
+            {
+                return;
+            }
+            if(runs.isEmpty())
+            {
+                Arrays.sort(buffer, 0, size, StatementOrder.SPOC);
+                final OrderedOutput ordered = new OrderedOutput();
+                for(int i = 0; i < size; i++)
+                {
+                    ordered.add(buffer[i]);
+                }
+                ordered.flush();
+            }
+            else
+            {
+                if(size > 0)
+                {
+                    spill();
+                }
+                merge();
+            }
+        }
+        catch(final IOException e)
+        {
+            failed(e);
+        }
+        catch(final RuntimeException e)
+        {
+            failed(e);
+        }
+        catch(final Error e)
+        {
+            failed(e);
+        }
+        finally
+        {
+            clearBuffer();
+            deleteRuns();
+        }
+    }
+    
+    private void merge() throws IOException, InterruptedException
+    {
+        final long start = System.nanoTime();
+        final int runCount = runs.size();
+        reduceRuns();
+        final OrderedOutput ordered = new OrderedOutput();
+        final long statements = merge(runs, ordered);
+        ordered.flush();
+        log.info(String.format("Merged %d statements from %d sorted runs in %.1fs", statements, runCount,
+                (System.nanoTime() - start) / 1000000000.0));
+    }
+    
+    /**
+     * Replaces each group of MERGE_FAN_IN runs by a single run holding their statements in order,
+     * until the remaining runs can be merged into the pusher queue in one pass.
+     */
+    private void reduceRuns() throws IOException, InterruptedException
+    {
+        while(runs.size() > MERGE_FAN_IN)
+        {
+            final List<File> next = new ArrayList<File>(runs.size() / MERGE_FAN_IN + 1);
+            try
+            {
+                for(int from = 0; from < runs.size(); from += MERGE_FAN_IN)
+                {
+                    final List<File> group = runs.subList(from, Math.min(runs.size(), from + MERGE_FAN_IN));
+                    if(group.size() == 1)
+                    {
+                        next.add(group.get(0));
+                        continue;
+                    }
+                    final File run = File.createTempFile("sesame-loader-run-", ".bin", directory);
+                    next.add(run);
+                    final DataOutputStream runOutput = new DataOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(run), BUFFER_SIZE));
+                    try
+                    {
+                        merge(group, new StatementSink()
+                            {
+                                @Override
+                                public void add(Statement statement) throws IOException
+                                {
+                                    StatementSerializer.write(runOutput, statement);
+                                }
+                            });
+                    }
+                    finally
+                    {
+                        runOutput.close();
+                    }
+                    for(final File merged : group)
+                    {
+                        merged.delete();
+                    }
+                }
+            }
+            finally
+            {
+                // keeps the runs not merged yet, and the merged ones, for deleteRuns
+                for(final File run : runs)
+                {
+                    if(run.exists() && !next.contains(run))
+                    {
+                        next.add(run);
+                    }
+                }
+                runs.clear();
+                runs.addAll(next);
+            }
+        }
+    }
+    
+    /**
+     * Merges the given runs in {@link StatementOrder#SPOC} order.
+     * 
+     * @return The number of statements handed to the sink.
+     */
+    private long merge(List<File> inputs, StatementSink sink) throws IOException, InterruptedException
+    {
+        final PriorityQueue<RunReader> readers = new PriorityQueue<RunReader>(Math.max(1, inputs.size()));
+        long statements = 0;
+        try
+        {
+            for(final File run : inputs)
+            {
+                final RunReader reader = new RunReader(run);
+                if(reader.next())
+                {
+                    readers.add(reader);
+                }
+                else
+                {
+                    reader.close();
+                }
+            }
+            
+            while(!readers.isEmpty())
+            {
+                final RunReader reader = readers.poll();
+                sink.add(reader.current);
+                statements++;
+                if(reader.next())
+                {
+                    readers.add(reader);
+                }
+                else
+                {
+                    reader.close();
+                }
+            }
+        }
+        finally
+        {
+            for(final RunReader reader : readers)
+            {
+                reader.close();
+            }
+        }
+        return statements;
+    }
+    
+    /**
+     * Records the failure and drops the statements collected so far. Markers are still passed on,
+     * so the pushers and the parsers waiting for them finish, and the loader reports the failure.
+     */
+    private void failed(Throwable e)
+    {
+        log.error("Sorting statements failed, discarding the statements it is given from now on", e);
+        failure = e;
+        clearBuffer();
+        deleteRuns();
+    }
+    
+    private void clearBuffer()
+    {
+        Arrays.fill(buffer, 0, size, null);
+        size = 0;
+    }
+    
+    private void deleteRuns()
+    {
+        for(final File run : runs)
+        {
+            if(!run.delete())
+            {
+                log.warn("Could not delete sort run " + run);
+            }
+        }
+        runs.clear();
+    }
+    
+    /**
+     * Receives the statements of a merge in order.
+     */
+    private interface StatementSink
+    {
+        void add(Statement statement) throws IOException, InterruptedException;
+    }
+    
+    /**
+     * Fills chunks for the pusher queue.
+     */
+    private class OrderedOutput implements StatementSink
+    {
+        private StatementChunk chunk = output.newChunk();
+        
+        @Override
+        public void add(Statement statement) throws InterruptedException
+        {
+            if(chunk.add(statement))
+            {
+                output.put(chunk);
+                chunk = output.newChunk();
+            }
+        }
+        
+        void flush() throws InterruptedException
+        {
+            if(chunk.isEmpty())
+            {
+                output.recycle(chunk);
+            }
+            else
+            {
+                output.put(chunk);
+            }
+        }
+    }
+    
+    /**
+     * Reads the statements of a single run in order.
+     */
+    private class RunReader implements Comparable<RunReader>
+    {
+        private final DataInputStream runInput;
+        
+        private Statement current;
+        
+        RunReader(File run) throws IOException
+        {
+            this.runInput = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+        }
+        
+        /**
+         * @return False at the end of the run.
+         */
+        boolean next() throws IOException
+        {
+            current = StatementSerializer.read(runInput, valueFactory);
+            return current != null;
+        }
+        
+        void close() throws IOException
+        {
+            runInput.close();
+        }
+        
+        @Override
+        public int compareTo(RunReader other)
+        {
+            return StatementOrder.SPOC.compare(current, other.current);
+        }
+    }
+}
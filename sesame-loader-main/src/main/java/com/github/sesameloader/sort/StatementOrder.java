@@ -0,0 +1,94 @@
+package com.github.sesameloader.sort;
+
+import java.util.Comparator;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+
+/**
+ * Orders statements by subject, predicate, object and then context.
+ * 
+ * Values are ordered by kind, URIs before blank nodes before literals, and then by their string
+ * value. A store that assigns IDs as it first sees values gives statements loaded in this order
+ * ascending subject IDs, so its subject first index is written mostly sequentially.
+ * 
+ * This is an approximation of the store's own ID order, which is not known before the values are
+ * stored. Stores that do not assign IDs in the order they see values get less out of it.
+ */
+public class StatementOrder implements Comparator<Statement>
+{
+    public static final StatementOrder SPOC = new StatementOrder();
+    
+    @Override
+    public int compare(Statement o1, Statement o2)
+    {
+        int result = compareValues(o1.getSubject(), o2.getSubject());
+        if(result == 0)
+        {
+            result = compareValues(o1.getPredicate(), o2.getPredicate());
+            if(result == 0)
+            {
+                result = compareValues(o1.getObject(), o2.getObject());
+                if(result == 0)
+                {
+                    result = compareValues(o1.getContext(), o2.getContext());
+                }
+            }
+        }
+        return result;
+    }
+    
+    private static int compareValues(Value v1, Value v2)
+    {
+        if(v1 == v2)
+        {
+            return 0;
+        }
+        final int kind = kind(v1) - kind(v2);
+        if(kind != 0)
+        {
+            return kind;
+        }
+        int result = v1.stringValue().compareTo(v2.stringValue());
+        if(result == 0 && v1 instanceof Literal)
+        {
+            result = compareStrings(((Literal)v1).getLanguage(), ((Literal)v2).getLanguage());
+            if(result == 0)
+            {
+                final URI d1 = ((Literal)v1).getDatatype();
+                final URI d2 = ((Literal)v2).getDatatype();
+                result = compareStrings(d1 == null ? null : d1.stringValue(), d2 == null ? null : d2.stringValue());
+            }
+        }
+        return result;
+    }
+    
+    private static int kind(Value value)
+    {
+        if(value == null)
+        {
+            return 0;
+        }
+        if(value instanceof URI)
+        {
+            return 1;
+        }
+        if(value instanceof BNode)
+        {
+            return 2;
+        }
+        return 3;
+    }
+    
+    private static int compareStrings(String s1, String s2)
+    {
+        if(s1 == null)
+        {
+            return s2 == null ? 0 : -1;
+        }
+        return s2 == null ? 1 : s1.compareTo(s2);
+    }
+}
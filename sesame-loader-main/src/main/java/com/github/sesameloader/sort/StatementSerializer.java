@@ -0,0 +1,152 @@
+package com.github.sesameloader.sort;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+
+/**
+ * Writes statements to and reads them back from a compact binary form, for temporary files that
+ * are only read by the same version of the loader.
+ * 
+ * Each value is a tag byte followed by its strings, each string a length and its UTF-8 bytes.
+ */
+public final class StatementSerializer
+{
+    private static final byte NULL = 0;
+    
+    private static final byte URI = 1;
+    
+    private static final byte BNODE = 2;
+    
+    private static final byte PLAIN_LITERAL = 3;
+    
+    private static final byte LANGUAGE_LITERAL = 4;
+    
+    private static final byte TYPED_LITERAL = 5;
+    
+    private static final String UTF_8 = "UTF-8";
+    
+    private StatementSerializer()
+    {
+    }
+    
+    public static void write(DataOutput output, Statement statement) throws IOException
+    {
+        writeValue(output, statement.getSubject());
+        writeValue(output, statement.getPredicate());
+        writeValue(output, statement.getObject());
+        writeValue(output, statement.getContext());
+    }
+    
+    /**
+     * @return The next statement, or null at the end of the input.
+     */
+    public static Statement read(DataInput input, ValueFactory valueFactory) throws IOException
+    {
+        final byte subjectTag;
+        try
+        {
+            subjectTag = input.readByte();
+        }
+        catch(final EOFException e)
+        {
+            return null;
+        }
+        final Resource subject = (Resource)readValue(subjectTag, input, valueFactory);
+        final URI predicate = (URI)readValue(input.readByte(), input, valueFactory);
+        final Value object = readValue(input.readByte(), input, valueFactory);
+        final Resource context = (Resource)readValue(input.readByte(), input, valueFactory);
+        if(context == null)
+        {
+            return valueFactory.createStatement(subject, predicate, object);
+        }
+        return valueFactory.createStatement(subject, predicate, object, context);
+    }
+    
+    private static void writeValue(DataOutput output, Value value) throws IOException
+    {
+        if(value == null)
+        {
+            output.writeByte(NULL);
+        }
+        else if(value instanceof URI)
+        {
+            output.writeByte(URI);
+            writeString(output, value.stringValue());
+        }
+        else if(value instanceof BNode)
+        {
+            output.writeByte(BNODE);
+            writeString(output, ((BNode)value).getID());
+        }
+        else
+        {
+            final Literal literal = (Literal)value;
+            if(literal.getLanguage() != null)
+            {
+                output.writeByte(LANGUAGE_LITERAL);
+                writeString(output, literal.getLabel());
+                writeString(output, literal.getLanguage());
+            }
+            else if(literal.getDatatype() != null)
+            {
+                output.writeByte(TYPED_LITERAL);
+                writeString(output, literal.getLabel());
+                writeString(output, literal.getDatatype().stringValue());
+            }
+            else
+            {
+                output.writeByte(PLAIN_LITERAL);
+                writeString(output, literal.getLabel());
+            }
+        }
+    }
+    
+    private static Value readValue(byte tag, DataInput input, ValueFactory valueFactory) throws IOException
+    {
+        switch(tag)
+        {
+            case NULL:
+                return null;
+            case URI:
+                return valueFactory.createURI(readString(input));
+            case BNODE:
+                return valueFactory.createBNode(readString(input));
+            case PLAIN_LITERAL:
+                return valueFactory.createLiteral(readString(input));
+            case LANGUAGE_LITERAL:
+                return valueFactory.createLiteral(readString(input), readString(input));
+            case TYPED_LITERAL:
+                return valueFactory.createLiteral(readString(input), valueFactory.createURI(readString(input)));
+            default:
+                throw new IOException("Corrupt statement data, unknown value tag " + tag);
+        }
+    }
+    
+    /**
+     * Unlike {@link DataOutput#writeUTF(String)} this is not limited to 64KB, which long literals
+     * can exceed.
+     */
+    private static void writeString(DataOutput output, String value) throws IOException
+    {
+        final byte[] bytes = value.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+    
+    private static String readString(DataInput input) throws IOException
+    {
+        final byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.sesameloader.transport;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport over an {@link ArrayBlockingQueue}, where producers and consumers share a single lock
+ * and waiting threads sleep until they are signalled.
+ */
+public class BlockingQueueTransport<E> implements Transport<E>
+{
+    private final BlockingQueue<E> queue;
+    
+    private final int capacity;
+    
+    public BlockingQueueTransport(int capacity)
+    {
+        this.queue = new ArrayBlockingQueue<E>(capacity);
+        this.capacity = capacity;
+    }
+    
+    @Override
+    public void put(E element) throws InterruptedException
+    {
+        queue.put(element);
+    }
+    
+    @Override
+    public boolean offer(E element)
+    {
+        return queue.offer(element);
+    }
+    
+    @Override
+    public E take() throws InterruptedException
+    {
+        return queue.take();
+    }
+    
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return queue.poll(timeout, unit);
+    }
+    
+    @Override
+    public E poll()
+    {
+        return queue.poll();
+    }
+    
+    @Override
+    public int size()
+    {
+        return queue.size();
+    }
+    
+    @Override
+    public int capacity()
+    {
+        return capacity;
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.sesameloader.transport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock free transport over a ring of pre-allocated slots, for any number of producers and
+ * consumers.
+ * 
+ * Each slot has a sequence number that tells producers and consumers whose turn it is, so a
+ * producer claims a slot with a single compare and set on the tail, fills it and publishes it by
+ * advancing its sequence, and consumers do the same on the head. The sequence of the slot for
+ * position p is 2p while it waits for a producer and 2p + 1 while it waits for a consumer, which
+ * keeps the two apart even with a single slot. Threads never block each other
+ * and only contend on the counter of their own end. Waiting for space or elements is left to the
+ * {@link WaitStrategy}.
+ */
+public class RingBufferTransport<E> implements Transport<E>
+{
+    private final AtomicReferenceArray<E> slots;
+    
+    private final AtomicLongArray sequences;
+    
+    private final int capacity;
+    
+    private final WaitStrategy waitStrategy;
+    
+    /**
+     * The position of the next slot to fill.
+     */
+    private final AtomicLong tail = new AtomicLong();
+    
+    /**
+     * The position of the next slot to empty.
+     */
+    private final AtomicLong head = new AtomicLong();
+    
+    public RingBufferTransport(int capacity, WaitStrategy waitStrategy)
+    {
+        if(capacity < 1)
+        {
+            throw new IllegalArgumentException("Ring buffer capacity must be at least 1, was " + capacity);
+        }
+        this.slots = new AtomicReferenceArray<E>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for(int i = 0; i < capacity; i++)
+        {
+            sequences.set(i, 2L * i);
+        }
+        this.capacity = capacity;
+        this.waitStrategy = waitStrategy;
+    }
+    
+    @Override
+    public void put(E element) throws InterruptedException
+    {
+        for(int attempts = 0; !offer(element); attempts++)
+        {
+            idle(attempts);
+        }
+    }
+    
+    @Override
+    public boolean offer(E element)
+    {
+        if(element == null)
+        {
+            throw new NullPointerException();
+        }
+        long position = tail.get();
+        while(true)
+        {
+            final int slot = (int)(position % capacity);
+            final long difference = sequences.get(slot) - 2 * position;
+            if(difference == 0)
+            {
+                if(tail.compareAndSet(position, position + 1))
+                {
+                    slots.lazySet(slot, element);
+                    // publishes the element to consumers
+                    sequences.lazySet(slot, 2 * position + 1);
+                    return true;
+                }
+                position = tail.get();
+            }
+            else if(difference < 0)
+            {
+                // the consumer of the previous round has not emptied the slot yet
+                return false;
+            }
+            else
+            {
+                position = tail.get();
+            }
+        }
+    }
+    
+    @Override
+    public E take() throws InterruptedException
+    {
+        E element;
+        for(int attempts = 0; (element = poll()) == null; attempts++)
+        {
+            idle(attempts);
+        }
+        return element;
+    }
+    
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E element;
+        for(int attempts = 0; (element = poll()) == null; attempts++)
+        {
+            if(System.nanoTime() - deadline >= 0)
+            {
+                return null;
+            }
+            idle(attempts);
+        }
+        return element;
+    }
+    
+    @Override
+    public E poll()
+    {
+        long position = head.get();
+        while(true)
+        {
+            final int slot = (int)(position % capacity);
+            final long difference = sequences.get(slot) - (2 * position + 1);
+            if(difference == 0)
+            {
+                if(head.compareAndSet(position, position + 1))
+                {
+                    final E element = slots.get(slot);
+                    slots.lazySet(slot, null);
+                    // hands the slot to the producer of the next round
+                    sequences.lazySet(slot, 2 * (position + capacity));
+                    return element;
+                }
+                position = head.get();
+            }
+            else if(difference < 0)
+            {
+                // the slot has not been filled yet
+                return null;
+            }
+            else
+            {
+                position = head.get();
+            }
+        }
+    }
+    
+    @Override
+    public int size()
+    {
+        final long size = tail.get() - head.get();
+        return (int)Math.max(0, Math.min(capacity, size));
+    }
+    
+    @Override
+    public int capacity()
+    {
+        return capacity;
+    }
+    
+    private void idle(int attempts) throws InterruptedException
+    {
+        if(Thread.interrupted())
+        {
+            throw new InterruptedException();
+        }
+        waitStrategy.idle(attempts);
+    }
+}
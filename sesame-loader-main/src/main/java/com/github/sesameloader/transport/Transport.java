@@ -0,0 +1,54 @@
+package com.github.sesameloader.transport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded first in, first out hand-off between threads, which the statement pipeline moves its
+ * chunks through.
+ * 
+ * @param <E>
+ *            The type of the elements.
+ */
+public interface Transport<E>
+{
+    /**
+     * Waits for space and then adds the element.
+     */
+    void put(E element) throws InterruptedException;
+    
+    /**
+     * Adds the element if there is space.
+     * 
+     * @return False if the transport was full.
+     */
+    boolean offer(E element);
+    
+    /**
+     * Waits for and removes the next element.
+     */
+    E take() throws InterruptedException;
+    
+    /**
+     * Removes the next element, waiting up to the given time for one.
+     * 
+     * @return The element, or null if the timeout elapsed.
+     */
+    E poll(long timeout, TimeUnit unit) throws InterruptedException;
+    
+    /**
+     * Removes the next element if there is one.
+     * 
+     * @return The element, or null if the transport was empty.
+     */
+    E poll();
+    
+    /**
+     * @return The number of elements in the transport, which may already be out of date.
+     */
+    int size();
+    
+    /**
+     * @return The maximum number of elements in the transport.
+     */
+    int capacity();
+}
@@ -0,0 +1,33 @@
+package com.github.sesameloader.transport;
+
+/**
+ * The kinds of {@link Transport} the statement pipeline can use.
+ */
+public enum TransportType
+{
+    /**
+     * An {@link java.util.concurrent.ArrayBlockingQueue}, which ignores the wait strategy.
+     */
+    BLOCKING
+    {
+        @Override
+        public <E> Transport<E> create(int capacity, WaitStrategy waitStrategy)
+        {
+            return new BlockingQueueTransport<E>(capacity);
+        }
+    },
+    
+    /**
+     * A lock free {@link RingBufferTransport}.
+     */
+    RING
+    {
+        @Override
+        public <E> Transport<E> create(int capacity, WaitStrategy waitStrategy)
+        {
+            return new RingBufferTransport<E>(capacity, waitStrategy);
+        }
+    };
+    
+    public abstract <E> Transport<E> create(int capacity, WaitStrategy waitStrategy);
+}
@@ -0,0 +1,69 @@
+package com.github.sesameloader.transport;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * What a thread does while a {@link RingBufferTransport} is full or empty, trading CPU time for
+ * the latency of noticing that it no longer is.
+ */
+public enum WaitStrategy
+{
+    /**
+     * Retries straight away, which keeps a core busy for every waiting thread and only suits
+     * machines with a core to spare for each.
+     */
+    BUSY_SPIN
+    {
+        @Override
+        void idle(int attempts)
+        {
+        }
+    },
+    
+    /**
+     * Spins briefly and then yields the processor between retries.
+     */
+    YIELD
+    {
+        @Override
+        void idle(int attempts)
+        {
+            if(attempts >= SPINS)
+            {
+                Thread.yield();
+            }
+        }
+    },
+    
+    /**
+     * Spins and yields briefly and then parks between retries, so idle threads use little CPU at
+     * the cost of up to {@link #PARK_NANOS} of extra latency.
+     */
+    PARK
+    {
+        @Override
+        void idle(int attempts)
+        {
+            if(attempts >= 2 * SPINS)
+            {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+            else if(attempts >= SPINS)
+            {
+                Thread.yield();
+            }
+        }
+    };
+    
+    private static final int SPINS = 100;
+    
+    public static final long PARK_NANOS = 100000;
+    
+    /**
+     * Waits before the next attempt.
+     * 
+     * @param attempts
+     *            The number of attempts that failed so far.
+     */
+    abstract void idle(int attempts);
+}
@@ -0,0 +1,158 @@
+package com.github.sesameloader.sesame;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.sail.SailException;
+import org.openrdf.sail.nativerdf.BulkNativeStoreWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.sesameloader.RepositoryManager;
+
+/**
+ * Builds a new native store with a {@link BulkNativeStoreWriter} instead of through a repository.
+ * 
+ * The connections handed to the loading threads only support adding statements, committing and
+ * closing, and commits are no-ops. They find no statements, as the store has none until it is
+ * written. The triple indexes are only written when the manager is shut down, after which the
+ * directory can be opened as a normal native store, for example with
+ * {@link NativeRepositoryManager}.
+ */
+public class NativeBulkRepositoryManager
+    implements RepositoryManager
+{
+    private final Logger log = LoggerFactory.getLogger(NativeBulkRepositoryManager.class);
+    
+    private final BulkNativeStoreWriter writer;
+    
+    public NativeBulkRepositoryManager(File dataFileLocation) throws RepositoryException
+    {
+        this(dataFileLocation, BulkNativeStoreWriter.DEFAULT_TRIPLE_INDEXES, BulkNativeStoreWriter.DEFAULT_RUN_SIZE);
+    }
+    
+    /**
+     * @param dataFileLocation
+     *            The directory of the new store.
+     * @param tripleIndexes
+     *            The triple indexes of the new store, for example "spoc,posc".
+     * @param runSize
+     *            The number of statements each loading thread sorts in memory at a time.
+     */
+    public NativeBulkRepositoryManager(File dataFileLocation, String tripleIndexes, int runSize)
+        throws RepositoryException
+    {
+        try
+        {
+            writer = new BulkNativeStoreWriter(dataFileLocation, tripleIndexes, runSize);
+        }
+        catch(IOException e)
+        {
+            throw new RepositoryException(e);
+        }
+        log.debug("Bulk writer initialized");
+    }
+    
+    @Override
+    public RepositoryConnection getConnection()
+        throws RepositoryException
+    {
+        return (RepositoryConnection)Proxy.newProxyInstance(RepositoryConnection.class.getClassLoader(),
+                new Class<?>[] { RepositoryConnection.class }, new BulkConnection());
+    }
+    
+    /**
+     * Writes the triple indexes and closes the store files.
+     */
+    @Override
+    public void shutDown()
+        throws SailException, RepositoryException
+    {
+        try
+        {
+            writer.close();
+        }
+        catch(IOException e)
+        {
+            throw new RepositoryException(e);
+        }
+    }
+    
+    @Override
+    public ValueFactory getValueFactory()
+    {
+        return writer.getValueFactory();
+    }
+    
+    @Override
+    public Integer getMaximumThreads()
+    {
+        return 0;
+    }
+    
+    /**
+     * Forwards statements added to a connection to the writer.
+     */
+    private class BulkConnection
+        implements InvocationHandler
+    {
+        @SuppressWarnings("unchecked")
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable
+        {
+            final String name = method.getName();
+            if("add".equals(name) && args.length == 2 && args[0] instanceof Iterable)
+            {
+                try
+                {
+                    writer.add((Iterable<? extends Statement>)args[0], (Resource[])args[1]);
+                }
+                catch(IOException e)
+                {
+                    throw new RepositoryException(e);
+                }
+                return null;
+            }
+            if("commit".equals(name) || "rollback".equals(name) || "close".equals(name)
+                || "setAutoCommit".equals(name))
+            {
+                return null;
+            }
+            if("hasStatement".equals(name))
+            {
+                // the triple indexes are only written at shut down, and duplicates are dropped then
+                return Boolean.FALSE;
+            }
+            if("isOpen".equals(name))
+            {
+                return Boolean.TRUE;
+            }
+            if("getValueFactory".equals(name))
+            {
+                return writer.getValueFactory();
+            }
+            if("hashCode".equals(name))
+            {
+                return System.identityHashCode(proxy);
+            }
+            if("equals".equals(name))
+            {
+                return proxy == args[0];
+            }
+            if("toString".equals(name))
+            {
+                return "Bulk connection to " + writer;
+            }
+            throw new UnsupportedOperationException(name + " is not supported while bulk loading a native store");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * 
+ */
+package com.github.sesameloader.sesame;
+
+import java.io.File;
+
+import org.kohsuke.MetaInfServices;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.sail.SailException;
+
+import com.github.sesameloader.RepositoryManager;
+import com.github.sesameloader.RepositoryManagerFactory;
+
+/**
+ * Creates Native Bulk Repository Managers as needed, which build new native stores without going
+ * through a repository.
+ */
+@MetaInfServices()
+public class NativeBulkRepositoryManagerFactory implements RepositoryManagerFactory
+{
+    private static final String KEY = "native-bulk";
+    
+    /**
+     * 
+     */
+    public NativeBulkRepositoryManagerFactory()
+    {
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.github.sesameloader.RepositoryManagerFactory#createRepositoryManager(java.lang.String)
+     */
+    @Override
+    public RepositoryManager createRepositoryManager(String dataDirectory) throws RepositoryException, SailException
+    {
+        return new NativeBulkRepositoryManager(new File(dataDirectory));
+    }
+    
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.github.sesameloader.RepositoryManagerFactory#getKey()
+     */
+    @Override
+    public String getKey()
+    {
+        return KEY;
+    }
+    
+}
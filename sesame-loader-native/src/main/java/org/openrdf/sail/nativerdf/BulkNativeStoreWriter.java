@@ -0,0 +1,698 @@
+package org.openrdf.sail.nativerdf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.sail.SailException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds a new native store without going through a Sail connection.
+ *
+ * Values are written to the value store as they arrive, which gives every value its ID. Each
+ * loading thread collects the ID quads in a buffer of its own, and sorts full buffers once for
+ * every triple index into temporary run files, so threads only meet in the value store. On
+ * {@link #close()} every triple index is built from its own runs, merged in its own order with
+ * duplicates dropped, through a triple store that has only that index, so that every B-tree, not
+ * just the first, is written in key order. The finished indexes are then moved into the store
+ * directory. This class lives in the nativerdf package because TripleStore is package private.
+ *
+ * The resulting directory is opened with a normal {@link NativeStore} using the same triple
+ * indexes.
+ */
+public class BulkNativeStoreWriter
+{
+    public static final String DEFAULT_TRIPLE_INDEXES = "spoc,posc";
+
+    /**
+     * The number of quads each loading thread sorts in memory before they are spilled to runs,
+     * 16MB of IDs.
+     */
+    public static final int DEFAULT_RUN_SIZE = 1024 * 1024;
+
+    /**
+     * The number of quads written to the triple store in each of its transactions.
+     */
+    private static final int QUADS_PER_TRANSACTION = 1000000;
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * The largest number of runs merged at the same time, each with a file and a read buffer
+     * open. More runs are first merged into longer ones.
+     */
+    private static final int MERGE_FAN_IN = 64;
+
+    /**
+     * The file NativeStore records the version of the store format in.
+     */
+    private static final String VERSION_FILE = "nativerdf.ver";
+
+    private static final String SAIL_NATIVE_POM_PROPERTIES = "/META-INF/maven/org.openrdf.sesame/sesame-sail-native/pom.properties";
+
+    private final Logger log = LoggerFactory.getLogger(BulkNativeStoreWriter.class);
+
+    private final File dataDir;
+
+    private final String tripleIndexes;
+
+    private final File runDir;
+
+    private final ValueStore valueStore;
+
+    private final int runSize;
+
+    /**
+     * The field sequence of every triple index, for example "spoc".
+     */
+    private final String[] indexes;
+
+    /**
+     * The positions of subject, predicate, object and context in the quads, in the order of each
+     * triple index.
+     */
+    private final int[][] orders;
+
+    /**
+     * The sorted runs of each triple index.
+     */
+    private final List<List<File>> runs;
+
+    private final AtomicInteger runCount = new AtomicInteger();
+
+    /**
+     * Buffers not in use by a loading thread, and every buffer created.
+     */
+    private final Queue<RunBuffer> idle = new ConcurrentLinkedQueue<RunBuffer>();
+
+    private final List<RunBuffer> buffers = new ArrayList<RunBuffer>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param dataDir
+     *            The directory of the new store, which must not contain a store yet.
+     * @param tripleIndexes
+     *            The triple indexes of the new store, for example "spoc,posc".
+     * @param runSize
+     *            The number of quads each loading thread sorts in memory at a time.
+     */
+    public BulkNativeStoreWriter(File dataDir, String tripleIndexes, int runSize) throws IOException
+    {
+        if(new File(dataDir, "values.dat").exists())
+        {
+            throw new IOException("Bulk loading only builds new stores, but " + dataDir + " already contains one");
+        }
+        if(!dataDir.isDirectory() && !dataDir.mkdirs())
+        {
+            throw new IOException("Could not create " + dataDir);
+        }
+        this.dataDir = dataDir;
+        this.tripleIndexes = tripleIndexes;
+        this.runSize = runSize;
+        final String[] names = tripleIndexes.split(",");
+        this.indexes = new String[names.length];
+        this.orders = new int[names.length][];
+        this.runs = new ArrayList<List<File>>(names.length);
+        for(int i = 0; i < names.length; i++)
+        {
+            indexes[i] = names[i].trim();
+            orders[i] = fieldOrder(indexes[i]);
+            runs.add(new ArrayList<File>());
+        }
+        this.runDir = new File(dataDir, "bulk-runs");
+        if(!runDir.isDirectory() && !runDir.mkdir())
+        {
+            throw new IOException("Could not create " + runDir);
+        }
+        this.valueStore = new ValueStore(dataDir);
+    }
+
+    /**
+     * @return The value store, whose values already carry their IDs when they are added.
+     */
+    public ValueStore getValueFactory()
+    {
+        return valueStore;
+    }
+
+    /**
+     * Stores the values of the given statements and queues the statements for the triple store.
+     * Can be called by several threads at the same time, each of which fills and spills a buffer
+     * of its own.
+     *
+     * @param contexts
+     *            The contexts to put the statements into, instead of their own context if any are
+     *            given.
+     */
+    public void add(Iterable<? extends Statement> statements, Resource... contexts) throws IOException
+    {
+        if(closed)
+        {
+            throw new IllegalStateException("This writer has been closed");
+        }
+        final RunBuffer buffer = takeBuffer();
+        try
+        {
+            final int[] contextIds = new int[contexts.length];
+            for(int i = 0; i < contexts.length; i++)
+            {
+                contextIds[i] = contexts[i] == null ? 0 : valueStore.storeValue(contexts[i]);
+            }
+
+            for(final Statement next : statements)
+            {
+                final int subject = valueStore.storeValue(next.getSubject());
+                final int predicate = valueStore.storeValue(next.getPredicate());
+                final int object = valueStore.storeValue(next.getObject());
+                if(contextIds.length == 0)
+                {
+                    buffer.add(subject, predicate, object,
+                            next.getContext() == null ? 0 : valueStore.storeValue(next.getContext()));
+                }
+                else
+                {
+                    for(final int context : contextIds)
+                    {
+                        buffer.add(subject, predicate, object, context);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            idle.offer(buffer);
+        }
+    }
+
+    private RunBuffer takeBuffer()
+    {
+        final RunBuffer buffer = idle.poll();
+        if(buffer != null)
+        {
+            return buffer;
+        }
+        final RunBuffer created = new RunBuffer(runSize);
+        synchronized(buffers)
+        {
+            buffers.add(created);
+        }
+        return created;
+    }
+
+    /**
+     * Builds the triple indexes from the runs and closes the store files. The run files are
+     * deleted afterwards. Statements must no longer be added by then.
+     */
+    public synchronized void close() throws IOException, SailException
+    {
+        if(closed)
+        {
+            return;
+        }
+        closed = true;
+        try
+        {
+            for(final RunBuffer buffer : buffers)
+            {
+                buffer.spill();
+            }
+            valueStore.sync();
+            for(int i = 0; i < indexes.length; i++)
+            {
+                buildIndex(i);
+            }
+            // records the indexes and the scheme version of the triple store next to the index files
+            new TripleStore(dataDir, tripleIndexes).close();
+            writeVersion();
+        }
+        finally
+        {
+            valueStore.close();
+            for(final List<File> indexRuns : runs)
+            {
+                for(final File run : indexRuns)
+                {
+                    run.delete();
+                }
+            }
+            runDir.delete();
+        }
+    }
+
+    /**
+     * Merges the runs of a triple index into a triple store of its own, which only has that
+     * index, so its B-tree is written in key order, and moves the index files into the store
+     * directory.
+     */
+    private void buildIndex(int index) throws IOException, SailException
+    {
+        final long start = System.nanoTime();
+        final List<File> indexRuns = runs.get(index);
+        final int runCountBefore = indexRuns.size();
+        final int[] order = orders[index];
+        reduceRuns(indexRuns, order);
+        final File indexDir = new File(dataDir, "bulk-index-" + indexes[index]);
+        if(!indexDir.isDirectory() && !indexDir.mkdir())
+        {
+            throw new IOException("Could not create " + indexDir);
+        }
+        final long written;
+        try
+        {
+            final TripleStore tripleStore = new TripleStore(indexDir, indexes[index]);
+            try
+            {
+                tripleStore.startTransaction();
+                written = merge(indexRuns, order, new QuadSink()
+                    {
+                        private long inTransaction = 0;
+
+                        @Override
+                        public void quad(int[] quad) throws IOException
+                        {
+                            tripleStore.storeTriple(quad[0], quad[1], quad[2], quad[3]);
+                            if(++inTransaction == QUADS_PER_TRANSACTION)
+                            {
+                                tripleStore.commit();
+                                tripleStore.startTransaction();
+                                inTransaction = 0;
+                            }
+                        }
+                    });
+                tripleStore.commit();
+            }
+            finally
+            {
+                tripleStore.close();
+            }
+
+            final String prefix = "triples-" + indexes[index] + ".";
+            for(final File file : indexDir.listFiles())
+            {
+                if(file.getName().startsWith(prefix) && !file.renameTo(new File(dataDir, file.getName())))
+                {
+                    throw new IOException("Could not move " + file + " into " + dataDir);
+                }
+            }
+        }
+        finally
+        {
+            for(final File file : indexDir.listFiles())
+            {
+                file.delete();
+            }
+            indexDir.delete();
+        }
+        log.info(String.format("Wrote %d statements to the %s index from %d runs in %.1fs", written, indexes[index],
+                runCountBefore, (System.nanoTime() - start) / 1000000000.0));
+    }
+
+    /**
+     * Merges the given runs, MERGE_FAN_IN at a time, into longer runs until no more than
+     * MERGE_FAN_IN are left, so that the final merge keeps a bounded number of files open. The
+     * list is updated to the remaining runs, and merged runs are deleted.
+     */
+    private void reduceRuns(List<File> indexRuns, int[] order) throws IOException
+    {
+        while(indexRuns.size() > MERGE_FAN_IN)
+        {
+            final List<File> next = new ArrayList<File>(indexRuns.size() / MERGE_FAN_IN + 1);
+            try
+            {
+                for(int from = 0; from < indexRuns.size(); from += MERGE_FAN_IN)
+                {
+                    final List<File> group = indexRuns.subList(from, Math.min(indexRuns.size(), from + MERGE_FAN_IN));
+                    if(group.size() == 1)
+                    {
+                        next.add(group.get(0));
+                        continue;
+                    }
+                    final File run = new File(runDir, "merged-" + runCount.getAndIncrement());
+                    next.add(run);
+                    final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run),
+                            READ_BUFFER_SIZE));
+                    try
+                    {
+                        merge(group, order, new QuadSink()
+                            {
+                                @Override
+                                public void quad(int[] quad) throws IOException
+                                {
+                                    for(final int field : quad)
+                                    {
+                                        output.writeInt(field);
+                                    }
+                                }
+                            });
+                    }
+                    finally
+                    {
+                        output.close();
+                    }
+                    for(final File merged : group)
+                    {
+                        merged.delete();
+                    }
+                }
+            }
+            finally
+            {
+                // the runs not merged yet and the merged ones, which close() deletes
+                for(final File run : indexRuns)
+                {
+                    if(run.exists() && !next.contains(run))
+                    {
+                        next.add(run);
+                    }
+                }
+                indexRuns.clear();
+                indexRuns.addAll(next);
+            }
+        }
+    }
+
+    /**
+     * Merges the given runs in the given order, dropping duplicate quads.
+     *
+     * @return The number of quads handed to the sink.
+     */
+    private static long merge(List<File> inputs, int[] order, QuadSink sink) throws IOException
+    {
+        final PriorityQueue<RunReader> readers = new PriorityQueue<RunReader>(Math.max(1, inputs.size()));
+        long written = 0;
+        try
+        {
+            for(final File run : inputs)
+            {
+                final RunReader reader = new RunReader(run, order);
+                if(reader.next())
+                {
+                    readers.add(reader);
+                }
+                else
+                {
+                    reader.close();
+                }
+            }
+
+            final int[] previous = new int[] { -1, -1, -1, -1 };
+            while(!readers.isEmpty())
+            {
+                final RunReader reader = readers.poll();
+                final int[] quad = reader.quad;
+                if(compare(order, quad, 0, previous, 0) != 0)
+                {
+                    sink.quad(quad);
+                    System.arraycopy(quad, 0, previous, 0, 4);
+                    written++;
+                }
+                if(reader.next())
+                {
+                    readers.add(reader);
+                }
+                else
+                {
+                    reader.close();
+                }
+            }
+        }
+        finally
+        {
+            for(final RunReader reader : readers)
+            {
+                reader.close();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Receives the quads of a merge in order.
+     */
+    private interface QuadSink
+    {
+        void quad(int[] quad) throws IOException;
+    }
+
+    /**
+     * Records the version of the native store format, as NativeStore does for the stores it
+     * creates, when the version of the sesame-sail-native jar is known.
+     */
+    private void writeVersion() throws IOException
+    {
+        final InputStream input = NativeStore.class.getResourceAsStream(SAIL_NATIVE_POM_PROPERTIES);
+        if(input == null)
+        {
+            log.debug("Version of sesame-sail-native not known, not writing " + VERSION_FILE);
+            return;
+        }
+        final Properties properties = new Properties();
+        try
+        {
+            properties.load(input);
+        }
+        finally
+        {
+            input.close();
+        }
+        final String version = properties.getProperty("version");
+        if(version == null)
+        {
+            return;
+        }
+        final OutputStream output = new FileOutputStream(new File(dataDir, VERSION_FILE));
+        try
+        {
+            output.write(version.getBytes("UTF-8"));
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    /**
+     * Compares two quads in the given index order.
+     */
+    private static int compare(int[] order, int[] a, int aOffset, int[] b, int bOffset)
+    {
+        for(final int field : order)
+        {
+            final int x = a[aOffset + field];
+            final int y = b[bOffset + field];
+            if(x != y)
+            {
+                return x < y ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    private static int[] fieldOrder(String index)
+    {
+        if(index.length() != 4)
+        {
+            throw new IllegalArgumentException("Not a triple index: " + index);
+        }
+        final int[] result = new int[4];
+        for(int i = 0; i < 4; i++)
+        {
+            result[i] = "spoc".indexOf(index.charAt(i));
+            if(result[i] < 0)
+            {
+                throw new IllegalArgumentException("Not a triple index: " + index);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The quads collected by one loading thread at a time.
+     */
+    private class RunBuffer
+    {
+        private final int[] quads;
+
+        private int size = 0;
+
+        RunBuffer(int runSize)
+        {
+            this.quads = new int[runSize * 4];
+        }
+
+        void add(int subject, int predicate, int object, int context) throws IOException
+        {
+            if(size == quads.length)
+            {
+                spill();
+            }
+            quads[size++] = subject;
+            quads[size++] = predicate;
+            quads[size++] = object;
+            quads[size++] = context;
+        }
+
+        /**
+         * Sorts the quads in the order of each triple index in turn and writes them to a new run
+         * of that index.
+         */
+        void spill() throws IOException
+        {
+            if(size == 0)
+            {
+                return;
+            }
+            for(int index = 0; index < orders.length; index++)
+            {
+                sort(orders[index], 0, size / 4);
+                final File run = new File(runDir, "run-" + indexes[index] + "-" + runCount.getAndIncrement());
+                final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run),
+                        READ_BUFFER_SIZE));
+                try
+                {
+                    for(int i = 0; i < size; i++)
+                    {
+                        output.writeInt(quads[i]);
+                    }
+                }
+                finally
+                {
+                    output.close();
+                }
+                synchronized(runs)
+                {
+                    runs.get(index).add(run);
+                }
+                log.debug("Spilled " + (size / 4) + " quads to " + run);
+            }
+            size = 0;
+        }
+
+        /**
+         * Sorts the quads from index from to index to, exclusive, in the given order.
+         */
+        private void sort(int[] order, int from, int to)
+        {
+            // three way quicksort, as runs of duplicate statements are common, recursing into the
+            // smaller part
+            while(to - from > 16)
+            {
+                swap(from, from + (to - from) / 2);
+                int less = from;
+                int greater = to;
+                int i = from + 1;
+                while(i < greater)
+                {
+                    final int comparison = compare(order, quads, i * 4, quads, less * 4);
+                    if(comparison < 0)
+                    {
+                        swap(i++, less++);
+                    }
+                    else if(comparison > 0)
+                    {
+                        swap(i, --greater);
+                    }
+                    else
+                    {
+                        i++;
+                    }
+                }
+                if(less - from < to - greater)
+                {
+                    sort(order, from, less);
+                    from = greater;
+                }
+                else
+                {
+                    sort(order, greater, to);
+                    to = less;
+                }
+            }
+            for(int i = from + 1; i < to; i++)
+            {
+                for(int j = i; j > from && compare(order, quads, (j - 1) * 4, quads, j * 4) > 0; j--)
+                {
+                    swap(j - 1, j);
+                }
+            }
+        }
+
+        private void swap(int i, int j)
+        {
+            for(int k = 0; k < 4; k++)
+            {
+                final int tmp = quads[i * 4 + k];
+                quads[i * 4 + k] = quads[j * 4 + k];
+                quads[j * 4 + k] = tmp;
+            }
+        }
+    }
+
+    /**
+     * Reads the quads of a single run in order.
+     */
+    private static class RunReader implements Comparable<RunReader>
+    {
+        private final DataInputStream input;
+
+        private final int[] quad = new int[4];
+
+        private final int[] order;
+
+        RunReader(File run, int[] order) throws IOException
+        {
+            this.order = order;
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(run), READ_BUFFER_SIZE));
+        }
+
+        /**
+         * @return False at the end of the run.
+         */
+        boolean next() throws IOException
+        {
+            try
+            {
+                quad[0] = input.readInt();
+            }
+            catch(final EOFException e)
+            {
+                return false;
+            }
+            quad[1] = input.readInt();
+            quad[2] = input.readInt();
+            quad[3] = input.readInt();
+            return true;
+        }
+
+        void close() throws IOException
+        {
+            input.close();
+        }
+
+        @Override
+        public int compareTo(RunReader other)
+        {
+            return compare(order, quad, 0, other.quad, 0);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.sesameloader.compression.BgzfInputStream;
+import com.github.sesameloader.compression.GzipDecompressor;
+
+/**
+ * Tests the parallel inflation of block gzipped data against data written in the BGZF layout.
+ */
+public class BgzfInputStreamTest
+{
+    private static final int BLOCK_SIZE = 60000;
+    
+    private byte[] testContent;
+    
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        final StringBuilder content = new StringBuilder();
+        for(int i = 0; i < 100000; i++)
+        {
+            content.append("<http://example.org/s").append(i % 997).append("> <http://example.org/p> \"").append(i)
+                    .append("\" .\n");
+        }
+        this.testContent = content.toString().getBytes("UTF-8");
+    }
+    
+    @Test
+    public void testGzipDecompressorUsesBgzf() throws IOException
+    {
+        final InputStream input = new GzipDecompressor().decompress(new ByteArrayInputStream(bgzip(this.testContent)));
+        
+        Assert.assertTrue(input instanceof BgzfInputStream);
+        Assert.assertArrayEquals(this.testContent, IOUtils.toByteArray(input));
+    }
+    
+    @Test
+    public void testGzipDecompressorPlainGzip() throws IOException
+    {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final GZIPOutputStream output = new GZIPOutputStream(compressed);
+        output.write(this.testContent);
+        output.close();
+        
+        final InputStream input = new GzipDecompressor().decompress(new ByteArrayInputStream(compressed.toByteArray()));
+        
+        Assert.assertFalse(input instanceof BgzfInputStream);
+        Assert.assertArrayEquals(this.testContent, IOUtils.toByteArray(input));
+    }
+    
+    @Test
+    public void testCorruptBlockIsReported() throws IOException
+    {
+        final byte[] compressed = bgzip(this.testContent);
+        // flip a bit in the CRC32 of the last block before the empty end of file block
+        compressed[compressed.length - 28 - 8] ^= 1;
+        
+        try
+        {
+            IOUtils.toByteArray(new BgzfInputStream(new ByteArrayInputStream(compressed), 2));
+            Assert.fail("Did not receive expected exception");
+        }
+        catch(final IOException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("CRC32"));
+        }
+    }
+    
+    @Test
+    public void testTruncatedFileIsReported() throws IOException
+    {
+        final byte[] compressed = bgzip(this.testContent);
+        // cut the last block short, after enough blocks to fill the queue of the inflater
+        final byte[] truncated = new byte[compressed.length - 28 - 100];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        final InputStream input = new BgzfInputStream(new ByteArrayInputStream(truncated), 1);
+        
+        try
+        {
+            IOUtils.toByteArray(input);
+            Assert.fail("Did not receive expected exception");
+        }
+        catch(final EOFException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("Truncated"));
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+    
+    /**
+     * Compresses the given data in the BGZF layout, including the empty end of file block.
+     */
+    private static byte[] bgzip(byte[] data) throws IOException
+    {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for(int offset = 0; offset <= data.length; offset += BLOCK_SIZE)
+        {
+            final int length = Math.min(BLOCK_SIZE, data.length - offset);
+            final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            final byte[] deflated = new byte[BLOCK_SIZE * 2];
+            int deflatedLength = 0;
+            while(!deflater.finished())
+            {
+                deflatedLength += deflater.deflate(deflated, deflatedLength, deflated.length - deflatedLength);
+            }
+            deflater.end();
+            final CRC32 crc = new CRC32();
+            crc.update(data, offset, length);
+            
+            output.write(new byte[] { 0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff });
+            writeShort(output, 6);
+            output.write('B');
+            output.write('C');
+            writeShort(output, 2);
+            writeShort(output, deflatedLength + 25);
+            output.write(deflated, 0, deflatedLength);
+            writeInt(output, crc.getValue());
+            writeInt(output, length);
+            if(length == 0)
+            {
+                break;
+            }
+        }
+        return output.toByteArray();
+    }
+    
+    private static void writeShort(OutputStream output, int value) throws IOException
+    {
+        output.write(value & 0xFF);
+        output.write((value >> 8) & 0xFF);
+    }
+    
+    private static void writeInt(OutputStream output, long value) throws IOException
+    {
+        writeShort(output, (int)(value & 0xFFFF));
+        writeShort(output, (int)((value >> 16) & 0xFFFF));
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+import com.github.sesameloader.CachingValueFactory;
+
+/**
+ * Tests that the value cache returns equal values, reuses instances and stays within its bounds.
+ */
+public class CachingValueFactoryTest
+{
+    @Test
+    public void testReusesUris()
+    {
+        final CachingValueFactory factory = new CachingValueFactory(ValueFactoryImpl.getInstance(), 1024);
+        
+        final URI first = factory.createURI("http://example.org/a");
+        Assert.assertSame(first, factory.createURI("http://example.org/a"));
+        Assert.assertSame(first, factory.createURI("http://example.org/", "a"));
+        Assert.assertEquals(ValueFactoryImpl.getInstance().createURI("http://example.org/a"), first);
+        
+        Assert.assertEquals(2, factory.getHits());
+        Assert.assertEquals(1, factory.getMisses());
+    }
+    
+    @Test
+    public void testDistinguishesLiterals()
+    {
+        final CachingValueFactory factory = new CachingValueFactory(ValueFactoryImpl.getInstance(), 1024);
+        
+        final Literal plain = factory.createLiteral("1");
+        final Literal language = factory.createLiteral("1", "en");
+        final Literal typed = factory.createLiteral("1", XMLSchema.INTEGER);
+        
+        Assert.assertSame(plain, factory.createLiteral("1"));
+        Assert.assertSame(language, factory.createLiteral("1", "en"));
+        Assert.assertSame(typed, factory.createLiteral("1", XMLSchema.INTEGER));
+        Assert.assertSame(typed, factory.createLiteral(1));
+        
+        Assert.assertEquals(ValueFactoryImpl.getInstance().createLiteral("1"), plain);
+        Assert.assertEquals(ValueFactoryImpl.getInstance().createLiteral("1", "en"), language);
+        Assert.assertEquals(ValueFactoryImpl.getInstance().createLiteral("1", XMLSchema.INTEGER), typed);
+    }
+    
+    @Test
+    public void testDoesNotCacheLongLiteralsOrBlankNodes()
+    {
+        final CachingValueFactory factory = new CachingValueFactory(ValueFactoryImpl.getInstance(), 1024);
+        
+        final StringBuilder label = new StringBuilder();
+        while(label.length() <= CachingValueFactory.MAX_CACHED_LITERAL_LENGTH)
+        {
+            label.append("long literal ");
+        }
+        factory.createLiteral(label.toString());
+        factory.createBNode("b1");
+        
+        Assert.assertEquals(0, factory.size());
+        Assert.assertEquals(0, factory.getMisses());
+    }
+    
+    @Test
+    public void testBounded()
+    {
+        final CachingValueFactory factory = new CachingValueFactory(ValueFactoryImpl.getInstance(), 256);
+        
+        for(int i = 0; i < 10000; i++)
+        {
+            factory.createURI("http://example.org/" + i);
+        }
+        
+        Assert.assertTrue(factory.size() <= 256);
+        Assert.assertEquals(0.0, factory.getHitRate(), 0.0);
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.sesameloader.ChannelReadAheadInputStream;
+import com.github.sesameloader.FileRange;
+
+/**
+ * Tests that reading ahead with buffers much smaller than the file returns the file unchanged.
+ */
+public class ChannelReadAheadInputStreamTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File testFile;
+    
+    private byte[] testContent;
+    
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        this.testContent = new byte[1000003];
+        new Random(42).nextBytes(this.testContent);
+        
+        this.testFile = this.folder.newFile("readaheadtest.bin");
+        final FileOutputStream output = new FileOutputStream(this.testFile);
+        try
+        {
+            output.write(this.testContent);
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+    
+    @Test
+    public void testReadWholeFile() throws IOException
+    {
+        final ChannelReadAheadInputStream input = new ChannelReadAheadInputStream(this.testFile, 4096, 2);
+        try
+        {
+            Assert.assertArrayEquals(this.testContent, IOUtils.toByteArray(input));
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+    
+    @Test
+    public void testReadRange() throws IOException
+    {
+        final ChannelReadAheadInputStream input =
+                new ChannelReadAheadInputStream(this.testFile, new FileRange(10, 500010), 777, 3);
+        try
+        {
+            Assert.assertArrayEquals(Arrays.copyOfRange(this.testContent, 10, 500010), IOUtils.toByteArray(input));
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+    
+    @Test
+    public void testReadEmptyFile() throws IOException
+    {
+        final ChannelReadAheadInputStream input =
+                new ChannelReadAheadInputStream(this.folder.newFile("empty.bin"), 4096, 2);
+        try
+        {
+            Assert.assertEquals(-1, input.read());
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.sesameloader.CommitInterval;
+
+/**
+ * Tests that adaptive commit intervals follow throughput and commit latency within their bounds.
+ */
+public class CommitIntervalTest
+{
+    private static final long NO_LATENCY_LIMIT = Long.MAX_VALUE / 1000000L;
+    
+    @Test
+    public void testFixedIntervalNeverChanges()
+    {
+        final CommitInterval interval = new CommitInterval(5000);
+        Assert.assertFalse(interval.isAdaptive());
+        for(int i = 0; i < 10; i++)
+        {
+            interval.committed(5000, 1000000000L * (i + 1), 1000000000L);
+        }
+        Assert.assertEquals(5000, interval.get());
+    }
+    
+    @Test
+    public void testGrowsToMaximumWhileThroughputHolds()
+    {
+        final CommitInterval interval = new CommitInterval(1000, 100, 10000, NO_LATENCY_LIMIT, 1.0);
+        Assert.assertTrue(interval.isAdaptive());
+        int previous = interval.get();
+        for(int i = 0; i < 50; i++)
+        {
+            // a constant rate of one statement per microsecond
+            interval.committed(interval.get(), interval.get() * 1000L, 1000L);
+            Assert.assertTrue(interval.get() <= 10000);
+            previous = Math.max(previous, interval.get());
+        }
+        Assert.assertEquals(10000, previous);
+    }
+    
+    @Test
+    public void testShrinksToMinimumWhenCommitsAreSlow()
+    {
+        final CommitInterval interval = new CommitInterval(10000, 100, 100000, 1, 1.0);
+        for(int i = 0; i < 50; i++)
+        {
+            interval.committed(interval.get(), interval.get() * 1000L, 2000000L);
+            Assert.assertTrue(interval.get() >= 100);
+        }
+        Assert.assertEquals(100, interval.get());
+    }
+    
+    @Test
+    public void testTurnsAroundWhenThroughputDrops()
+    {
+        final CommitInterval interval = new CommitInterval(1000, 100, 100000, NO_LATENCY_LIMIT, 1.0);
+        interval.committed(1000, 1000000L, 1000L);
+        final int grown = interval.get();
+        Assert.assertTrue(grown > 1000);
+        
+        // the larger transaction was half as fast
+        interval.committed(grown, grown * 2000L, 1000L);
+        Assert.assertTrue(interval.get() < grown);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsInvertedBounds()
+    {
+        new CommitInterval(1000, 2000, 1000, NO_LATENCY_LIMIT, 1.0);
+    }
+}
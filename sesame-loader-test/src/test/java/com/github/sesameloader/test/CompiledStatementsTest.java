@@ -0,0 +1,149 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.helpers.StatementCollector;
+
+import com.github.sesameloader.compiled.CompiledStatementReader;
+import com.github.sesameloader.compiled.CompiledStatementWriter;
+
+/**
+ * Tests that compiled statement files read back the statements they were written from, also when
+ * the dictionary is too small to hold every value.
+ */
+public class CompiledStatementsTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        final List<Statement> statements = statements();
+
+        Assert.assertEquals(statements, roundTrip(statements, CompiledStatementWriter.DEFAULT_DICTIONARY_SIZE));
+    }
+
+    @Test
+    public void testRoundTripSmallDictionary() throws Exception
+    {
+        final List<Statement> statements = statements();
+
+        Assert.assertEquals(statements, roundTrip(statements, 3));
+    }
+
+    @Test
+    public void testRepeatedValuesAreShared() throws Exception
+    {
+        final URI subject = vf.createURI("http://example.org/a/rather/long/subject/that/is/repeated");
+        final URI predicate = vf.createURI("http://example.org/a/rather/long/predicate/that/is/repeated");
+        final List<Statement> statements = new ArrayList<Statement>();
+        for(int i = 0; i < 1000; i++)
+        {
+            statements.add(vf.createStatement(subject, predicate, vf.createLiteral(i)));
+        }
+        final File file = write(statements, 16);
+
+        Assert.assertTrue(file.length() < 1000 * subject.stringValue().length());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotCompiled() throws Exception
+    {
+        final File file = folder.newFile("not.rdfbin");
+        final FileOutputStream output = new FileOutputStream(file);
+        output.write("<http://example.org/s> <http://example.org/p> <http://example.org/o> .\n".getBytes("UTF-8"));
+        output.close();
+
+        new CompiledStatementReader(file, vf);
+    }
+
+    private List<Statement> statements()
+    {
+        final URI predicate = vf.createURI("http://example.org/p");
+        final List<Statement> statements = new ArrayList<Statement>();
+        for(int i = 0; i < 500; i++)
+        {
+            final Resource subject = i % 3 == 0 ? vf.createBNode("b" + (i % 17)) : vf.createURI("http://example.org/s" + (i % 50));
+            final Value object;
+            switch(i % 4)
+            {
+                case 0:
+                    object = vf.createLiteral("plain é中 " + i);
+                    break;
+                case 1:
+                    object = vf.createLiteral("chat" + (i % 7), "fr");
+                    break;
+                case 2:
+                    object = vf.createLiteral(Integer.toString(i % 9), XMLSchema.INT);
+                    break;
+                default:
+                    object = vf.createURI("http://example.org/o" + (i % 13));
+            }
+            statements.add(i % 5 == 0 ? vf.createStatement(subject, predicate, object, vf.createURI("http://example.org/g" + (i % 3)))
+                    : vf.createStatement(subject, predicate, object));
+        }
+        return statements;
+    }
+
+    private List<Statement> roundTrip(List<Statement> statements, int dictionarySize) throws Exception
+    {
+        final File file = write(statements, dictionarySize);
+        final List<Statement> result = new ArrayList<Statement>();
+        final CompiledStatementReader reader = new CompiledStatementReader(file, vf);
+        try
+        {
+            Assert.assertEquals(statements.size(), reader.read(new StatementCollector(result)));
+        }
+        finally
+        {
+            reader.close();
+        }
+        // statements are equal without regard to their contexts
+        for(int i = 0; i < statements.size(); i++)
+        {
+            Assert.assertEquals(statements.get(i).getContext(), result.get(i).getContext());
+        }
+        return result;
+    }
+
+    private File write(List<Statement> statements, int dictionarySize) throws Exception
+    {
+        final File file = new File(folder.getRoot(), "statements" + CompiledStatementWriter.EXTENSION);
+        final CompiledStatementWriter writer = new CompiledStatementWriter(file, dictionarySize);
+        try
+        {
+            writer.startRDF();
+            for(final Statement statement : statements)
+            {
+                writer.handleStatement(statement);
+            }
+            writer.endRDF();
+        }
+        finally
+        {
+            writer.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.sesameloader.ContextMapping;
+
+/**
+ * Tests that files get the context of their mapping, or one made from their file name.
+ */
+public class ContextMappingTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFileNames() throws Exception
+    {
+        final ContextMapping mapping = new ContextMapping("http://example.org/graph/");
+
+        Assert.assertEquals("http://example.org/graph/uniprot", mapping.getContext(new File("uniprot.nt")));
+        Assert.assertEquals("http://example.org/graph/uniprot", mapping.getContext(new File("data", "uniprot.nt.gz")));
+        Assert.assertEquals("http://example.org/graph/taxonomy", mapping.getContext(new File("taxonomy.rdf")));
+        Assert.assertEquals("http://example.org/graph/a%20b%C3%A9", mapping.getContext(new File("a bé.ttl")));
+
+        Assert.assertNull(new ContextMapping(null).getContext(new File("uniprot.nt")));
+    }
+
+    @Test
+    public void testMappingFile() throws Exception
+    {
+        final File directory = this.folder.newFolder();
+        final File mappingFile = new File(directory, "contexts.txt");
+        final FileOutputStream output = new FileOutputStream(mappingFile);
+        output.write(("# file context\n" + "\n" + "my data.nt <http://example.org/mine>\n"
+                + "sub/other.nt\thttp://example.org/other\n").getBytes("UTF-8"));
+        output.close();
+
+        final ContextMapping mapping = new ContextMapping("http://example.org/graph/");
+        mapping.read(mappingFile);
+
+        Assert.assertEquals("http://example.org/mine", mapping.getContext(new File("/anywhere/my data.nt")));
+        Assert.assertEquals("http://example.org/other", mapping.getContext(new File(new File(directory, "sub"), "other.nt")));
+        Assert.assertEquals("http://example.org/graph/other", mapping.getContext(new File(directory, "other.nt")));
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.sesameloader.compression.DecompressorRegistry;
+import com.github.sesameloader.compression.GzipDecompressor;
+
+/**
+ * Tests that the decompressors are found using their file extensions.
+ */
+public class DecompressorRegistryTest
+{
+    @Test
+    public void testGetInstance()
+    {
+        DecompressorRegistry registry = DecompressorRegistry.getInstance();
+        
+        Assert.assertNotNull(registry.getAll());
+        
+        // Update the following if more Decompressor instances are added
+        Assert.assertEquals(4, registry.getAll().size());
+        
+        Assert.assertNotNull(registry.get(".gz"));
+        Assert.assertNotNull(registry.get(".bz2"));
+        Assert.assertNotNull(registry.get(".xz"));
+        Assert.assertNotNull(registry.get(".zst"));
+    }
+    
+    @Test
+    public void testForFileName()
+    {
+        DecompressorRegistry registry = DecompressorRegistry.getInstance();
+        
+        Assert.assertTrue(registry.forFileName("uniprot.nt.gz") instanceof GzipDecompressor);
+        Assert.assertNull(registry.forFileName("uniprot.nt"));
+        Assert.assertNull(registry.forFileName("uniprot"));
+    }
+}
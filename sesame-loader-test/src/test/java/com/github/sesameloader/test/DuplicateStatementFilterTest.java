@@ -0,0 +1,75 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import com.github.sesameloader.DuplicateStatementFilter;
+
+/**
+ * Tests that the duplicate filter recognises the statements it has seen, in the contexts they were
+ * added to.
+ */
+public class DuplicateStatementFilterTest
+{
+    private final ValueFactory vf = ValueFactoryImpl.getInstance();
+    
+    private final URI predicate = vf.createURI("http://example.org/p");
+    
+    @Test
+    public void testRecognisesStatementsSeenBefore()
+    {
+        final DuplicateStatementFilter filter = new DuplicateStatementFilter(1024 * 1024, 10000);
+        
+        for(int i = 0; i < 10000; i++)
+        {
+            filter.put(statement(i));
+        }
+        for(int i = 0; i < 10000; i++)
+        {
+            Assert.assertTrue(filter.put(statement(i)));
+        }
+    }
+    
+    @Test
+    public void testFewFalsePositives()
+    {
+        final DuplicateStatementFilter filter = new DuplicateStatementFilter(1024 * 1024, 100000);
+        
+        int falsePositives = 0;
+        for(int i = 0; i < 100000; i++)
+        {
+            if(filter.put(statement(i)))
+            {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("Too many false positives: " + falsePositives, falsePositives < 1000);
+    }
+    
+    @Test
+    public void testDistinguishesContextsAndLiterals()
+    {
+        final DuplicateStatementFilter filter = new DuplicateStatementFilter(1024 * 1024, 1000);
+        final URI subject = vf.createURI("http://example.org/s");
+        
+        Assert.assertFalse(filter.put(vf.createStatement(subject, predicate, vf.createLiteral("1"))));
+        Assert.assertFalse(filter.put(vf.createStatement(subject, predicate, vf.createLiteral("1", "en"))));
+        Assert.assertFalse(filter.put(vf.createStatement(subject, predicate, vf.createLiteral("1", vf.createURI("http://example.org/t")))));
+        Assert.assertFalse(filter.put(vf.createStatement(subject, predicate, vf.createURI("1"))));
+        Assert.assertFalse(filter.put(vf.createStatement(subject, predicate, vf.createLiteral("1"), vf.createURI("http://example.org/g"))));
+        Assert.assertFalse(filter.put(vf.createStatement(subject, predicate, vf.createLiteral("1")), vf.createURI("http://example.org/h")));
+        Assert.assertTrue(filter.put(vf.createStatement(subject, predicate, vf.createLiteral("1")), vf.createURI("http://example.org/g")));
+    }
+    
+    private Statement statement(int i)
+    {
+        return vf.createStatement(vf.createURI("http://example.org/s" + i), predicate, vf.createLiteral("value " + i));
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParseException;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
+
+import com.github.sesameloader.ntriples.FastNTriplesParser;
+
+/**
+ * Tests that the byte based parser reads the same statements as Rio, and reads contexts from
+ * N-Quads.
+ */
+public class FastNTriplesParserTest
+{
+    private static final String DOCUMENT = "# a comment\n" + "<http://example.org/s> <http://example.org/p> <http://example.org/o> .\n"
+            + "<http://example.org/s> <http://example.org/p> \"plain \\\"quoted\\\" \\u00E9\\U0001F600\\n\" .\r\n" + "\n"
+            + "  <http://example.org/s>\t<http://example.org/p> \"chat\"@fr .\n"
+            + "<http://example.org/s> <http://example.org/p> \"5\"^^<http://www.w3.org/2001/XMLSchema#int> .\n"
+            + "<http://example.org/ü> <http://example.org/p> \"é中\" .";
+
+    private final ValueFactory vf = ValueFactoryImpl.getInstance();
+
+    @Test
+    public void testSameAsRio() throws Exception
+    {
+        final List<Statement> expected = parse(Rio.createParser(RDFFormat.NTRIPLES), DOCUMENT);
+        final List<Statement> actual = parse(new FastNTriplesParser(), DOCUMENT);
+
+        Assert.assertEquals(5, actual.size());
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals("plain \"quoted\" é😀\n", actual.get(1).getObject().stringValue());
+        Assert.assertEquals("fr", ((Literal)actual.get(2).getObject()).getLanguage());
+        Assert.assertEquals(XMLSchema.INT, ((Literal)actual.get(3).getObject()).getDatatype());
+    }
+
+    @Test
+    public void testQuadsAndBlankNodes() throws Exception
+    {
+        final List<Statement> statements =
+                parse(new FastNTriplesParser(FastNTriplesParser.NQUADS), "_:a.1 <http://example.org/p> _:b <http://example.org/g> .\n"
+                        + "_:a.1 <http://example.org/p> \"x\" _:g.\n" + "_:b <http://example.org/p> <http://example.org/o>.\n");
+
+        Assert.assertEquals(3, statements.size());
+        Assert.assertEquals(vf.createURI("http://example.org/g"), statements.get(0).getContext());
+        Assert.assertTrue(statements.get(1).getContext() instanceof BNode);
+        Assert.assertNull(statements.get(2).getContext());
+        Assert.assertEquals(statements.get(0).getSubject(), statements.get(1).getSubject());
+        Assert.assertEquals(statements.get(0).getObject(), statements.get(2).getSubject());
+        Assert.assertEquals(vf.createURI("http://example.org/o"), statements.get(2).getObject());
+    }
+
+    @Test
+    public void testLongLines() throws Exception
+    {
+        final StringBuilder label = new StringBuilder();
+        for(int i = 0; i < 200000; i++)
+        {
+            label.append("abcdefghij");
+        }
+        final List<Statement> statements =
+                parse(new FastNTriplesParser(), "<http://example.org/s> <http://example.org/p> \"" + label + "\" .\n");
+
+        Assert.assertEquals(1, statements.size());
+        Assert.assertEquals(label.toString(), statements.get(0).getObject().stringValue());
+    }
+
+    @Test(expected = RDFParseException.class)
+    public void testUnterminatedLiteral() throws Exception
+    {
+        parse(new FastNTriplesParser(), "<http://example.org/s> <http://example.org/p> \"x .\n");
+    }
+
+    @Test(expected = RDFParseException.class)
+    public void testMissingDot() throws Exception
+    {
+        parse(new FastNTriplesParser(), "<http://example.org/s> <http://example.org/p> <http://example.org/o>\n");
+    }
+
+    private List<Statement> parse(RDFParser parser, String document) throws Exception
+    {
+        final List<Statement> result = new ArrayList<Statement>();
+        parser.setVerifyData(false);
+        parser.setRDFHandler(new StatementCollector(result));
+        parser.parse(new ByteArrayInputStream(document.getBytes("UTF-8")), "http://example.org/");
+        return result;
+    }
+}
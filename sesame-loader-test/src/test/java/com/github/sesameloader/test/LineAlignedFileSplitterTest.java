@@ -0,0 +1,109 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.sesameloader.ChannelReadAheadInputStream;
+import com.github.sesameloader.FileRange;
+import com.github.sesameloader.LineAlignedFileSplitter;
+
+/**
+ * Tests that files are split on line boundaries and that the ranges together cover the whole file.
+ */
+public class LineAlignedFileSplitterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File testFile;
+    
+    private byte[] testContent;
+    
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        final StringBuilder content = new StringBuilder();
+        for(int i = 0; i < 1000; i++)
+        {
+            content.append("<http://example.org/s").append(i).append("> <http://example.org/p> \"").append(i)
+                    .append("\" .\n");
+        }
+        this.testContent = content.toString().getBytes("UTF-8");
+        
+        this.testFile = this.folder.newFile("splittertest.nt");
+        final FileOutputStream output = new FileOutputStream(this.testFile);
+        try
+        {
+            output.write(this.testContent);
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+    
+    @Test
+    public void testSplitIsLineAlignedAndComplete() throws IOException
+    {
+        final List<FileRange> ranges = LineAlignedFileSplitter.split(this.testFile, 7, 1);
+        
+        Assert.assertEquals(7, ranges.size());
+        Assert.assertEquals(0, ranges.get(0).getStart());
+        Assert.assertEquals(this.testContent.length, ranges.get(ranges.size() - 1).getEnd());
+        
+        for(int i = 1; i < ranges.size(); i++)
+        {
+            Assert.assertEquals(ranges.get(i - 1).getEnd(), ranges.get(i).getStart());
+            Assert.assertEquals('\n', this.testContent[(int)ranges.get(i).getStart() - 1]);
+        }
+    }
+    
+    @Test
+    public void testSplitSmallFileIsNotSplit() throws IOException
+    {
+        final List<FileRange> ranges = LineAlignedFileSplitter.split(this.testFile, 7, this.testContent.length);
+        
+        Assert.assertEquals(1, ranges.size());
+        Assert.assertEquals(0, ranges.get(0).getStart());
+        Assert.assertEquals(this.testContent.length, ranges.get(0).getEnd());
+    }
+    
+    @Test
+    public void testRangesReadBackToOriginal() throws IOException
+    {
+        final List<FileRange> ranges = LineAlignedFileSplitter.split(this.testFile, 5, 1);
+        
+        final StringBuilder readBack = new StringBuilder();
+        for(final FileRange range : ranges)
+        {
+            // a buffer smaller than the range checks that reads continue at the right position
+            final InputStream input = new ChannelReadAheadInputStream(this.testFile, range, 100, 2);
+            try
+            {
+                readBack.append(IOUtils.toString(input, "UTF-8"));
+            }
+            finally
+            {
+                input.close();
+            }
+        }
+        
+        Assert.assertEquals(new String(this.testContent, "UTF-8"), readBack.toString());
+    }
+}
@@ -3,12 +3,21 @@
  */
 package com.github.sesameloader.test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.After;
@@ -17,6 +26,9 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Resource;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.rio.RDFFormat;
@@ -25,8 +37,13 @@ import org.openrdf.rio.RDFParseException;
 import org.openrdf.rio.UnsupportedRDFormatException;
 import org.openrdf.sail.SailException;
 
+import com.github.sesameloader.CompileMain;
+import com.github.sesameloader.ContextMapping;
 import com.github.sesameloader.LoaderMain;
+import com.github.sesameloader.MemoryGovernor;
 import com.github.sesameloader.RepositoryManager;
+import com.github.sesameloader.metrics.LoaderMetrics;
+import com.github.sesameloader.route.RoutingKey;
 
 /**
  * @author Peter Ansell p_ansell@yahoo.com
@@ -482,6 +499,789 @@ public class LoaderMainTest
         
     }
     
+    /**
+     * Test method for
+     * {@link com.github.sesameloader.LoaderMain#load(java.io.File, java.lang.String)} parsing the
+     * files in the directory concurrently.
+     * 
+     * @throws RepositoryException
+     * @throws SailException
+     * @throws IOException
+     * @throws FileNotFoundException
+     */
+    @Test
+    public void testLoadFileNativeDirectoryMixedParallel() throws SailException, RepositoryException,
+        FileNotFoundException, IOException
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        
+        final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(20), new Integer(4));
+        loader.setParseThreads(2);
+        
+        loader.load(this.testDataFolder, "http://test.example.org/test/load/file/native/rdf/base/uri");
+        
+        repositoryManager.shutDown();
+        
+        final RepositoryManager repositoryManagerAfter =
+                LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        
+        RepositoryConnection afterConnection = null;
+        
+        try
+        {
+            afterConnection = repositoryManagerAfter.getConnection();
+            
+            Assert.assertTrue(afterConnection.size() > 0);
+        }
+        finally
+        {
+            if(afterConnection != null)
+            {
+                afterConnection.close();
+            }
+            
+            repositoryManagerAfter.shutDown();
+        }
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#load(java.io.File, java.lang.String)}
+     * parsing the RDF/XML and N3 files of a directory on a pool of their own.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadFileNativeDirectoryMixedDocumentParseThreads() throws Exception
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        final RepositoryManager sequentialManager = LoaderMain.getRepositoryManager(this.folder.newFolder(), "native");
+        
+        try
+        {
+            final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(20), new Integer(2));
+            loader.setDocumentParseThreads(2);
+            loader.load(this.testDataFolder, "http://test.example.org/test/load/file/native/rdf/base/uri");
+            
+            new LoaderMain(sequentialManager, new Integer(20), new Integer(2)).load(this.testDataFolder,
+                    "http://test.example.org/test/load/file/native/rdf/base/uri");
+            
+            Assert.assertTrue(size(repositoryManager) > 0);
+            Assert.assertEquals(size(sequentialManager), size(repositoryManager));
+            Assert.assertEquals(2, loader.getMetrics().getFilesParsed());
+        }
+        finally
+        {
+            repositoryManager.shutDown();
+            sequentialManager.shutDown();
+        }
+    }
+    
+    /**
+     * Test method for
+     * {@link com.github.sesameloader.LoaderMain#LoaderMain(com.github.sesameloader.RepositoryManager, java.lang.Integer, java.lang.Integer, java.lang.Integer, org.openrdf.model.Resource...)}
+     * using chunks that are smaller than the commit interval and do not divide the number of
+     * statements evenly.
+     * 
+     * @throws RepositoryException
+     * @throws SailException
+     * @throws IOException
+     * @throws FileNotFoundException
+     */
+    @Test
+    public void testLoadFileNativeRdfSmallChunks() throws SailException, RepositoryException, FileNotFoundException,
+        IOException
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        
+        final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(20), new Integer(3), new Integer(7));
+        
+        loader.load(this.testDataFileRdf, "http://test.example.org/test/load/file/native/rdf/base/uri");
+        
+        repositoryManager.shutDown();
+        
+        final RepositoryManager repositoryManagerAfter =
+                LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        
+        RepositoryConnection afterConnection = null;
+        
+        try
+        {
+            afterConnection = repositoryManagerAfter.getConnection();
+            
+            Assert.assertTrue(afterConnection.size() > 0);
+        }
+        finally
+        {
+            if(afterConnection != null)
+            {
+                afterConnection.close();
+            }
+            
+            repositoryManagerAfter.shutDown();
+        }
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#setSortRunSize(int, java.io.File)}
+     * with runs small enough that every file is merged from several of them.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadFileNativeSorted() throws Exception
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        
+        final File sortFolder = this.folder.newFolder();
+        final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(20), new Integer(2), new Integer(5));
+        loader.setSortRunSize(7, sortFolder);
+        
+        try
+        {
+            loader.load(this.testDataFolder, "http://test.example.org/test/load/file/native/sorted/base/uri");
+            
+            final RepositoryConnection connection = repositoryManager.getConnection();
+            try
+            {
+                Assert.assertTrue(connection.size() > 0);
+            }
+            finally
+            {
+                connection.close();
+            }
+        }
+        finally
+        {
+            repositoryManager.shutDown();
+        }
+        
+        Assert.assertEquals(loader.getMetrics().getStatementsParsed(), loader.getMetrics().getStatementsAdded());
+        // the runs are deleted once they have been merged
+        Assert.assertEquals(0, sortFolder.list().length);
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#setSortRunSize(int, java.io.File)}
+     * with more runs than are merged at the same time, so they are merged in several passes.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadFileNativeSortedManyRuns() throws Exception
+    {
+        final File dataFolder = this.folder.newFolder();
+        final FileOutputStream output = new FileOutputStream(new File(dataFolder, "many-runs.n3"));
+        try
+        {
+            for(int i = 0; i < 500; i++)
+            {
+                output.write(("<http://example.org/s/" + (i * 7919 % 500) + "> <http://example.org/p> \"" + i
+                        + "\" .\n").getBytes("UTF-8"));
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+        
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        
+        final File sortFolder = this.folder.newFolder();
+        final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(20), new Integer(2), new Integer(5));
+        // one statement to a run
+        loader.setSortRunSize(1, sortFolder);
+        
+        try
+        {
+            loader.load(dataFolder, "http://test.example.org/test/load/file/native/sorted/many/base/uri");
+            Assert.assertEquals(500, size(repositoryManager));
+        }
+        finally
+        {
+            repositoryManager.shutDown();
+        }
+        
+        Assert.assertEquals(0, sortFolder.list().length);
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#load(java.io.File, java.lang.String)}
+     * with statements routed to the loading threads by subject and then sorted.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadFileNativeRouted() throws Exception
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        
+        final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(20), new Integer(3), new Integer(5));
+        loader.setRouting(RoutingKey.SUBJECT);
+        loader.setSortRunSize(7, this.folder.newFolder());
+        
+        try
+        {
+            loader.load(this.testDataFolder, "http://test.example.org/test/load/file/native/routed/base/uri");
+            Assert.assertTrue(size(repositoryManager) > 0);
+        }
+        finally
+        {
+            repositoryManager.shutDown();
+        }
+        
+        Assert.assertEquals(loader.getMetrics().getStatementsParsed(), loader.getMetrics().getStatementsAdded());
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#load(java.io.File, java.lang.String)}
+     * loading a single parse into a second repository, which routes its statements by subject.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadFileNativeTargets() throws Exception
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        final RepositoryManager targetManager = LoaderMain.getRepositoryManager(this.folder.newFolder(), "native");
+        
+        try
+        {
+            final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(20), new Integer(2), new Integer(5));
+            final LoaderMain target = loader.addTarget(targetManager, 3, 1);
+            target.setRouting(RoutingKey.SUBJECT);
+            loader.load(this.testDataFolder, "http://test.example.org/test/load/file/native/targets/base/uri");
+            
+            Assert.assertTrue(size(repositoryManager) > 0);
+            Assert.assertEquals(size(repositoryManager), size(targetManager));
+            Assert.assertEquals(loader.getMetrics().getStatementsParsed(), target.getMetrics().getStatementsAdded());
+        }
+        finally
+        {
+            repositoryManager.shutDown();
+            targetManager.shutDown();
+        }
+    }
+    
+    /**
+     * Test method for
+     * {@link com.github.sesameloader.LoaderMain#setMemoryGovernor(com.github.sesameloader.MemoryGovernor)}
+     * sharing a single governor between a loader and its target, which neither of them stops.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadFileNativeTargetsSharedMemoryGovernor() throws Exception
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        final RepositoryManager targetManager = LoaderMain.getRepositoryManager(this.folder.newFolder(), "native");
+        final MemoryGovernor governor = new MemoryGovernor(0.9, 0);
+        
+        try
+        {
+            governor.start();
+            final List<Long> thresholds = collectionUsageThresholds();
+            
+            final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(20), new Integer(2), new Integer(5));
+            final LoaderMain target = loader.addTarget(targetManager, 2, 1);
+            loader.setMemoryGovernor(governor);
+            target.setMemoryGovernor(governor);
+            loader.load(this.testDataFolder, "http://test.example.org/test/load/file/native/governed/base/uri");
+            
+            Assert.assertEquals(size(repositoryManager), size(targetManager));
+            // the loaders are closed after the load, and leave the thresholds of the governor in place
+            Assert.assertEquals(thresholds, collectionUsageThresholds());
+        }
+        finally
+        {
+            governor.stop();
+            repositoryManager.shutDown();
+            targetManager.shutDown();
+        }
+    }
+    
+    private List<Long> collectionUsageThresholds()
+    {
+        final List<Long> thresholds = new ArrayList<Long>();
+        for(final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if(pool.isCollectionUsageThresholdSupported())
+            {
+                thresholds.add(pool.getCollectionUsageThreshold());
+            }
+        }
+        return thresholds;
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#load(java.io.File, java.lang.String)}
+     * splitting the statements of a single parse across three repositories by subject.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadFileNativeSharded() throws Exception
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        final RepositoryManager firstShardManager = LoaderMain.getRepositoryManager(this.folder.newFolder(), "native");
+        final RepositoryManager secondShardManager = LoaderMain.getRepositoryManager(this.folder.newFolder(), "native");
+        final RepositoryManager unshardedManager = LoaderMain.getRepositoryManager(this.folder.newFolder(), "native");
+        
+        try
+        {
+            final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(20), new Integer(2), new Integer(5));
+            loader.addTarget(firstShardManager, 2, 1).setRouting(RoutingKey.SUBJECT);
+            loader.addTarget(secondShardManager, 1, 1);
+            loader.setSharding(RoutingKey.SUBJECT);
+            loader.load(this.testDataFolder, "http://test.example.org/test/load/file/native/sharded/base/uri");
+            
+            new LoaderMain(unshardedManager, new Integer(20), new Integer(2)).load(this.testDataFolder,
+                    "http://test.example.org/test/load/file/native/sharded/base/uri");
+            
+            Assert.assertTrue(size(unshardedManager) > 0);
+            Assert.assertEquals(size(unshardedManager), size(repositoryManager) + size(firstShardManager) + size(secondShardManager));
+        }
+        finally
+        {
+            repositoryManager.shutDown();
+            firstShardManager.shutDown();
+            secondShardManager.shutDown();
+            unshardedManager.shutDown();
+        }
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#load(java.io.File, java.lang.String)}
+     * loading the same file twice with a duplicate filter.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadFileNativeDuplicateFilter() throws Exception
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        
+        final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(20), new Integer(2), new Integer(5));
+        loader.setCloseAfterLoad(false);
+        loader.setDuplicateFilter(1024 * 1024, 1000);
+        
+        try
+        {
+            loader.load(this.testDataFileN3, "http://test.example.org/test/load/file/native/dedup/base/uri");
+            final long sizeAfterFirstLoad = size(repositoryManager);
+            final long addedAfterFirstLoad = loader.getMetrics().getStatementsAdded();
+            
+            loader.load(this.testDataFileN3, "http://test.example.org/test/load/file/native/dedup/base/uri");
+            
+            Assert.assertTrue(loader.getMetrics().getDuplicatesDropped() > 0);
+            Assert.assertEquals(loader.getMetrics().getStatementsParsed(), loader.getMetrics().getStatementsAdded()
+                    + loader.getMetrics().getDuplicatesDropped());
+            Assert.assertTrue(loader.getMetrics().getStatementsAdded() < 2 * addedAfterFirstLoad);
+            Assert.assertEquals(sizeAfterFirstLoad, size(repositoryManager));
+        }
+        finally
+        {
+            loader.close();
+            repositoryManager.shutDown();
+        }
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#setCheckpointJournal(File, boolean, int)}
+     * resuming a finished load and a load that died part way through a file.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadFileNativeResume() throws Exception
+    {
+        final File journalFile = new File(this.folder.newFolder(), "repository.checkpoint");
+        
+        final RepositoryManager firstManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        final LoaderMain first = new LoaderMain(firstManager, new Integer(20), new Integer(2), new Integer(5));
+        first.setCheckpointJournal(journalFile, false, LoaderMain.DEFAULT_CHECKPOINT_INTERVAL);
+        final long total;
+        try
+        {
+            first.load(this.testDataFileN3, "http://test.example.org/test/load/file/native/resume/base/uri");
+            total = first.getMetrics().getStatementsParsed();
+            Assert.assertTrue(total > 3);
+        }
+        finally
+        {
+            firstManager.shutDown();
+        }
+        
+        // everything was committed, so nothing is loaded again
+        final RepositoryManager secondManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        final LoaderMain second = new LoaderMain(secondManager, new Integer(20), new Integer(2), new Integer(5));
+        second.setCheckpointJournal(journalFile, true, LoaderMain.DEFAULT_CHECKPOINT_INTERVAL);
+        try
+        {
+            second.load(this.testDataFileN3, "http://test.example.org/test/load/file/native/resume/base/uri");
+            Assert.assertEquals(0, second.getMetrics().getStatementsParsed());
+            Assert.assertEquals(total, size(secondManager));
+        }
+        finally
+        {
+            secondManager.shutDown();
+        }
+        
+        // a journal of a load that died after committing the first three statements
+        final FileOutputStream journal = new FileOutputStream(journalFile);
+        journal.write(("load\t0123456789abcdef\ncommitted\t3\t" + this.testDataFileN3.getCanonicalPath() + "\n")
+                .getBytes("UTF-8"));
+        journal.close();
+        
+        final RepositoryManager thirdManager = LoaderMain.getRepositoryManager(this.folder.newFolder(), "native");
+        final LoaderMain third = new LoaderMain(thirdManager, new Integer(20), new Integer(2), new Integer(5));
+        third.setCheckpointJournal(journalFile, true, LoaderMain.DEFAULT_CHECKPOINT_INTERVAL);
+        try
+        {
+            third.load(this.testDataFileN3, "http://test.example.org/test/load/file/native/resume/base/uri");
+            Assert.assertEquals(total - 3, third.getMetrics().getStatementsParsed());
+            Assert.assertEquals(total - 3, size(thirdManager));
+        }
+        finally
+        {
+            thirdManager.shutDown();
+        }
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#load(java.io.File, java.lang.String)}
+     * loading each file of a directory into a context named after the file.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadFileNativeContextsByFileName() throws Exception
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        
+        final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(20), new Integer(2), new Integer(5));
+        loader.setContextMapping(new ContextMapping("http://test.example.org/graph/"));
+        
+        try
+        {
+            loader.load(this.testDataFolder, "http://test.example.org/test/load/file/native/contexts/base/uri");
+            
+            final RepositoryConnection connection = repositoryManager.getConnection();
+            try
+            {
+                final List<Resource> contexts = connection.getContextIDs().asList();
+                Assert.assertEquals(2, contexts.size());
+                Assert.assertTrue(contexts.contains(ValueFactoryImpl.getInstance().createURI(
+                        new ContextMapping("http://test.example.org/graph/").getContext(this.testDataFileN3))));
+                Assert.assertEquals(0, connection.size((Resource)null));
+                Assert.assertEquals(connection.size(), loader.getMetrics().getStatementsAdded());
+            }
+            finally
+            {
+                connection.close();
+            }
+        }
+        finally
+        {
+            repositoryManager.shutDown();
+        }
+    }
+    
+    /**
+     * Test method for
+     * {@link com.github.sesameloader.LoaderMain#load(java.io.InputStream, org.openrdf.rio.RDFFormat, java.lang.String)}
+     * keeping the named graphs of a TriG document.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadInputStreamTriG() throws Exception
+    {
+        final String trig =
+                "@prefix ex: <http://test.example.org/> .\n" + "ex:graph1 { ex:a ex:p ex:b . ex:b ex:p ex:c . }\n"
+                        + "ex:graph2 { ex:a ex:p ex:b . }\n" + "{ ex:c ex:p ex:d . }\n";
+        
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        
+        final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(20), new Integer(2), new Integer(2));
+        
+        try
+        {
+            loader.load(new ByteArrayInputStream(trig.getBytes("UTF-8")), RDFFormat.TRIG, "http://test.example.org/");
+            
+            final RepositoryConnection connection = repositoryManager.getConnection();
+            try
+            {
+                Assert.assertEquals(4, connection.size());
+                Assert.assertEquals(2, connection.size(ValueFactoryImpl.getInstance().createURI("http://test.example.org/graph1")));
+                Assert.assertEquals(1, connection.size(ValueFactoryImpl.getInstance().createURI("http://test.example.org/graph2")));
+                Assert.assertEquals(1, connection.size((Resource)null));
+            }
+            finally
+            {
+                connection.close();
+            }
+        }
+        finally
+        {
+            repositoryManager.shutDown();
+        }
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#load(java.io.File, java.lang.String)}
+     * loading a directory compiled by {@link CompileMain} into the same statements as the directory
+     * it was compiled from.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadFileNativeCompiled() throws Exception
+    {
+        final String baseUri = "http://test.example.org/test/load/file/native/compiled/base/uri";
+        final File compiledFolder = this.folder.newFolder();
+        Assert.assertTrue(new CompileMain(compiledFolder, 16).compile(this.testDataFolder, baseUri) > 0);
+        Assert.assertEquals(2, compiledFolder.listFiles().length);
+        
+        final RepositoryManager parsedManager = LoaderMain.getRepositoryManager(this.folder.newFolder(), "native");
+        final RepositoryManager compiledManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        try
+        {
+            new LoaderMain(parsedManager, new Integer(20), new Integer(2)).load(this.testDataFolder, baseUri);
+            
+            final LoaderMain loader = new LoaderMain(compiledManager, new Integer(20), new Integer(2));
+            loader.setParseThreads(2);
+            loader.load(compiledFolder, baseUri);
+            
+            Assert.assertTrue(size(compiledManager) > 0);
+            Assert.assertEquals(size(parsedManager), size(compiledManager));
+            Assert.assertEquals(2, loader.getMetrics().getFilesParsed());
+        }
+        finally
+        {
+            parsedManager.shutDown();
+            compiledManager.shutDown();
+        }
+    }
+    
+    private long size(RepositoryManager repositoryManager) throws RepositoryException
+    {
+        final RepositoryConnection connection = repositoryManager.getConnection();
+        try
+        {
+            return connection.size();
+        }
+        finally
+        {
+            connection.close();
+        }
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#load(java.io.File, java.lang.String)}
+     * building a new store with the native-bulk provider and reading it back as a native store.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadFileNativeBulk() throws Exception
+    {
+        final RepositoryManager bulkManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native-bulk");
+        
+        final LoaderMain loader = new LoaderMain(bulkManager, new Integer(20), new Integer(2), new Integer(5));
+        
+        try
+        {
+            loader.load(this.testDataFolder, "http://test.example.org/test/load/file/native/bulk/base/uri");
+        }
+        finally
+        {
+            // the triple indexes are written here
+            bulkManager.shutDown();
+        }
+        
+        final RepositoryManager repositoryManagerAfter = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        
+        RepositoryConnection afterConnection = null;
+        
+        try
+        {
+            afterConnection = repositoryManagerAfter.getConnection();
+            
+            Assert.assertTrue(afterConnection.size() > 0);
+            Assert.assertTrue(afterConnection.size() <= loader.getMetrics().getStatementsParsed());
+        }
+        finally
+        {
+            if(afterConnection != null)
+            {
+                afterConnection.close();
+            }
+            
+            repositoryManagerAfter.shutDown();
+        }
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#setCloseAfterLoad(boolean)} running
+     * several loads on the same loading threads, each committed by the time it returns.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testLoadInputStreamReusable() throws Exception
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        
+        final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(1000000), new Integer(3));
+        loader.setCloseAfterLoad(false);
+        
+        try
+        {
+            final RDFFormat[] formats = { RDFFormat.RDFXML, RDFFormat.N3, RDFFormat.RDFXML };
+            for(int i = 0; i < formats.length; i++)
+            {
+                final InputStream testResource = this.getClass().getResourceAsStream(
+                        "loadermaintest-1." + formats[i].getDefaultFileExtension());
+                loader.load(testResource, formats[i], "http://test.example.org/test/load/reusable/" + i + "/");
+                
+                // the commit interval is never reached, so only the end of the load commits
+                final RepositoryConnection connection = repositoryManager.getConnection();
+                try
+                {
+                    Assert.assertTrue(connection.size() > 0);
+                }
+                finally
+                {
+                    connection.close();
+                }
+                Assert.assertEquals(loader.getMetrics().getStatementsParsed(), loader.getMetrics().getStatementsAdded());
+            }
+        }
+        finally
+        {
+            loader.close();
+            repositoryManager.shutDown();
+        }
+        
+        try
+        {
+            loader.load(this.getClass().getResourceAsStream("loadermaintest-1.rdf"), RDFFormat.RDFXML,
+                    "http://test.example.org/test/load/reusable/closed/");
+            Assert.fail("Did not find expected exception");
+        }
+        catch(final IllegalStateException expected)
+        {
+        }
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#getMetrics()}.
+     * 
+     * @throws RepositoryException
+     * @throws SailException
+     * @throws IOException
+     * @throws FileNotFoundException
+     */
+    @Test
+    public void testLoadMetrics() throws SailException, RepositoryException, FileNotFoundException, IOException
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        
+        final LoaderMain loader = new LoaderMain(repositoryManager, new Integer(20), new Integer(2), new Integer(5));
+        
+        try
+        {
+            loader.load(this.testDataFolder, "http://test.example.org/test/load/file/native/rdf/base/uri");
+        }
+        finally
+        {
+            repositoryManager.shutDown();
+        }
+        
+        final LoaderMetrics metrics = loader.getMetrics();
+        
+        Assert.assertEquals(2, metrics.getFilesParsed());
+        Assert.assertTrue(metrics.getStatementsParsed() > 0);
+        Assert.assertEquals(metrics.getStatementsParsed(), metrics.getStatementsAdded());
+        Assert.assertEquals(2, metrics.getStatementsAddedPerPusher().length);
+        Assert.assertTrue(metrics.getCommitCount() >= 2);
+        Assert.assertEquals(0, metrics.getQueueSize());
+    }
+    
+    /**
+     * Test method for {@link com.github.sesameloader.LoaderMain#load(java.io.File, java.lang.String)}
+     * with a repository that fails with an unchecked exception, which fails the load instead of
+     * leaving it waiting for the loading threads.
+     * 
+     * @throws Exception
+     */
+    @Test(timeout = 60000)
+    public void testLoadFileUncheckedFailure() throws Exception
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        final RepositoryManager failingManager = new RepositoryManager()
+            {
+                @Override
+                public RepositoryConnection getConnection() throws RepositoryException
+                {
+                    final RepositoryConnection connection = repositoryManager.getConnection();
+                    return (RepositoryConnection)Proxy.newProxyInstance(RepositoryConnection.class.getClassLoader(),
+                            new Class<?>[] { RepositoryConnection.class }, new InvocationHandler()
+                                {
+                                    @Override
+                                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                                    {
+                                        if(method.getName().equals("add"))
+                                        {
+                                            throw new UnsupportedOperationException("add");
+                                        }
+                                        try
+                                        {
+                                            return method.invoke(connection, args);
+                                        }
+                                        catch(final InvocationTargetException e)
+                                        {
+                                            throw e.getCause();
+                                        }
+                                    }
+                                });
+                }
+                
+                @Override
+                public void shutDown() throws SailException, RepositoryException
+                {
+                    repositoryManager.shutDown();
+                }
+                
+                @Override
+                public ValueFactory getValueFactory()
+                {
+                    return repositoryManager.getValueFactory();
+                }
+                
+                @Override
+                public Integer getMaximumThreads()
+                {
+                    return repositoryManager.getMaximumThreads();
+                }
+            };
+        
+        try
+        {
+            final LoaderMain loader = new LoaderMain(failingManager, new Integer(20), new Integer(2), new Integer(5));
+            loader.load(this.testDataFileN3, "http://test.example.org/test/load/file/native/failing/base/uri");
+            Assert.fail("Did not receive expected exception");
+        }
+        catch(final RepositoryException e)
+        {
+            Assert.assertTrue(e.getCause().getCause() instanceof UnsupportedOperationException);
+        }
+        finally
+        {
+            failingManager.shutDown();
+        }
+    }
+    
     @Test
     public void testMaxThreadsFailure() throws SailException, RepositoryException
     {
@@ -0,0 +1,104 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.rio.RDFFormat;
+
+import com.github.sesameloader.LoadStatistics;
+import com.github.sesameloader.LoaderMain;
+import com.github.sesameloader.LoaderService;
+import com.github.sesameloader.RepositoryManager;
+
+/**
+ * Tests that a single service runs many concurrent jobs on the same loading threads.
+ */
+public class LoaderServiceTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File repositoryFolder;
+    
+    private File testDataFileRdf;
+    
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        this.testDataFileRdf = this.folder.newFile("loaderservicetest-1.rdf");
+        final FileOutputStream output = new FileOutputStream(this.testDataFileRdf);
+        try
+        {
+            IOUtils.copy(this.getClass().getResourceAsStream("loadermaintest-1.rdf"), output);
+        }
+        finally
+        {
+            output.close();
+        }
+        
+        this.repositoryFolder = this.folder.newFolder();
+    }
+    
+    @Test
+    public void testConcurrentJobs() throws Exception
+    {
+        final RepositoryManager repositoryManager = LoaderMain.getRepositoryManager(this.repositoryFolder, "native");
+        final LoaderService service = new LoaderService(new LoaderMain(repositoryManager, 1000000, 2), 4);
+        
+        try
+        {
+            final List<Future<LoadStatistics>> jobs = new ArrayList<Future<LoadStatistics>>();
+            for(int i = 0; i < 10; i++)
+            {
+                final InputStream testResource = this.getClass().getResourceAsStream("loadermaintest-1.n3");
+                jobs.add(service.submit(testResource, RDFFormat.N3, "http://test.example.org/test/service/" + i + "/",
+                        "stream " + i));
+                jobs.add(service.submit(this.testDataFileRdf, "http://test.example.org/test/service/" + i + "/"));
+            }
+            
+            long statements = 0;
+            for(final Future<LoadStatistics> job : jobs)
+            {
+                final LoadStatistics statistics = job.get();
+                Assert.assertTrue(statistics.getStatements() > 0);
+                statements += statistics.getStatements();
+            }
+            Assert.assertEquals(statements, service.getMetrics().getStatementsAdded());
+            Assert.assertEquals("stream 0", jobs.get(0).get().getSource());
+            Assert.assertEquals("loaderservicetest-1.rdf", jobs.get(1).get().getSource());
+            
+            // every job was committed by the time its future completed
+            final RepositoryConnection connection = repositoryManager.getConnection();
+            try
+            {
+                Assert.assertTrue(connection.size() > 0);
+            }
+            finally
+            {
+                connection.close();
+            }
+        }
+        finally
+        {
+            service.close();
+            repositoryManager.shutDown();
+        }
+    }
+}
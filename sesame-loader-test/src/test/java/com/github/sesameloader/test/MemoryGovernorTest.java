@@ -0,0 +1,84 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.sesameloader.MemoryGovernor;
+import com.github.sesameloader.StatementChunkQueue;
+
+/**
+ * Tests that the memory governor finds pressure from direct buffers and holds parsers back until
+ * the queue has been emptied.
+ */
+public class MemoryGovernorTest
+{
+    @Test
+    public void testNoPressureWithoutLimits()
+    {
+        final MemoryGovernor governor = new MemoryGovernor(1.0, 0);
+
+        Assert.assertFalse(governor.isUnderPressure());
+        Assert.assertEquals(0, governor.getPressureEvents());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreshold()
+    {
+        new MemoryGovernor(1.5, 0);
+    }
+
+    @Test
+    public void testThrottlesUntilQueueEmpty() throws Exception
+    {
+        final ByteBuffer direct = ByteBuffer.allocateDirect(1024 * 1024);
+        final MemoryGovernor governor = new MemoryGovernor(1.0, 1024);
+        governor.start();
+        try
+        {
+            Assert.assertTrue(governor.isUnderPressure());
+            Assert.assertEquals(1, governor.getPressureEvents());
+
+            final StatementChunkQueue queue = new StatementChunkQueue(4, 2);
+            queue.setMemoryGovernor(governor);
+
+            // an empty queue is never held back
+            queue.put(queue.newChunk());
+
+            final Thread parser = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            queue.put(queue.newChunk());
+                        }
+                        catch(final InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                };
+            parser.start();
+            parser.join(500);
+            Assert.assertTrue(parser.isAlive());
+            Assert.assertEquals(1, queue.size());
+
+            queue.take();
+            parser.join(5000);
+            Assert.assertFalse(parser.isAlive());
+            Assert.assertEquals(1, queue.size());
+            Assert.assertTrue(governor.getThrottledNanos() > 0);
+        }
+        finally
+        {
+            governor.stop();
+        }
+        Assert.assertEquals(1024 * 1024, direct.capacity());
+    }
+}
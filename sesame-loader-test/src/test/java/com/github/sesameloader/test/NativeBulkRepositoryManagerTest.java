@@ -0,0 +1,84 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.repository.RepositoryConnection;
+
+import com.github.sesameloader.RepositoryManager;
+import com.github.sesameloader.sesame.NativeBulkRepositoryManager;
+import com.github.sesameloader.sesame.NativeRepositoryManager;
+
+/**
+ * Tests that a store written in bulk can be read back as a native store, also when there are more
+ * sorted runs than are merged at the same time.
+ */
+public class NativeBulkRepositoryManagerTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final ValueFactory vf = ValueFactoryImpl.getInstance();
+    
+    @Test
+    public void testMergesMoreRunsThanTheFanIn() throws Exception
+    {
+        final File dataDir = folder.newFolder();
+        final URI even = vf.createURI("http://example.org/even");
+        final URI odd = vf.createURI("http://example.org/odd");
+        
+        // two statements to a run, so each index has 300 runs to merge
+        final RepositoryManager bulkManager = new NativeBulkRepositoryManager(dataDir, "spoc,posc", 2);
+        try
+        {
+            final RepositoryConnection connection = bulkManager.getConnection();
+            final List<Statement> statements = new ArrayList<Statement>();
+            for(int i = 0; i < 600; i++)
+            {
+                // every statement is added twice
+                final int n = i % 300;
+                statements.add(vf.createStatement(vf.createURI("http://example.org/s/" + n), n % 2 == 0 ? even : odd,
+                        vf.createLiteral(n)));
+            }
+            connection.add(statements, new Resource[0]);
+            connection.commit();
+            connection.close();
+        }
+        finally
+        {
+            bulkManager.shutDown();
+        }
+        
+        final RepositoryManager nativeManager = new NativeRepositoryManager(dataDir);
+        try
+        {
+            final RepositoryConnection connection = nativeManager.getConnection();
+            try
+            {
+                Assert.assertEquals(300, connection.size());
+                Assert.assertEquals(150, connection.getStatements(null, even, null, false).asList().size());
+            }
+            finally
+            {
+                connection.close();
+            }
+        }
+        finally
+        {
+            nativeManager.shutDown();
+        }
+    }
+}
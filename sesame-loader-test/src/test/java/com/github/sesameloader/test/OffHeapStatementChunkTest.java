@@ -0,0 +1,78 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+import com.github.sesameloader.OffHeapStatementChunk;
+
+/**
+ * Tests that off heap chunks give back the statements that were added to them.
+ */
+public class OffHeapStatementChunkTest
+{
+    private final ValueFactory vf = ValueFactoryImpl.getInstance();
+    
+    @Test
+    public void testRoundTrip()
+    {
+        final OffHeapStatementChunk chunk = new OffHeapStatementChunk(5, vf);
+        final URI predicate = vf.createURI("http://example.org/p");
+        final List<Statement> expected = new ArrayList<Statement>();
+        expected.add(vf.createStatement(vf.createURI("http://example.org/s"), predicate, vf.createLiteral("café")));
+        expected.add(vf.createStatement(vf.createBNode("b1"), predicate, vf.createLiteral("hallo", "de")));
+        expected.add(vf.createStatement(vf.createURI("http://example.org/s"), predicate, vf.createLiteral("1", XMLSchema.INT)));
+        expected.add(vf.createStatement(vf.createURI("http://example.org/s"), predicate, vf.createBNode("b2"),
+                vf.createURI("http://example.org/g")));
+        
+        for(final Statement next : expected)
+        {
+            Assert.assertFalse(chunk.add(next));
+        }
+        Assert.assertEquals(4, chunk.size());
+        
+        final List<Statement> actual = new ArrayList<Statement>();
+        for(final Statement next : chunk)
+        {
+            actual.add(next);
+        }
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(vf.createURI("http://example.org/g"), actual.get(3).getContext());
+        Assert.assertNull(actual.get(0).getContext());
+    }
+    
+    @Test
+    public void testGrowsAndIsReused()
+    {
+        final OffHeapStatementChunk chunk = new OffHeapStatementChunk(2, vf);
+        final StringBuilder label = new StringBuilder();
+        for(int i = 0; i < 10000; i++)
+        {
+            label.append("😀 long literal ");
+        }
+        final Statement large = vf.createStatement(vf.createURI("http://example.org/s"), vf.createURI("http://example.org/p"),
+                vf.createLiteral(label.toString()));
+        
+        for(int i = 0; i < 3; i++)
+        {
+            chunk.clear();
+            Assert.assertTrue(chunk.isEmpty());
+            Assert.assertFalse(chunk.add(large));
+            Assert.assertTrue(chunk.add(large));
+            for(final Statement next : chunk)
+            {
+                Assert.assertEquals(large, next);
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import com.github.sesameloader.StatementChunk;
+import com.github.sesameloader.StatementChunkQueue;
+import com.github.sesameloader.route.FanOutStage;
+import com.github.sesameloader.route.RoutingKey;
+import com.github.sesameloader.route.RoutingStage;
+import com.github.sesameloader.sort.ExternalSortStage;
+
+/**
+ * Tests that a pipeline stage that fails with an unchecked exception records the failure and still
+ * passes syncs and the end of the stream on, instead of leaving the parsers and pushers waiting.
+ */
+public class PipelineStageFailureTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test(timeout = 60000)
+    public void testRoutingStageFailure() throws Exception
+    {
+        final StatementChunkQueue input = new StatementChunkQueue(4, 10);
+        final List<StatementChunkQueue> lanes = new ArrayList<StatementChunkQueue>();
+        lanes.add(new StatementChunkQueue(2, 10));
+        lanes.add(new StatementChunkQueue(2, 10));
+        final RoutingStage stage = new RoutingStage(input, lanes, RoutingKey.SUBJECT);
+        
+        final AtomicLong statements = new AtomicLong();
+        final List<Thread> threads = new ArrayList<Thread>();
+        threads.add(new Thread(stage));
+        for(final StatementChunkQueue lane : lanes)
+        {
+            threads.add(drain(lane, statements));
+        }
+        for(final Thread thread : threads)
+        {
+            thread.start();
+        }
+        
+        put(input, 3);
+        input.sync(1);
+        put(input, 3);
+        input.endOfStream(1);
+        for(final Thread thread : threads)
+        {
+            thread.join();
+        }
+        
+        Assert.assertTrue(stage.getFailure() instanceof UnsupportedOperationException);
+        Assert.assertEquals(0, statements.get());
+    }
+    
+    @Test(timeout = 60000)
+    public void testFanOutStageFailure() throws Exception
+    {
+        final StatementChunkQueue input = new StatementChunkQueue(4, 10);
+        final List<StatementChunkQueue> outputs = new ArrayList<StatementChunkQueue>();
+        outputs.add(new StatementChunkQueue(2, 10));
+        outputs.add(new StatementChunkQueue(2, 10));
+        final FanOutStage stage = new FanOutStage(input, outputs, Arrays.asList(1, 1), RoutingKey.SUBJECT);
+        
+        final AtomicLong statements = new AtomicLong();
+        final Thread stageThread = new Thread(stage);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for(final StatementChunkQueue output : outputs)
+        {
+            threads.add(drain(output, statements));
+        }
+        stageThread.start();
+        for(final Thread thread : threads)
+        {
+            thread.start();
+        }
+        
+        put(input, 3);
+        input.sync(1);
+        put(input, 3);
+        input.endOfStream(1);
+        stageThread.join();
+        // the owners of the output queues end them
+        for(final StatementChunkQueue output : outputs)
+        {
+            output.endOfStream(1);
+        }
+        for(final Thread thread : threads)
+        {
+            thread.join();
+        }
+        
+        Assert.assertTrue(stage.getFailure() instanceof UnsupportedOperationException);
+        Assert.assertEquals(0, statements.get());
+    }
+    
+    @Test(timeout = 60000)
+    public void testExternalSortStageFailure() throws Exception
+    {
+        final StatementChunkQueue input = new StatementChunkQueue(4, 10);
+        final StatementChunkQueue output = new StatementChunkQueue(4, 10);
+        // a run of one statement, so the second one spills the first
+        final ExternalSortStage stage =
+                new ExternalSortStage(input, output, 2, 1, folder.getRoot(), ValueFactoryImpl.getInstance());
+        
+        final AtomicLong statements = new AtomicLong();
+        final List<Thread> threads = new ArrayList<Thread>();
+        threads.add(new Thread(stage));
+        threads.add(drain(output, statements));
+        threads.add(drain(output, statements));
+        for(final Thread thread : threads)
+        {
+            thread.start();
+        }
+        
+        put(input, 3);
+        input.sync(1);
+        put(input, 3);
+        input.endOfStream(1);
+        for(final Thread thread : threads)
+        {
+            thread.join();
+        }
+        
+        Assert.assertTrue(stage.getFailure() instanceof UnsupportedOperationException);
+        Assert.assertEquals(0, statements.get());
+        // the run files are deleted after the failure
+        Assert.assertEquals(0, folder.getRoot().list().length);
+    }
+    
+    /**
+     * Puts a chunk of statements that fail as soon as any of their parts is read.
+     */
+    private void put(StatementChunkQueue queue, int size) throws InterruptedException
+    {
+        final StatementChunk chunk = queue.newChunk();
+        for(int i = 0; i < size; i++)
+        {
+            chunk.add((Statement)Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                    new Class<?>[] { Statement.class }, new InvocationHandler()
+                        {
+                            @Override
+                            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                            {
+                                throw new UnsupportedOperationException(method.getName());
+                            }
+                        }));
+        }
+        queue.put(chunk);
+    }
+    
+    /**
+     * @return A thread that takes chunks from the queue like a pusher, until the end of the stream.
+     */
+    private Thread drain(final StatementChunkQueue queue, final AtomicLong statements)
+    {
+        return new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        while(true)
+                        {
+                            final StatementChunk chunk = queue.take();
+                            if(StatementChunkQueue.isEndOfStream(chunk))
+                            {
+                                return;
+                            }
+                            if(chunk instanceof StatementChunkQueue.Barrier)
+                            {
+                                ((StatementChunkQueue.Barrier)chunk).arrive();
+                                continue;
+                            }
+                            statements.addAndGet(chunk.size());
+                            queue.recycle(chunk);
+                        }
+                    }
+                    catch(final InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.helpers.StatementCollector;
+
+import com.github.sesameloader.FileRange;
+import com.github.sesameloader.RdfXmlFileSplitter;
+
+/**
+ * Tests that RDF/XML files are split between top level elements into ranges that parse into the
+ * same statements as the whole file.
+ */
+public class RdfXmlFileSplitterTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File testFile;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        final StringBuilder content = new StringBuilder();
+        content.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        content.append("<!DOCTYPE rdf:RDF [ <!ENTITY ex 'http://example.org/'> ]>\n");
+        content.append("<!-- <rdf:RDF> -->\n");
+        content.append("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" xmlns:ex=\"http://example.org/\"\n");
+        content.append("    xml:base=\"http://example.org/base/\">\n");
+        for(int i = 0; i < 1000; i++)
+        {
+            if(i % 7 == 0)
+            {
+                content.append("  <ex:Thing rdf:about=\"&ex;thing").append(i).append("\" ex:label=\"a > b\"/>\n");
+            }
+            else if(i % 11 == 0)
+            {
+                content.append("  <!-- </rdf:RDF> -->\n");
+                content.append("  <rdf:Description rdf:nodeID=\"node").append(i % 3).append("\">");
+                content.append("<ex:p><![CDATA[</ex:p>]]></ex:p><ex:q rdf:nodeID=\"node").append((i + 1) % 3).append("\"/>");
+                content.append("</rdf:Description>\n");
+            }
+            else
+            {
+                content.append("  <rdf:Description rdf:about=\"subject").append(i).append("\">\n");
+                content.append("    <ex:p xml:lang='fr'>été ").append(i).append("</ex:p>\n");
+                content.append("    <ex:o rdf:resource=\"object\"/>\n");
+                content.append("  </rdf:Description>\n");
+            }
+        }
+        content.append("</rdf:RDF>\n");
+
+        this.testFile = this.folder.newFile("splittertest.rdf");
+        final FileOutputStream output = new FileOutputStream(this.testFile);
+        try
+        {
+            output.write(content.toString().getBytes("UTF-8"));
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    @Test
+    public void testRangesParseToWholeFile() throws Exception
+    {
+        final RdfXmlFileSplitter split = RdfXmlFileSplitter.split(this.testFile, 7, 1);
+
+        Assert.assertNotNull(split);
+        final List<FileRange> ranges = split.getRanges();
+        Assert.assertEquals(7, ranges.size());
+        for(int i = 1; i < ranges.size(); i++)
+        {
+            Assert.assertEquals(ranges.get(i - 1).getEnd(), ranges.get(i).getStart());
+        }
+        Assert.assertEquals("</rdf:RDF>", new String(split.getFooter(), "UTF-8"));
+
+        final Set<Statement> expected = new HashSet<Statement>();
+        parse(new FileInputStream(this.testFile), expected);
+        final Set<Statement> actual = new HashSet<Statement>();
+        for(final FileRange range : ranges)
+        {
+            parse(split.open(range, 1024, 2), actual);
+        }
+
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testSplitSmallFileIsNotSplit() throws IOException
+    {
+        final RdfXmlFileSplitter split = RdfXmlFileSplitter.split(this.testFile, 7, this.testFile.length());
+
+        Assert.assertEquals(1, split.getRanges().size());
+    }
+
+    @Test
+    public void testOtherRootIsNotSplit() throws IOException
+    {
+        final File file = this.folder.newFile("description.rdf");
+        final FileOutputStream output = new FileOutputStream(file);
+        try
+        {
+            output.write("<rdf:Description xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" rdf:about=\"http://example.org/s\"/>"
+                    .getBytes("UTF-8"));
+        }
+        finally
+        {
+            output.close();
+        }
+
+        Assert.assertNull(RdfXmlFileSplitter.split(file, 7, 1));
+    }
+
+    private void parse(InputStream input, Set<Statement> statements) throws Exception
+    {
+        try
+        {
+            final RDFParser parser = Rio.createParser(RDFFormat.RDFXML);
+            parser.setPreserveBNodeIDs(true);
+            parser.setRDFHandler(new StatementCollector(statements));
+            parser.parse(input, "http://example.org/");
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+}
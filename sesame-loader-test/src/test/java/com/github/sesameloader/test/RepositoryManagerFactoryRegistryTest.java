@@ -45,11 +45,13 @@ public class RepositoryManagerFactoryRegistryTest
         Assert.assertNotNull(registry.getAll());
         
         // Update the following if more RepositoryManagerFactory instances are added
-        Assert.assertEquals(2, registry.getAll().size());
+        Assert.assertEquals(3, registry.getAll().size());
         
         Assert.assertNotNull(registry.get("owlim"));
         
         Assert.assertNotNull(registry.get("native"));
+        
+        Assert.assertNotNull(registry.get("native-bulk"));
     }
     
     /**
@@ -67,11 +69,13 @@ public class RepositoryManagerFactoryRegistryTest
         Assert.assertNotNull(registry.getAll());
         
         // Update the following if more RepositoryManagerFactory instances are added
-        Assert.assertEquals(2, registry.getAll().size());
+        Assert.assertEquals(3, registry.getAll().size());
         
         Assert.assertNotNull(registry.get("owlim"));
         
         Assert.assertNotNull(registry.get("native"));
+        
+        Assert.assertNotNull(registry.get("native-bulk"));
     }
     
 }
@@ -0,0 +1,125 @@
+/**
+ * 
+ */
+package com.github.sesameloader.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.sesameloader.transport.RingBufferTransport;
+import com.github.sesameloader.transport.Transport;
+import com.github.sesameloader.transport.WaitStrategy;
+
+/**
+ * Tests that the ring buffer keeps its capacity and order, and loses nothing between several
+ * producers and consumers.
+ */
+public class RingBufferTransportTest
+{
+    @Test
+    public void testCapacityAndOrder()
+    {
+        for(int capacity = 1; capacity <= 4; capacity++)
+        {
+            final Transport<Integer> transport = new RingBufferTransport<Integer>(capacity, WaitStrategy.PARK);
+            for(int round = 0; round < 5; round++)
+            {
+                for(int i = 0; i < capacity; i++)
+                {
+                    Assert.assertTrue(transport.offer(i));
+                }
+                Assert.assertFalse(transport.offer(capacity));
+                Assert.assertEquals(capacity, transport.size());
+                for(int i = 0; i < capacity; i++)
+                {
+                    Assert.assertEquals(Integer.valueOf(i), transport.poll());
+                }
+                Assert.assertNull(transport.poll());
+                Assert.assertEquals(0, transport.size());
+            }
+        }
+    }
+    
+    @Test
+    public void testPollTimesOut() throws InterruptedException
+    {
+        final Transport<Integer> transport = new RingBufferTransport<Integer>(2, WaitStrategy.PARK);
+        Assert.assertNull(transport.poll(10, TimeUnit.MILLISECONDS));
+    }
+    
+    @Test
+    public void testManyProducersAndConsumers() throws InterruptedException
+    {
+        final Transport<Long> transport = new RingBufferTransport<Long>(3, WaitStrategy.YIELD);
+        final int producers = 4;
+        final int consumers = 4;
+        final long perProducer = 10000;
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong count = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(consumers);
+        
+        for(int i = 0; i < consumers; i++)
+        {
+            new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            for(long next = transport.take(); next > 0; next = transport.take())
+                            {
+                                sum.addAndGet(next);
+                                count.incrementAndGet();
+                            }
+                        }
+                        catch(final InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                        done.countDown();
+                    }
+                }.start();
+        }
+        
+        final Thread[] threads = new Thread[producers];
+        for(int i = 0; i < producers; i++)
+        {
+            threads[i] = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            for(long next = 1; next <= perProducer; next++)
+                            {
+                                transport.put(next);
+                            }
+                        }
+                        catch(final InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                };
+            threads[i].start();
+        }
+        for(final Thread next : threads)
+        {
+            next.join();
+        }
+        for(int i = 0; i < consumers; i++)
+        {
+            transport.put(0L);
+        }
+        Assert.assertTrue(done.await(60, TimeUnit.SECONDS));
+        
+        Assert.assertEquals(producers * perProducer, count.get());
+        Assert.assertEquals(producers * perProducer * (perProducer + 1) / 2, sum.get());
+    }
+}